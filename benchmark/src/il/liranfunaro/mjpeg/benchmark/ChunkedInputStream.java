@@ -0,0 +1,52 @@
+package il.liranfunaro.mjpeg.benchmark;
+
+import java.io.InputStream;
+
+/**
+ * An in-memory stream that returns at most a chunk of bytes from each read,
+ * the way a socket returns whatever arrived in the last packets
+ */
+public class ChunkedInputStream extends InputStream {
+	protected final byte[] data;
+	protected final int chunkSize;
+	protected int pos = 0;
+
+	public ChunkedInputStream(byte[] data, int chunkSize) {
+		this.data = data;
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public int read() {
+		return pos < data.length ? data[pos++] & 0xFF : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if(len == 0) {
+			return 0;
+		}
+
+		if(pos == data.length) {
+			return -1;
+		}
+
+		int count = Math.min(Math.min(len, chunkSize), data.length - pos);
+		System.arraycopy(data, pos, b, off, count);
+		pos += count;
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return Math.min(chunkSize, data.length - pos);
+	}
+
+	/**
+	 * Start over from the beginning of the data
+	 */
+	@Override
+	public void reset() {
+		pos = 0;
+	}
+}
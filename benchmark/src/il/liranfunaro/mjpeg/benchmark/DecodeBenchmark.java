@@ -0,0 +1,109 @@
+package il.liranfunaro.mjpeg.benchmark;
+
+import il.liranfunaro.mjpeg.FrameBufferPool;
+import il.liranfunaro.mjpeg.MjpegFrame;
+import il.liranfunaro.mjpeg.MjpegInputStream;
+import il.liranfunaro.mjpeg.jvm.ImageIoFrameDecoder;
+import il.liranfunaro.mjpeg.jvm.IntRaster;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the whole receive path on a plain JVM: framing a stream and
+ * decoding its frames into a reused raster, the way AnimatedJpeg does with
+ * BitmapFactory on a device. An operation is one frame.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark {
+	/**
+	 * {@link MjpegStreams#ENCODED}, or the path of a recording or a captured stream
+	 */
+	@Param({ MjpegStreams.ENCODED })
+	public String source;
+
+	@Param({ "1", "2" })
+	public int sampleSize;
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long frames;
+		public long skipped;
+
+		@Setup(Level.Iteration)
+		public void clear() {
+			frames = 0;
+			skipped = 0;
+		}
+	}
+
+	private ChunkedInputStream input;
+	private MjpegInputStream mjpegStream;
+	private final FrameBufferPool pool = new FrameBufferPool(FrameBufferPool.DEFAULT_BUFFERS_PER_CLASS);
+	private final ImageIoFrameDecoder decoder = new ImageIoFrameDecoder();
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		List<byte[]> frames = MjpegStreams.getFrames(source, 0);
+		input = new ChunkedInputStream(MjpegStreams.createStream(frames, true), 1 << 16);
+		mjpegStream = new MjpegInputStream(input);
+
+		// Limit the frame size so the frames are sub-sampled by sampleSize
+		MjpegFrame frame = mjpegStream.readFrame(pool);
+		IntRaster raster = decoder.decode(frame);
+		frame.release();
+		if(raster == null) {
+			throw new IOException("Can't decode the frames of " + source);
+		}
+		decoder.setMaxFrameSize(raster.getWidth() / sampleSize, raster.getHeight() / sampleSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		decoder.dispose();
+	}
+
+	@Benchmark
+	public IntRaster readAndDecode(Counters counters) throws IOException {
+		MjpegFrame frame = mjpegStream.readFrame(pool);
+		if(frame == null) {
+			input.reset();
+			mjpegStream = new MjpegInputStream(input);
+			frame = mjpegStream.readFrame(pool);
+		}
+
+		try {
+			IntRaster raster = decoder.decode(frame);
+			if(raster != null) {
+				++counters.frames;
+			} else {
+				++counters.skipped;
+			}
+			return raster;
+		} finally {
+			frame.release();
+		}
+	}
+}
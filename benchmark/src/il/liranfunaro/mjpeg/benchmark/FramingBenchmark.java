@@ -0,0 +1,184 @@
+package il.liranfunaro.mjpeg.benchmark;
+
+import il.liranfunaro.mjpeg.FrameBufferPool;
+import il.liranfunaro.mjpeg.FrameConsumer;
+import il.liranfunaro.mjpeg.MjpegFrame;
+import il.liranfunaro.mjpeg.MjpegInputStream;
+import il.liranfunaro.mjpeg.MjpegStreamParser;
+import il.liranfunaro.mjpeg.SequenceInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of splitting an MJPEG stream into frames.
+ * An operation reads a single frame (the parser may emit a few from one chunk),
+ * so the "frames" counter is frames/s, the "bytes" counter is the frames'
+ * bytes/s and, with -prof gc, gc.alloc.rate.norm is the allocation per frame.
+ *
+ * The stream is read in chunks of chunkSize bytes, like from a socket, with
+ * or without Content-Length part headers. AnimatedJpeg frames its stream
+ * with MjpegInputStream.readFrame(), so mjpegInputStream is its framing cost.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FramingBenchmark {
+	/**
+	 * {@link MjpegStreams#SYNTHETIC}, or the path of a recording or a captured stream
+	 */
+	@Param({ MjpegStreams.SYNTHETIC })
+	public String source;
+
+	// The average size of a synthetic frame
+	@Param({ "16384", "65536", "262144" })
+	public int frameSize;
+
+	@Param({ "1460", "65536" })
+	public int chunkSize;
+
+	@Param({ "true", "false" })
+	public boolean contentLength;
+
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long bytes;
+		public long frames;
+
+		@Setup(Level.Iteration)
+		public void clear() {
+			bytes = 0;
+			frames = 0;
+		}
+	}
+
+	private byte[] stream;
+	private ChunkedInputStream input;
+	private final FrameBufferPool pool = new FrameBufferPool(FrameBufferPool.DEFAULT_BUFFERS_PER_CLASS);
+
+	private MjpegInputStream mjpegStream;
+	private SequenceInputStream sequenceStream;
+	private final byte[] readBuffer = new byte[1 << 13];
+
+	private MjpegStreamParser parser;
+	private ByteBuffer parserInput;
+	private final ByteBuffer chunk = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+	private int parsedFrames;
+	private long parsedBytes;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		List<byte[]> frames = MjpegStreams.getFrames(source, frameSize);
+		stream = MjpegStreams.createStream(frames, contentLength);
+		input = new ChunkedInputStream(stream, chunkSize);
+
+		mjpegStream = new MjpegInputStream(input);
+		sequenceStream = new SequenceInputStream(input, MjpegInputStream.SOI, MjpegInputStream.EOF);
+
+		parser = new MjpegStreamParser(pool, new FrameConsumer() {
+			@Override
+			public void onFrame(MjpegFrame frame) {
+				++parsedFrames;
+				parsedBytes += frame.getLength();
+				frame.release();
+			}
+
+			@Override
+			public void onStreamEnded(IOException cause) {
+			}
+		}, false);
+		parserInput = ByteBuffer.wrap(stream);
+	}
+
+	/**
+	 * Multipart framing: Content-Length parts are read in bulk, others are scanned for markers
+	 */
+	@Benchmark
+	public int mjpegInputStream(Counters counters) throws IOException {
+		MjpegFrame frame = mjpegStream.readFrame(pool);
+		if(frame == null) {
+			input.reset();
+			mjpegStream = new MjpegInputStream(input);
+			frame = mjpegStream.readFrame(pool);
+		}
+
+		int length = frame.getLength();
+		counters.bytes += length;
+		++counters.frames;
+		frame.release();
+		return length;
+	}
+
+	/**
+	 * SOI/EOI framing, read through the InputStream interface into a small buffer
+	 */
+	@Benchmark
+	public int sequenceInputStream(Counters counters) throws IOException {
+		int length = 0;
+		int count;
+
+		while((count = sequenceStream.read(readBuffer, 0, readBuffer.length)) >= 0) {
+			length += count;
+		}
+
+		if(sequenceStream.isEndTransittion()) {
+			input.reset();
+			sequenceStream = new SequenceInputStream(input, MjpegInputStream.SOI, MjpegInputStream.EOF);
+		}
+
+		if(length > 0) {
+			counters.bytes += length;
+			++counters.frames;
+		}
+		return length;
+	}
+
+	/**
+	 * The non-blocking parser of the selector reader, fed chunk by chunk
+	 */
+	@Benchmark
+	public int mjpegStreamParser(Counters counters) throws IOException {
+		final int frames = parsedFrames;
+
+		while(parsedFrames == frames) {
+			if(!parserInput.hasRemaining()) {
+				parserInput.rewind();
+			}
+
+			int count = Math.min(chunkSize, parserInput.remaining());
+			chunk.clear();
+			parserInput.limit(parserInput.position() + count);
+			chunk.put(parserInput);
+			parserInput.limit(parserInput.capacity());
+			chunk.flip();
+
+			parser.parse(chunk);
+		}
+
+		counters.bytes += parsedBytes;
+		counters.frames += parsedFrames - frames;
+		parsedBytes = 0;
+		return parsedFrames;
+	}
+}
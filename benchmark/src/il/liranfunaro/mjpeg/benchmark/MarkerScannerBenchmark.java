@@ -0,0 +1,81 @@
+package il.liranfunaro.mjpeg.benchmark;
+
+import il.liranfunaro.mjpeg.MarkerScanner;
+import il.liranfunaro.mjpeg.MjpegInputStream;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the byte-at-a-time EOI search that SequenceInputStream used
+ * with MarkerScanner, on synthetic frames of 100-500 KB.
+ * The score is frames/s; multiply by the frame size for MB/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MarkerScannerBenchmark {
+	@Param({ "102400", "256000", "512000" })
+	public int frameSize;
+
+	private byte[] frame;
+	private final MarkerScanner scanner = new MarkerScanner();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		frame = MjpegStreams.createFrame(frameSize, new Random(42));
+
+		if(findEndByteLoop(frame, MjpegInputStream.EOF) != findEndScanner(scanner, frame)) {
+			throw new IllegalStateException("Scanners disagree");
+		}
+	}
+
+	/**
+	 * The loop SequenceInputStream used before MarkerScanner
+	 */
+	public static int findEndByteLoop(byte[] data, int[] stopSequance) {
+		int matchCount = 0;
+		for(int pos = 0; pos < data.length; ++pos) {
+			if(stopSequance[matchCount] == (data[pos] & 0xFF)) {
+				if(++matchCount == stopSequance.length) {
+					return pos;
+				}
+			} else {
+				matchCount = 0;
+			}
+		}
+
+		return -1;
+	}
+
+	public static int findEndScanner(MarkerScanner scanner, byte[] data) {
+		int pos = scanner.indexOfMarker(data, 0, data.length, MjpegInputStream.EOF[0], MjpegInputStream.EOF[1]);
+		return pos < 0 ? -1 : pos + 1;
+	}
+
+	@Benchmark
+	public int byteLoop() {
+		return findEndByteLoop(frame, MjpegInputStream.EOF);
+	}
+
+	@Benchmark
+	public int markerScanner() {
+		return findEndScanner(scanner, frame);
+	}
+}
@@ -0,0 +1,255 @@
+package il.liranfunaro.mjpeg.benchmark;
+
+import il.liranfunaro.mjpeg.FrameBufferPool;
+import il.liranfunaro.mjpeg.MjpegFrame;
+import il.liranfunaro.mjpeg.MjpegInputStream;
+import il.liranfunaro.mjpeg.MjpegRecording;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Builds the MJPEG streams that the benchmarks parse
+ */
+public class MjpegStreams {
+	public static final String SYNTHETIC = "synthetic";
+
+	// Frames that are real JPEG images, for benchmarks that decode them
+	public static final String ENCODED = "encoded";
+
+	public static final String BOUNDARY = "--BoundaryString";
+
+	// The stream is repeated frames until it is at least this long
+	public static final int MIN_STREAM_LENGTH = 16 << 20;
+	public static final int MIN_FRAME_COUNT = 64;
+
+	// A minimal 4:2:0 baseline header: APP0, DQT, SOF0, DHT and SOS segments
+	private static final int[] HEADER = {
+		0xFF, 0xE0, 0x00, 0x10, 'J', 'F', 'I', 'F', 0x00, 0x01, 0x01, 0x00, 0x00, 0x01, 0x00, 0x01, 0x00, 0x00,
+		0xFF, 0xDB, 0x00, 0x43, 0x00,
+	};
+
+	private static final int[] FRAME_HEADER = {
+		0xFF, 0xC0, 0x00, 0x11, 0x08, 0x01, 0xE0, 0x02, 0x80, 0x03,
+		0x01, 0x22, 0x00, 0x02, 0x11, 0x01, 0x03, 0x11, 0x01,
+		0xFF, 0xC4, 0x00, 0x13, 0x00,
+		0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+		0xFF, 0xDA, 0x00, 0x0C, 0x03, 0x01, 0x00, 0x02, 0x11, 0x03, 0x11, 0x00, 0x3F, 0x00,
+	};
+
+	/**
+	 * Build a 640x480 frame that is structurally a JPEG: a header, then random
+	 * entropy-coded data in which every 0xFF is followed by a stuffed 0x00,
+	 * ended by an EOI marker.
+	 */
+	public static byte[] createFrame(int size, Random random) {
+		byte[] frame = new byte[size];
+		random.nextBytes(frame);
+
+		int pos = 0;
+		frame[pos++] = (byte) 0xFF;
+		frame[pos++] = (byte) 0xD8;
+		for(int b : HEADER) {
+			frame[pos++] = (byte) b;
+		}
+		// Quantization table
+		for(int i = 0; i < 64; ++i) {
+			frame[pos++] = 1;
+		}
+		for(int b : FRAME_HEADER) {
+			frame[pos++] = (byte) b;
+		}
+
+		for(; pos < size - 2; ++pos) {
+			if(frame[pos] == (byte) 0xFF) {
+				frame[++pos] = 0;
+			}
+		}
+
+		frame[size - 2] = (byte) 0xFF;
+		frame[size - 1] = (byte) 0xD9;
+
+		return frame;
+	}
+
+	public static List<byte[]> createFrames(int frameSize, int count, long seed) {
+		Random random = new Random(seed);
+		List<byte[]> frames = new ArrayList<byte[]>(count);
+
+		for(int i = 0; i < count; ++i) {
+			// Vary the sizes a little, as the frames of a real stream do
+			int size = frameSize - (frameSize >> 4) + random.nextInt((frameSize >> 3) + 1);
+			frames.add(createFrame(size, random));
+		}
+
+		return frames;
+	}
+
+	/**
+	 * Encode a moving scene as real JPEG frames: a gradient with a bar that
+	 * moves across it, and some noise so the frames differ like a camera's do.
+	 */
+	public static List<byte[]> createEncodedFrames(int width, int height, int count, long seed) throws IOException {
+		Random random = new Random(seed);
+		List<byte[]> frames = new ArrayList<byte[]>(count);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		param.setCompressionQuality(0.8f);
+
+		try {
+			for(int i = 0; i < count; ++i) {
+				int bar = (i * width / count);
+				for(int y = 0; y < height; ++y) {
+					for(int x = 0; x < width; ++x) {
+						int r = x * 255 / width;
+						int g = y * 255 / height;
+						int b = Math.abs(x - bar) < (width >> 4) ? 255 : 64;
+						int noise = random.nextInt(8);
+						image.setRGB(x, y, ((r ^ noise) << 16) | ((g ^ noise) << 8) | b);
+					}
+				}
+
+				ByteArrayOutputStream frame = new ByteArrayOutputStream();
+				MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(frame);
+				writer.setOutput(output);
+				writer.write(null, new IIOImage(image, null, null), param);
+				output.close();
+				frames.add(frame.toByteArray());
+			}
+		} finally {
+			writer.dispose();
+		}
+
+		return frames;
+	}
+
+	/**
+	 * Read the frames of a recording directory, or split a captured stream file into frames
+	 */
+	public static List<byte[]> loadFrames(File source) throws IOException {
+		List<byte[]> frames = new ArrayList<byte[]>();
+
+		if(source.isDirectory()) {
+			MjpegRecording recording = new MjpegRecording(source);
+			FrameBufferPool pool = new FrameBufferPool(FrameBufferPool.DEFAULT_BUFFERS_PER_CLASS);
+
+			for(int i = 0; i < recording.getFrameCount(); ++i) {
+				MjpegFrame frame = recording.readFrame(i, pool);
+				frames.add(copy(frame));
+				frame.release();
+			}
+
+			recording.close();
+		} else {
+			InputStream in = new FileInputStream(source);
+			try {
+				MjpegInputStream stream = new MjpegInputStream(in);
+				FrameBufferPool pool = new FrameBufferPool(FrameBufferPool.DEFAULT_BUFFERS_PER_CLASS);
+				MjpegFrame frame;
+				while((frame = stream.readFrame(pool)) != null) {
+					frames.add(copy(frame));
+					frame.release();
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		if(frames.isEmpty()) {
+			throw new IOException("No frames in " + source);
+		}
+
+		return frames;
+	}
+
+	/**
+	 * @param source {@link #SYNTHETIC}, {@link #ENCODED} or the path of a recording or a captured stream
+	 * @param frameSize the average size of a synthetic frame
+	 */
+	public static List<byte[]> getFrames(String source, int frameSize) throws IOException {
+		if(SYNTHETIC.equals(source)) {
+			return createFrames(frameSize, MIN_FRAME_COUNT, 42);
+		}
+
+		if(ENCODED.equals(source)) {
+			return createEncodedFrames(640, 480, MIN_FRAME_COUNT, 42);
+		}
+
+		return loadFrames(new File(source));
+	}
+
+	/**
+	 * Lay out the frames as a Motion multipart stream, repeating them until
+	 * the stream is long enough
+	 *
+	 * @param contentLength true to declare the length of each part
+	 */
+	public static byte[] createStream(List<byte[]> frames, boolean contentLength) {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream(MIN_STREAM_LENGTH + (1 << 20));
+
+		do {
+			for(byte[] frame : frames) {
+				writePart(stream, frame, contentLength);
+			}
+		} while(stream.size() < MIN_STREAM_LENGTH);
+
+		return stream.toByteArray();
+	}
+
+	/**
+	 * Lay out the frames as a Motion multipart stream, each once
+	 */
+	public static byte[] createParts(List<byte[]> frames, boolean contentLength) {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		for(byte[] frame : frames) {
+			writePart(stream, frame, contentLength);
+		}
+		return stream.toByteArray();
+	}
+
+	/**
+	 * Write a frame as a part of a multipart stream: the boundary, the part
+	 * headers and the frame
+	 */
+	public static void writePart(ByteArrayOutputStream stream, byte[] frame, boolean contentLength) {
+		StringBuilder header = new StringBuilder();
+		header.append(BOUNDARY).append("\r\n");
+		header.append("Content-type: image/jpeg\r\n");
+		if(contentLength) {
+			header.append("Content-Length: ").append(frame.length).append("\r\n");
+		}
+		header.append("\r\n");
+
+		writeAscii(stream, header.toString());
+		stream.write(frame, 0, frame.length);
+		writeAscii(stream, "\r\n\r\n");
+	}
+
+	private static byte[] copy(MjpegFrame frame) {
+		byte[] data = new byte[frame.getLength()];
+		System.arraycopy(frame.getData(), frame.getOffset(), data, 0, data.length);
+		return data;
+	}
+
+	private static void writeAscii(ByteArrayOutputStream stream, String text) {
+		for(int i = 0; i < text.length(); ++i) {
+			stream.write(text.charAt(i));
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package il.liranfunaro.mjpeg.benchmark;
+
+import il.liranfunaro.mjpeg.FrameBufferPool;
+import il.liranfunaro.mjpeg.MjpegFrame;
+import il.liranfunaro.mjpeg.MjpegInputStream;
+import il.liranfunaro.mjpeg.jvm.ImageIoFrameDecoder;
+import il.liranfunaro.mjpeg.jvm.IntRaster;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding a zoomed in frame: only the region around its visible part,
+ * against the whole frame at the same sample size. The visible part is the
+ * center of the frame, 1/zoom of its width and height. An operation is one frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RegionDecodeBenchmark {
+	static final int FRAME_COUNT = 16;
+
+	@Param({ "640x480", "1920x1080" })
+	public String resolution;
+
+	@Param({ "2", "4" })
+	public int zoom;
+
+	private MjpegFrame[] frames;
+	private int next = 0;
+	private final ImageIoFrameDecoder regionDecoder = new ImageIoFrameDecoder();
+	// Has no visible region, so it decodes whole frames
+	private final ImageIoFrameDecoder wholeDecoder = new ImageIoFrameDecoder();
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		final int separator = resolution.indexOf('x');
+		final int width = Integer.parseInt(resolution.substring(0, separator));
+		final int height = Integer.parseInt(resolution.substring(separator + 1));
+
+		List<byte[]> encoded = MjpegStreams.createEncodedFrames(width, height, FRAME_COUNT, 42);
+		MjpegInputStream stream = new MjpegInputStream(new ByteArrayInputStream(MjpegStreams.createStream(encoded, true)));
+		FrameBufferPool pool = new FrameBufferPool(FrameBufferPool.DEFAULT_BUFFERS_PER_CLASS);
+
+		// Kept for the whole trial, they are decoded over and over
+		frames = new MjpegFrame[FRAME_COUNT];
+		for(int i = 0; i < frames.length; ++i) {
+			frames[i] = stream.readFrame(pool);
+		}
+
+		final int visibleWidth = width / zoom;
+		final int visibleHeight = height / zoom;
+		regionDecoder.setVisibleRegion((width - visibleWidth) / 2, (height - visibleHeight) / 2,
+				(width + visibleWidth) / 2, (height + visibleHeight) / 2);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		regionDecoder.dispose();
+		wholeDecoder.dispose();
+	}
+
+	private MjpegFrame nextFrame() {
+		MjpegFrame frame = frames[next];
+		next = (next + 1) % frames.length;
+		return frame;
+	}
+
+	@Benchmark
+	public IntRaster region() throws IOException {
+		return regionDecoder.decode(nextFrame());
+	}
+
+	@Benchmark
+	public IntRaster whole() throws IOException {
+		return wholeDecoder.decode(nextFrame());
+	}
+}
@@ -0,0 +1,139 @@
+package il.liranfunaro.mjpeg.benchmark;
+
+import il.liranfunaro.animatedbitmap.FrameTransform;
+import il.liranfunaro.animatedbitmap.TripleBuffer;
+import il.liranfunaro.mjpeg.FrameRegion;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The per-frame work of AnimatedBitmapView that doesn't touch the canvas,
+ * done with the same calls the view makes: the decoding thread publishing a
+ * frame, a gesture moving the frame out of bounds and releasing it, and the
+ * render thread taking the newest frame, stepping the snap-back animation,
+ * reading the transform and finding the visible part of the frame. Drawing
+ * and notifying the listeners are Android calls, which aren't timed here.
+ * None of it should allocate, which RenderPathAllocationTest checks and
+ * -prof gc shows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderPathBenchmark {
+	static final int VIEW_WIDTH = 1080;
+	static final int VIEW_HEIGHT = 1920;
+	static final int FRAME_WIDTH = 1280;
+	static final int FRAME_HEIGHT = 720;
+
+	// The frame fills the view's width, dragging it sideways moves it out of bounds
+	static final float DRAG_DISTANCE = 200;
+
+	static final long FRAME_INTERVAL_NANOS = 16000000;
+	static final long SNAP_BACK_DURATION_NANOS = 300000000;
+
+	// A snap-back that didn't end by then is stuck
+	static final int MAX_ANIMATION_FRAMES = 1000;
+
+	private final FrameTransform<Object> transform = new FrameTransform<Object>();
+	private final TripleBuffer<Object> frameBuffer = new TripleBuffer<Object>();
+	final FrameTransform.Snapshot<Object> snapshot = new FrameTransform.Snapshot<Object>();
+	private final FrameRegion visible = new FrameRegion();
+	final Object content = new Object();
+
+	// The content the decoding thread fills next
+	private Object decoded = new Object();
+	private long frameTime = 0;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		transform.setFrame(content, FRAME_WIDTH, FRAME_HEIGHT, 0, 0, FRAME_WIDTH, FRAME_HEIGHT);
+		transform.fit(VIEW_WIDTH, VIEW_HEIGHT);
+
+		transform.read(snapshot);
+	}
+
+	/**
+	 * A pinch and a drag out of bounds, then releasing the finger and
+	 * rendering until the frame snapped back into the view
+	 *
+	 * @return the number of frames the snap-back took, 0 if it didn't start
+	 */
+	@Benchmark
+	public int gesture() {
+		// Touching down
+		transform.cancelAnimation();
+
+		transform.postScale(1.01f, VIEW_WIDTH / 2, VIEW_HEIGHT / 2);
+		transform.postScale(1 / 1.01f, VIEW_WIDTH / 2, VIEW_HEIGHT / 2);
+		transform.postTranslate(DRAG_DISTANCE, 0);
+
+		// Releasing the finger
+		if(!transform.startSnapBack(VIEW_WIDTH, VIEW_HEIGHT)) {
+			return 0;
+		}
+
+		int frames = 0;
+		boolean animating;
+		do {
+			animating = drawFrame();
+			++frames;
+		} while(animating && frames < MAX_ANIMATION_FRAMES);
+		return frames;
+	}
+
+	/**
+	 * A new frame decoded and rendered, while nothing moves
+	 */
+	@Benchmark
+	public int render() {
+		publishFrame();
+		drawFrame();
+		return snapshot.getDisplayWidth() + visible.right;
+	}
+
+	/**
+	 * What the decoding thread does with a decoded frame
+	 */
+	private void publishFrame() {
+		final TripleBuffer.Slot<Object> back = frameBuffer.getBack();
+		back.content = decoded;
+		back.frameWidth = FRAME_WIDTH;
+		back.frameHeight = FRAME_HEIGHT;
+		back.region.set(0, 0, FRAME_WIDTH, FRAME_HEIGHT);
+
+		final Object released = frameBuffer.publish();
+		if(released != null) {
+			decoded = released;
+		}
+	}
+
+	/**
+	 * What the render thread does for a frame, other than drawing it
+	 *
+	 * @return true while the frame is animated
+	 */
+	private boolean drawFrame() {
+		frameTime += FRAME_INTERVAL_NANOS;
+		final boolean animating = transform.stepAnimation(frameTime, SNAP_BACK_DURATION_NANOS);
+		transform.takeFrame(frameBuffer);
+
+		transform.read(snapshot);
+		snapshot.getVisibleRegion(VIEW_WIDTH, VIEW_HEIGHT, visible);
+		return animating;
+	}
+}
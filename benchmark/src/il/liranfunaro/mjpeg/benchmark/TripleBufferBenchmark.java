@@ -0,0 +1,121 @@
+package il.liranfunaro.mjpeg.benchmark;
+
+import il.liranfunaro.animatedbitmap.TripleBuffer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The hand-off of decoded frames from the decoding thread to the render
+ * thread, both running at once. Frames are int arrays standing for bitmaps:
+ * the decoder fills a released one, and the renderer checks that the frame it
+ * draws wasn't changed since it was published, which would be a torn frame.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class TripleBufferBenchmark {
+	static final int FRAME_LENGTH = 64;
+
+	private TripleBuffer<int[]> buffer;
+
+	@State(Scope.Thread)
+	public static class Decoder {
+		int[] free = null;
+		int sequence = 0;
+	}
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		buffer = new TripleBuffer<int[]>();
+
+		// Nothing is drawn before a frame is published, and only the newest is drawn
+		if(buffer.swap()) {
+			throw new IllegalStateException("Swapped without a frame");
+		}
+
+		int[] first = new int[] { 1 };
+		int[] second = new int[] { 2 };
+		buffer.getBack().content = first;
+		if(buffer.publish() != null) {
+			throw new IllegalStateException("Released an empty slot");
+		}
+
+		// A frame that wasn't drawn comes back as soon as it is replaced
+		buffer.getBack().content = second;
+		if(buffer.publish() != first) {
+			throw new IllegalStateException("The undrawn frame wasn't released");
+		}
+		if(!buffer.swap() || buffer.getFront().content != second) {
+			throw new IllegalStateException("The newest frame wasn't drawn");
+		}
+
+		// A drawn frame comes back only after the renderer moved to another
+		buffer.getBack().content = new int[] { 3 };
+		if(buffer.publish() != null) {
+			throw new IllegalStateException("Released an empty slot");
+		}
+		buffer.getBack().content = new int[] { 4 };
+		if(buffer.publish() == second) {
+			throw new IllegalStateException("Released the drawn frame");
+		}
+		if(!buffer.swap() || buffer.getFront().content[0] != 4) {
+			throw new IllegalStateException("The newest frame wasn't drawn");
+		}
+		buffer.getBack().content = new int[] { 5 };
+		if(buffer.publish() != second) {
+			throw new IllegalStateException("The replaced frame wasn't released");
+		}
+
+		buffer = new TripleBuffer<int[]>();
+	}
+
+	@Benchmark
+	@Group("handoff")
+	public void decode(Decoder decoder) {
+		int[] frame = decoder.free != null ? decoder.free : new int[FRAME_LENGTH];
+		int value = ++decoder.sequence;
+		for(int i = 0; i < frame.length; ++i) {
+			frame[i] = value;
+		}
+
+		TripleBuffer.Slot<int[]> back = buffer.getBack();
+		back.content = frame;
+		back.frameWidth = value;
+		decoder.free = buffer.publish();
+	}
+
+	@Benchmark
+	@Group("handoff")
+	public int render() {
+		buffer.swap();
+		TripleBuffer.Slot<int[]> front = buffer.getFront();
+		int[] frame = front.content;
+		if(frame == null) {
+			return 0;
+		}
+
+		int value = front.frameWidth;
+		for(int i = 0; i < frame.length; ++i) {
+			if(frame[i] != value) {
+				throw new IllegalStateException("A drawn frame was changed");
+			}
+		}
+		return value;
+	}
+}
@@ -0,0 +1,67 @@
+package il.liranfunaro.mjpeg.jvm;
+
+import java.io.IOException;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * An image input stream over a part of a byte array, without the caching
+ * that ImageIO's own streams do
+ */
+public class ByteArrayImageInputStream extends ImageInputStreamImpl {
+	protected final byte[] data;
+	protected final int offset;
+	protected final int length;
+
+	public ByteArrayImageInputStream(byte[] data, int offset, int length) {
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkClosed();
+		bitOffset = 0;
+
+		if(streamPos >= length) {
+			return -1;
+		}
+
+		return data[offset + (int) streamPos++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkClosed();
+		bitOffset = 0;
+
+		if(len == 0) {
+			return 0;
+		}
+
+		if(streamPos >= length) {
+			return -1;
+		}
+
+		int count = (int) Math.min(len, length - streamPos);
+		System.arraycopy(data, offset + (int) streamPos, b, off, count);
+		streamPos += count;
+		return count;
+	}
+
+	@Override
+	public long length() {
+		return length;
+	}
+
+	@Override
+	public boolean isCached() {
+		return true;
+	}
+
+	@Override
+	public boolean isCachedMemory() {
+		return true;
+	}
+}
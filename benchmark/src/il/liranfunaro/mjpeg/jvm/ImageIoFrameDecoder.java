@@ -0,0 +1,102 @@
+package il.liranfunaro.mjpeg.jvm;
+
+import il.liranfunaro.mjpeg.FrameRegion;
+import il.liranfunaro.mjpeg.JpegFrameDecoder;
+import il.liranfunaro.mjpeg.JpegHeader;
+import il.liranfunaro.mjpeg.MjpegFrame;
+import il.liranfunaro.mjpeg.RegionFrameDecoder;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+
+/**
+ * Decodes compressed frames on a plain JVM with ImageIO, into a raster that
+ * is reused for as long as the frames keep their size. The returned raster
+ * is overwritten by the next frame.
+ *
+ * The reader decodes into a reused byte BGR image and the pixels are packed
+ * from it: with an int destination the JPEG reader converts through extra
+ * full size buffers of its own, which allocates almost four times as much per frame.
+ * Regions are decoded with a source region, which still reads the whole
+ * frame, like BitmapRegionDecoder does on a device.
+ * An instance is meant to be used by a single stream.
+ */
+public class ImageIoFrameDecoder extends JpegFrameDecoder<IntRaster> implements RegionFrameDecoder<IntRaster> {
+	protected final ImageReader reader;
+	protected final ImageReadParam param;
+	protected final Rectangle sourceRegion = new Rectangle();
+
+	protected IntRaster raster = null;
+	protected BufferedImage bgrImage = null;
+	protected byte[] bgrPixels = null;
+
+	public ImageIoFrameDecoder() {
+		Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+		if(!readers.hasNext()) {
+			throw new IllegalStateException("No JPEG reader");
+		}
+
+		this.reader = readers.next();
+		this.param = reader.getDefaultReadParam();
+	}
+
+	@Override
+	protected IntRaster decodeValid(MjpegFrame frame, JpegHeader header, int sampleSize) throws IOException {
+		param.setSourceRegion(null);
+		return read(frame, header.getSampledWidth(sampleSize), header.getSampledHeight(sampleSize), sampleSize);
+	}
+
+	@Override
+	public IntRaster decodeRegion(MjpegFrame frame, JpegHeader header, int sampleSize, FrameRegion region) throws IOException {
+		sourceRegion.setBounds(region.left, region.top, region.width(), region.height());
+		param.setSourceRegion(sourceRegion);
+		return read(frame, (region.width() + sampleSize - 1) / sampleSize,
+				(region.height() + sampleSize - 1) / sampleSize, sampleSize);
+	}
+
+	protected IntRaster read(MjpegFrame frame, int width, int height, int sampleSize) throws IOException {
+		if(raster == null || raster.getWidth() != width || raster.getHeight() != height) {
+			raster = new IntRaster(width, height);
+			bgrImage = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+			bgrPixels = ((DataBufferByte) bgrImage.getRaster().getDataBuffer()).getData();
+		}
+
+		param.setSourceSubsampling(sampleSize, sampleSize, 0, 0);
+		param.setDestination(bgrImage);
+
+		ByteArrayImageInputStream input = new ByteArrayImageInputStream(frame.getData(), frame.getOffset(), frame.getLength());
+		try {
+			reader.setInput(input, true, true);
+			reader.read(0, param);
+		} catch (IIOException e) {
+			return null;
+		} finally {
+			reader.setInput(null);
+			input.close();
+		}
+
+		pack(bgrPixels, raster.getPixels());
+		return raster;
+	}
+
+	protected static void pack(byte[] bgr, int[] rgb) {
+		for(int i = 0, j = 0; i < rgb.length; ++i, j += 3) {
+			rgb[i] = ((bgr[j + 2] & 0xFF) << 16) | ((bgr[j + 1] & 0xFF) << 8) | (bgr[j] & 0xFF);
+		}
+	}
+
+	/**
+	 * Release the reader's native resources
+	 */
+	public void dispose() {
+		reader.dispose();
+	}
+}
@@ -0,0 +1,35 @@
+package il.liranfunaro.mjpeg.jvm;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * A decoded frame as packed RGB pixels, one int per pixel in rows of {@link #getWidth()}.
+ * The pixels are also exposed as a {@link BufferedImage} that shares them,
+ * so decoders can write into them directly.
+ */
+public class IntRaster {
+	protected final BufferedImage image;
+	protected final int[] pixels;
+
+	public IntRaster(int width, int height) {
+		this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
+	public int getWidth() {
+		return image.getWidth();
+	}
+
+	public int getHeight() {
+		return image.getHeight();
+	}
+
+	public int[] getPixels() {
+		return pixels;
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+}
@@ -0,0 +1,80 @@
+package il.liranfunaro.animatedbitmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FrameRateGovernorTest {
+	private static long ms(long ms) {
+		return ms * 1000000L;
+	}
+
+	/**
+	 * @return the number of frames let through out of count frames that arrive every interval ms
+	 */
+	private static int countAccepted(FrameRateGovernor governor, long start, long intervalMs, int count) {
+		int accepted = 0;
+		for(int i = 0; i < count; ++i) {
+			if(governor.accept(ms(start + i * intervalMs))) {
+				++accepted;
+			}
+		}
+		return accepted;
+	}
+
+	@Test
+	public void slowerStreamIsNotThrottled() {
+		assertEquals(50, countAccepted(new FrameRateGovernor(10), 0, 200, 50));
+		assertEquals(50, countAccepted(new FrameRateGovernor(10), 0, 100, 50));
+	}
+
+	@Test
+	public void doubleRateIsHalvedEvenly() {
+		FrameRateGovernor governor = new FrameRateGovernor(10);
+
+		for(int i = 0; i < 100; ++i) {
+			assertEquals("frame " + i, i % 2 == 0, governor.accept(ms(i * 50)));
+		}
+	}
+
+	@Test
+	public void tripleRateLetsEveryThirdFrameThrough() {
+		FrameRateGovernor governor = new FrameRateGovernor(10);
+
+		for(int i = 0; i < 90; ++i) {
+			assertEquals("frame " + i, i % 3 == 0, governor.accept(ms(i * 100 / 3)));
+		}
+	}
+
+	@Test
+	public void slightlyFasterStreamIsCappedAtTheRate() {
+		// 12 frames a second for 10 seconds
+		int accepted = countAccepted(new FrameRateGovernor(10), 0, 1000 / 12, 120);
+		assertTrue("accepted " + accepted, accepted >= 99 && accepted <= 101);
+	}
+
+	@Test
+	public void jitterWithinTheToleranceIsAccepted() {
+		FrameRateGovernor governor = new FrameRateGovernor(10);
+
+		// Up to 20ms early or late against the cadence of the first frame
+		for(int i = 0; i < 50; ++i) {
+			long jitter = i == 0 ? 0 : i % 2 == 0 ? 20 : -20;
+			assertTrue("frame " + i, governor.accept(ms(1000 + i * 100 + jitter)));
+		}
+	}
+
+	@Test
+	public void scheduleStartsOverAfterAStall() {
+		FrameRateGovernor governor = new FrameRateGovernor(10);
+		assertEquals(5, countAccepted(governor, 0, 50, 10));
+
+		// The frames after the stall aren't let through in a burst to catch up
+		assertTrue(governor.accept(ms(5000)));
+		assertFalse(governor.accept(ms(5050)));
+		assertTrue(governor.accept(ms(5100)));
+		assertFalse(governor.accept(ms(5150)));
+	}
+}
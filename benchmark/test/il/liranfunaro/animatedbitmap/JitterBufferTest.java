@@ -0,0 +1,106 @@
+package il.liranfunaro.animatedbitmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class JitterBufferTest {
+	/**
+	 * A buffer on a clock that only moves when the test moves it
+	 */
+	private static class ManualJitterBuffer extends JitterBuffer<Integer> {
+		long time = 1000;
+
+		ManualJitterBuffer(long targetDelay, int capacity) {
+			super(targetDelay, capacity);
+		}
+
+		@Override
+		protected long now() {
+			return time;
+		}
+	}
+
+	@Test
+	public void overflowDropsTheOldestFrame() {
+		ManualJitterBuffer buffer = new ManualJitterBuffer(100, 3);
+
+		assertNull(buffer.put(1));
+		assertNull(buffer.put(2));
+		assertNull(buffer.put(3));
+		assertEquals(Integer.valueOf(1), buffer.put(4));
+		assertEquals(Integer.valueOf(2), buffer.put(5));
+
+		assertEquals(2, buffer.getDroppedCount());
+		assertEquals(3, buffer.getBufferedCount());
+		assertEquals(Integer.valueOf(3), buffer.poll());
+		assertEquals(Integer.valueOf(4), buffer.poll());
+		assertEquals(Integer.valueOf(5), buffer.poll());
+		assertNull(buffer.poll());
+	}
+
+	@Test
+	public void dropsFramesThatAreFarBehind() {
+		ManualJitterBuffer buffer = new ManualJitterBuffer(100, 10);
+
+		assertNull(buffer.put(1));
+		buffer.time += 50;
+		assertNull(buffer.put(2));
+
+		// The first frame is just within the largest delay
+		buffer.time += JitterBuffer.MAX_DELAY_FACTOR * 100 - 50;
+		assertNull(buffer.put(3));
+		assertEquals(0, buffer.getDroppedCount());
+
+		buffer.time += 1;
+		assertEquals(Integer.valueOf(1), buffer.put(4));
+		assertEquals(1, buffer.getDroppedCount());
+		assertEquals(3, buffer.getBufferedCount());
+	}
+
+	@Test
+	public void estimatesTheCadence() {
+		ManualJitterBuffer buffer = new ManualJitterBuffer(100, 100);
+		assertEquals(JitterBuffer.DEFAULT_FRAME_INTERVAL_MS, buffer.getFrameInterval(), 0);
+
+		for(int i = 0; i < 50; ++i) {
+			buffer.put(i);
+			buffer.poll();
+			buffer.time += 40;
+		}
+		assertEquals(40, buffer.getFrameInterval(), 0.001);
+
+		// A stall isn't taken as the frame rate
+		buffer.time += JitterBuffer.MAX_FRAME_INTERVAL_MS;
+		buffer.put(50);
+		assertEquals(40, buffer.getFrameInterval(), 0.001);
+	}
+
+	@Test
+	public void closedBufferRefusesFrames() throws InterruptedException {
+		ManualJitterBuffer buffer = new ManualJitterBuffer(100, 3);
+		buffer.put(1);
+		buffer.close();
+
+		Integer frame = 2;
+		assertSame(frame, buffer.put(frame));
+		assertTrue(buffer.isClosed());
+		assertNull(buffer.take());
+
+		// The frames left in the buffer are still polled to be released
+		assertEquals(Integer.valueOf(1), buffer.poll());
+	}
+
+	@Test(timeout = 10000)
+	public void releasesFramesAfterTheTargetDelay() throws InterruptedException {
+		JitterBuffer<Integer> buffer = new JitterBuffer<Integer>(50, 10);
+		final long start = System.nanoTime();
+
+		buffer.put(1);
+		assertEquals(Integer.valueOf(1), buffer.take());
+		assertTrue((System.nanoTime() - start) / 1000000 >= 50);
+	}
+}
@@ -0,0 +1,148 @@
+package il.liranfunaro.mjpeg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import il.liranfunaro.mjpeg.benchmark.MjpegStreams;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsyncMjpegRecorderTest {
+	private static final long TIMEOUT_MS = 10000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final FrameBufferPool pool = new FrameBufferPool(FrameBufferPool.DEFAULT_BUFFERS_PER_CLASS);
+
+	/**
+	 * A recorder whose writes wait until they are allowed to proceed
+	 */
+	private static class BlockedRecorder extends MjpegRecorder {
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch proceed = new CountDownLatch(1);
+		final List<Long> timestamps = new ArrayList<Long>();
+
+		BlockedRecorder(File directory) {
+			super(directory);
+		}
+
+		@Override
+		public synchronized void record(MjpegFrame frame) throws IOException {
+			writing.countDown();
+			try {
+				proceed.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			timestamps.add(frame.getTimestamp());
+		}
+	}
+
+	private MjpegFrame frame(byte[] data, long timestamp) {
+		byte[] buffer = pool.acquire(data.length);
+		System.arraycopy(data, 0, buffer, 0, data.length);
+		return new MjpegFrame(pool, buffer, 0, data.length, timestamp);
+	}
+
+	@Test
+	public void recordsCopiesOfTheFrames() throws Exception {
+		List<byte[]> frames = MjpegStreams.createFrames(10000, 5, 1);
+		AsyncMjpegRecorder recorder = new AsyncMjpegRecorder(new MjpegRecorder(folder.getRoot()), pool, 8);
+		recorder.start();
+
+		for(int i = 0; i < frames.size(); ++i) {
+			MjpegFrame frame = frame(frames.get(i), 1000 + i);
+			assertTrue(recorder.record(frame));
+			// Reused by the stream right away
+			Arrays.fill(frame.getData(), (byte) 0);
+			frame.release();
+		}
+
+		recorder.close();
+		assertTrue(recorder.awaitClosed(TIMEOUT_MS));
+		assertTrue(recorder.getRecorder().isClosed());
+
+		MjpegRecording recording = new MjpegRecording(folder.getRoot());
+		try {
+			assertEquals(frames.size(), recording.getFrameCount());
+			for(int i = 0; i < frames.size(); ++i) {
+				MjpegFrame recorded = recording.readFrame(i, pool);
+				assertEquals(1000 + i, recorded.getTimestamp());
+				assertArrayEquals(frames.get(i), Arrays.copyOfRange(recorded.getData(),
+						recorded.getOffset(), recorded.getOffset() + recorded.getLength()));
+				recorded.release();
+			}
+		} finally {
+			recording.close();
+		}
+	}
+
+	@Test
+	public void dropsFramesWhileTheQueueIsFull() throws Exception {
+		byte[] data = MjpegStreams.createFrames(1000, 1, 1).get(0);
+		BlockedRecorder blocked = new BlockedRecorder(folder.getRoot());
+		AsyncMjpegRecorder recorder = new AsyncMjpegRecorder(blocked, pool, 2);
+		recorder.start();
+
+		// The writer takes the first frame and waits in the middle of writing it
+		assertTrue(recorder.record(frame(data, 0)));
+		assertTrue(blocked.writing.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+		assertTrue(recorder.record(frame(data, 1)));
+		assertTrue(recorder.record(frame(data, 2)));
+		assertFalse(recorder.record(frame(data, 3)));
+		assertFalse(recorder.record(frame(data, 4)));
+		assertEquals(2, recorder.getDroppedCount());
+
+		// Closing doesn't wait for the writer, which still records the queued frames
+		recorder.close();
+		blocked.proceed.countDown();
+		assertTrue(recorder.awaitClosed(TIMEOUT_MS));
+
+		assertEquals(Arrays.asList(0L, 1L, 2L), blocked.timestamps);
+	}
+
+	@Test
+	public void refusesFramesAfterTheWriterFailed() throws Exception {
+		byte[] data = MjpegStreams.createFrames(1000, 1, 1).get(0);
+		MjpegRecorder closedRecorder = new MjpegRecorder(folder.getRoot());
+		closedRecorder.close();
+
+		AsyncMjpegRecorder recorder = new AsyncMjpegRecorder(closedRecorder, pool, 2);
+		recorder.start();
+		assertTrue(recorder.record(frame(data, 0)));
+
+		long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+		while(System.currentTimeMillis() < deadline) {
+			try {
+				recorder.record(frame(data, 1));
+			} catch (IOException e) {
+				return;
+			}
+			Thread.sleep(10);
+		}
+		fail("The writer's failure wasn't reported");
+	}
+
+	@Test(expected = IOException.class)
+	public void refusesFramesAfterClosing() throws Exception {
+		AsyncMjpegRecorder recorder = new AsyncMjpegRecorder(new MjpegRecorder(folder.getRoot()), pool, 2);
+		recorder.start();
+		recorder.close();
+
+		recorder.record(frame(new byte[100], 0));
+	}
+}
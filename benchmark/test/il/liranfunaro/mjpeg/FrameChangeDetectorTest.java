@@ -0,0 +1,97 @@
+package il.liranfunaro.mjpeg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import il.liranfunaro.mjpeg.benchmark.MjpegStreams;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class FrameChangeDetectorTest {
+	static final int FRAME_SIZE = 50000;
+
+	private final FrameChangeDetector detector = new FrameChangeDetector();
+	private final byte[] data = MjpegStreams.createFrames(FRAME_SIZE, 1, 1).get(0);
+
+	private static MjpegFrame frame(byte[] data, long timestamp) {
+		return new MjpegFrame(null, data, 0, data.length, timestamp);
+	}
+
+	/**
+	 * @return the frame with bytes added or removed at its end
+	 */
+	private static byte[] resize(byte[] data, int change) {
+		return Arrays.copyOf(data, data.length + change);
+	}
+
+	@Test
+	public void firstFrameIsChanged() {
+		assertTrue(detector.isChanged(frame(data, 0)));
+	}
+
+	@Test
+	public void identicalFrameIsUnchanged() {
+		assertTrue(detector.isChanged(frame(data, 0)));
+		assertFalse(detector.isChanged(frame(data.clone(), 100)));
+		assertEquals(1, detector.getSkippedCount());
+	}
+
+	@Test
+	public void sizeChangeWithinTheToleranceIsUnchanged() {
+		final int tolerated = (int) (FrameChangeDetector.DEFAULT_SIZE_TOLERANCE * data.length);
+		byte[] noisy = resize(data, tolerated);
+		// A couple of bytes of sensor noise
+		noisy[data.length / 2] ^= 1;
+
+		assertTrue(detector.isChanged(frame(data, 0)));
+		assertFalse(detector.isChanged(frame(noisy, 100)));
+	}
+
+	@Test
+	public void sizeChangeBeyondTheToleranceIsChanged() {
+		final int tolerated = (int) (FrameChangeDetector.DEFAULT_SIZE_TOLERANCE * data.length);
+
+		assertTrue(detector.isChanged(frame(data, 0)));
+		assertTrue(detector.isChanged(frame(resize(data, tolerated + 2), 100)));
+		assertTrue(detector.isChanged(frame(data, 200)));
+		assertTrue(detector.isChanged(frame(resize(data, -tolerated - 2), 300)));
+	}
+
+	@Test
+	public void sizeAloneIsNotTrusted() {
+		byte[] moved = data.clone();
+		// Every sampled byte differs, with the same size
+		for(int i = 0; i < moved.length; ++i) {
+			moved[i] ^= 0x55;
+		}
+
+		assertTrue(detector.isChanged(frame(data, 0)));
+		assertTrue(detector.isChanged(frame(moved, 100)));
+	}
+
+	@Test
+	public void zeroToleranceSkipsOnlyIdenticalFrames() {
+		FrameChangeDetector exact = new FrameChangeDetector(FrameChangeDetector.DEFAULT_SAMPLE_COUNT, 0,
+				FrameChangeDetector.DEFAULT_MAX_DIFFERENT_SAMPLES, FrameChangeDetector.DEFAULT_MAX_SKIP_MS);
+
+		assertTrue(exact.isChanged(frame(data, 0)));
+		assertTrue(exact.isChanged(frame(resize(data, 1), 100)));
+		assertFalse(exact.isChanged(frame(resize(data, 1), 200)));
+	}
+
+	@Test
+	public void unchangedFrameIsShownAfterTheLongestSkip() {
+		assertTrue(detector.isChanged(frame(data, 0)));
+		assertFalse(detector.isChanged(frame(data, FrameChangeDetector.DEFAULT_MAX_SKIP_MS - 1)));
+		assertTrue(detector.isChanged(frame(data, FrameChangeDetector.DEFAULT_MAX_SKIP_MS)));
+	}
+
+	@Test
+	public void resetLetsTheNextFrameThrough() {
+		assertTrue(detector.isChanged(frame(data, 0)));
+		detector.reset();
+		assertTrue(detector.isChanged(frame(data, 100)));
+	}
+}
@@ -0,0 +1,87 @@
+package il.liranfunaro.mjpeg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import il.liranfunaro.mjpeg.benchmark.MjpegStreams;
+import il.liranfunaro.mjpeg.jvm.ImageIoFrameDecoder;
+import il.liranfunaro.mjpeg.jvm.IntRaster;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class JpegFrameDecoderTest {
+	static final int WIDTH = 640;
+	static final int HEIGHT = 480;
+
+	private final ImageIoFrameDecoder decoder = new ImageIoFrameDecoder();
+	private final FrameRegion region = new FrameRegion();
+
+	@After
+	public void tearDown() {
+		decoder.dispose();
+	}
+
+	/**
+	 * Show the frame zoomed in around its center, with the visible part rounded out the way the view does
+	 */
+	private void zoom(float zoom) {
+		final float visibleWidth = WIDTH / zoom;
+		final float visibleHeight = HEIGHT / zoom;
+		decoder.setVisibleRegion((int) Math.floor((WIDTH - visibleWidth) / 2), (int) Math.floor((HEIGHT - visibleHeight) / 2),
+				(int) Math.ceil((WIDTH + visibleWidth) / 2), (int) Math.ceil((HEIGHT + visibleHeight) / 2));
+	}
+
+	@Test
+	public void wholeFrameWithoutAVisibleRegion() {
+		assertFalse(decoder.selectRegion(WIDTH, HEIGHT, region));
+		assertEquals(WIDTH, region.width());
+		assertEquals(HEIGHT, region.height());
+	}
+
+	@Test
+	public void wholeFrameBelowTwiceTheZoom() {
+		zoom(1.9f);
+		assertFalse(decoder.selectRegion(WIDTH, HEIGHT, region));
+		assertEquals(WIDTH, region.width());
+		assertEquals(HEIGHT, region.height());
+	}
+
+	@Test
+	public void regionFromTwiceTheZoom() {
+		zoom(2);
+		assertTrue(decoder.selectRegion(WIDTH, HEIGHT, region));
+		assertTrue(region.contains(decoder.visible));
+		assertTrue(region.width() < WIDTH);
+		assertTrue(region.height() < HEIGHT);
+
+		zoom(2.3f);
+		assertTrue(decoder.selectRegion(WIDTH, HEIGHT, region));
+	}
+
+	@Test
+	public void regionIsAlignedAndHasMargins() {
+		decoder.setVisibleRegion(100, 100, 200, 180);
+		assertTrue(decoder.selectRegion(WIDTH, HEIGHT, region));
+
+		assertEquals(0, region.left % JpegFrameDecoder.REGION_ALIGNMENT);
+		assertEquals(0, region.top % JpegFrameDecoder.REGION_ALIGNMENT);
+		assertEquals(0, region.right % JpegFrameDecoder.REGION_ALIGNMENT);
+		assertEquals(0, region.bottom % JpegFrameDecoder.REGION_ALIGNMENT);
+		assertTrue(region.left <= 100 - 100 * JpegFrameDecoder.REGION_MARGIN);
+		assertTrue(region.right >= 200 + 100 * JpegFrameDecoder.REGION_MARGIN);
+	}
+
+	@Test
+	public void decodesTheRegionAtTwiceTheZoom() throws Exception {
+		byte[] data = MjpegStreams.createEncodedFrames(WIDTH, HEIGHT, 1, 1).get(0);
+		zoom(2);
+
+		IntRaster raster = decoder.decode(new MjpegFrame(null, data, 0, data.length));
+
+		FrameRegion decoded = decoder.getDecodedRegion();
+		assertTrue(decoded.width() < WIDTH);
+		assertEquals(decoded.width(), raster.getWidth());
+		assertEquals(decoded.height(), raster.getHeight());
+	}
+}
@@ -0,0 +1,164 @@
+package il.liranfunaro.mjpeg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import il.liranfunaro.mjpeg.JpegFrameValidator.Result;
+import il.liranfunaro.mjpeg.benchmark.MjpegStreams;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class JpegFrameValidatorTest {
+	private final JpegFrameValidator validator = new JpegFrameValidator();
+
+	private static byte[] createFrame() {
+		return MjpegStreams.createFrame(1000, new Random(42));
+	}
+
+	private Result validate(byte[] data) {
+		return validator.validate(new MjpegFrame(null, data, 0, data.length));
+	}
+
+	/**
+	 * @return the position of the first marker of the given type
+	 */
+	private static int indexOfMarker(byte[] data, int marker) {
+		for(int i = 0; i + 1 < data.length; ++i) {
+			if((data[i] & 0xFF) == 0xFF && (data[i + 1] & 0xFF) == marker) {
+				return i;
+			}
+		}
+		throw new AssertionError("No marker " + Integer.toHexString(marker));
+	}
+
+	private static byte[] insert(byte[] data, int pos, byte... bytes) {
+		byte[] result = new byte[data.length + bytes.length];
+		System.arraycopy(data, 0, result, 0, pos);
+		System.arraycopy(bytes, 0, result, pos, bytes.length);
+		System.arraycopy(data, pos, result, pos + bytes.length, data.length - pos);
+		return result;
+	}
+
+	@Test
+	public void validFrame() {
+		assertEquals(Result.VALID, validate(createFrame()));
+		assertEquals(640, validator.getHeader().getWidth());
+		assertEquals(480, validator.getHeader().getHeight());
+	}
+
+	@Test
+	public void encodedFrame() throws IOException {
+		byte[] data = MjpegStreams.createEncodedFrames(320, 200, 1, 1).get(0);
+
+		assertEquals(Result.VALID, validate(data));
+		assertEquals(320, validator.getHeader().getWidth());
+		assertEquals(200, validator.getHeader().getHeight());
+	}
+
+	@Test
+	public void garbageAroundTheFrameIsTrimmed() {
+		byte[] frame = createFrame();
+		byte[] data = new byte[frame.length + 10 + 20];
+		Arrays.fill(data, (byte) 0x55);
+		System.arraycopy(frame, 0, data, 10, frame.length);
+
+		MjpegFrame mjpegFrame = new MjpegFrame(null, data, 0, data.length);
+		assertEquals(Result.VALID, validator.validate(mjpegFrame));
+		assertEquals(10, mjpegFrame.getOffset());
+		assertEquals(frame.length, mjpegFrame.getLength());
+	}
+
+	@Test
+	public void tooMuchTrailingGarbage() {
+		byte[] frame = createFrame();
+		assertEquals(Result.MISSING_EOI, validate(Arrays.copyOf(frame, frame.length + JpegFrameValidator.MAX_TRAILING_BYTES)));
+	}
+
+	@Test
+	public void missingSoi() {
+		byte[] data = createFrame();
+		data[1] = 0x00;
+		assertEquals(Result.MISSING_SOI, validate(data));
+	}
+
+	@Test
+	public void missingEoi() {
+		byte[] data = createFrame();
+		assertEquals(Result.MISSING_EOI, validate(Arrays.copyOf(data, data.length - 1)));
+	}
+
+	@Test
+	public void badMarker() {
+		byte[] data = createFrame();
+		data[indexOfMarker(data, 0xDB)] = 0x12;
+		assertEquals(Result.BAD_MARKER, validate(data));
+	}
+
+	@Test
+	public void truncatedSegment() {
+		byte[] data = createFrame();
+		int dqt = indexOfMarker(data, 0xDB);
+		data[dqt + 2] = (byte) 0xFF;
+		data[dqt + 3] = (byte) 0xF0;
+		assertEquals(Result.TRUNCATED_SEGMENT, validate(data));
+	}
+
+	@Test
+	public void badFrameHeader() {
+		byte[] data = createFrame();
+		int sof = indexOfMarker(data, 0xC0);
+		// The width
+		data[sof + 7] = 0;
+		data[sof + 8] = 0;
+		assertEquals(Result.BAD_FRAME_HEADER, validate(data));
+	}
+
+	@Test
+	public void missingSof() {
+		byte[] data = createFrame();
+		// An APP1 segment of the same length instead
+		data[indexOfMarker(data, 0xC0) + 1] = (byte) 0xE1;
+		assertEquals(Result.MISSING_SOF, validate(data));
+	}
+
+	@Test
+	public void missingSos() {
+		byte[] data = createFrame();
+		int sos = indexOfMarker(data, 0xDA);
+		byte[] headersOnly = Arrays.copyOf(data, sos + 2);
+		headersOnly[sos + 1] = (byte) 0xD9;
+		assertEquals(Result.MISSING_SOS, validate(headersOnly));
+	}
+
+	@Test
+	public void fillBytesBetweenSegments() {
+		byte[] data = createFrame();
+		data = insert(data, indexOfMarker(data, 0xDB), (byte) 0xFF, (byte) 0xFF);
+		assertEquals(Result.VALID, validate(data));
+	}
+
+	@Test
+	public void standaloneMarkersAreSkipped() {
+		byte[] data = createFrame();
+		data = insert(data, indexOfMarker(data, 0xDB), (byte) 0xFF, (byte) 0xD0);
+		assertEquals(Result.VALID, validate(data));
+	}
+
+	@Test
+	public void countsTheResults() {
+		byte[] valid = createFrame();
+		byte[] truncated = Arrays.copyOf(valid, valid.length - 1);
+
+		validate(valid);
+		validate(truncated);
+		validate(truncated);
+
+		assertEquals(1, validator.getCount(Result.VALID));
+		assertEquals(2, validator.getCount(Result.MISSING_EOI));
+		assertEquals(2, validator.getRejectedCount());
+		assertTrue(!Result.MISSING_EOI.isValid());
+	}
+}
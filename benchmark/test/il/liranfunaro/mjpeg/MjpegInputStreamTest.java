@@ -0,0 +1,195 @@
+package il.liranfunaro.mjpeg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import il.liranfunaro.mjpeg.benchmark.ChunkedInputStream;
+import il.liranfunaro.mjpeg.benchmark.MjpegStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Framing a multipart stream by the Content-Length of its parts, and by
+ * scanning for the SOI/EOI markers when a part doesn't declare it
+ */
+public class MjpegInputStreamTest {
+	// A frame with an EXIF thumbnail, whose own EOI comes before the frame's
+	static final byte[] WITH_THUMBNAIL = {
+		(byte) 0xFF, (byte) 0xD8, 1, 2,
+		(byte) 0xFF, (byte) 0xD8, 3, (byte) 0xFF, (byte) 0xD9,
+		4, 5, (byte) 0xFF, (byte) 0xD9,
+	};
+
+	static final int[] CHUNK_SIZES = { 1, 2, 3, 7, 64, 4096 };
+
+	private final FrameBufferPool pool = new FrameBufferPool(FrameBufferPool.DEFAULT_BUFFERS_PER_CLASS);
+
+	private static byte[] toBytes(String text) {
+		byte[] bytes = new byte[text.length()];
+		for(int i = 0; i < bytes.length; ++i) {
+			bytes[i] = (byte) text.charAt(i);
+		}
+		return bytes;
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for(byte[] part : parts) {
+			out.write(part, 0, part.length);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] part(String headers, byte[] frame) {
+		return concat(toBytes(MjpegStreams.BOUNDARY + "\r\n" + headers + "\r\n"), frame, toBytes("\r\n"));
+	}
+
+	private List<byte[]> readFrames(InputStream in) throws IOException {
+		return readFrames(new MjpegInputStream(in));
+	}
+
+	private List<byte[]> readFrames(MjpegInputStream stream) throws IOException {
+		List<byte[]> frames = new ArrayList<byte[]>();
+
+		MjpegFrame frame;
+		while((frame = stream.readFrame(pool)) != null) {
+			frames.add(Arrays.copyOfRange(frame.getData(), frame.getOffset(), frame.getOffset() + frame.getLength()));
+			frame.release();
+		}
+		return frames;
+	}
+
+	private static void assertFrames(List<byte[]> expected, List<byte[]> actual) {
+		assertEquals(expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); ++i) {
+			assertArrayEquals("Frame " + i, expected.get(i), actual.get(i));
+		}
+	}
+
+	@Test
+	public void contentLengthKeepsAnEmbeddedEoi() throws IOException {
+		byte[] data = part("Content-Length: " + WITH_THUMBNAIL.length + "\r\n", WITH_THUMBNAIL);
+		assertFrames(Arrays.asList(WITH_THUMBNAIL), readFrames(new ByteArrayInputStream(data)));
+	}
+
+	@Test
+	public void scanningEndsAtTheFirstEoi() throws IOException {
+		MjpegInputStream stream = new MjpegInputStream(new ByteArrayInputStream(part("", WITH_THUMBNAIL)));
+
+		MjpegFrame frame = stream.readFrame(pool);
+		assertEquals(-1, stream.getContentLength());
+		assertEquals(9, frame.getLength());
+		frame.release();
+	}
+
+	@Test
+	public void reportsTheDeclaredLength() throws IOException {
+		byte[] data = part("Content-Length: " + WITH_THUMBNAIL.length + "\r\n", WITH_THUMBNAIL);
+		MjpegInputStream stream = new MjpegInputStream(new ByteArrayInputStream(data));
+
+		stream.readFrame(pool).release();
+		assertEquals(WITH_THUMBNAIL.length, stream.getContentLength());
+	}
+
+	@Test
+	public void partsSplitAcrossReads() throws IOException {
+		List<byte[]> frames = MjpegStreams.createFrames(3000, 6, 42);
+		for(boolean contentLength : new boolean[] { false, true }) {
+			byte[] data = MjpegStreams.createParts(frames, contentLength);
+			for(int chunkSize : CHUNK_SIZES) {
+				assertFrames(frames, readFrames(new ChunkedInputStream(data, chunkSize)));
+			}
+		}
+	}
+
+	@Test
+	public void headerNameIsCaseInsensitive() throws IOException {
+		byte[] data = part("content-length: " + WITH_THUMBNAIL.length + "\r\n", WITH_THUMBNAIL);
+		assertFrames(Arrays.asList(WITH_THUMBNAIL), readFrames(new ByteArrayInputStream(data)));
+	}
+
+	@Test
+	public void malformedLengthFallsBackToScanning() throws IOException {
+		byte[] frame = MjpegStreams.createFrame(500, new Random(1));
+		byte[] data = concat(part("Content-Length: 12x\r\n", frame), part("Content-Length: " + frame.length + "\r\n", frame));
+		assertFrames(Arrays.asList(frame, frame), readFrames(new ChunkedInputStream(data, 7)));
+	}
+
+	@Test
+	public void lengthAboveTheMaximumFallsBackToScanning() throws IOException {
+		byte[] frame = MjpegStreams.createFrame(500, new Random(1));
+		byte[] data = part("Content-Length: " + (MjpegInputStream.MAX_FRAME_LENGTH + 1) + "\r\n", frame);
+		assertFrames(Arrays.asList(frame), readFrames(new ByteArrayInputStream(data)));
+	}
+
+	@Test
+	public void streamWithoutParts() throws IOException {
+		List<byte[]> frames = MjpegStreams.createFrames(2000, 4, 7);
+		byte[] data = concat(frames.toArray(new byte[frames.size()][]));
+		for(int chunkSize : CHUNK_SIZES) {
+			assertFrames(frames, readFrames(new ChunkedInputStream(data, chunkSize)));
+		}
+	}
+
+	@Test
+	public void frameLargerThanTheDefaultBuffer() throws IOException {
+		List<byte[]> frames = MjpegStreams.createFrames(MjpegInputStream.DEFAULT_FRAME_LENGTH * 3, 2, 3);
+		for(boolean contentLength : new boolean[] { false, true }) {
+			assertFrames(frames, readFrames(new ChunkedInputStream(MjpegStreams.createParts(frames, contentLength), 5000)));
+		}
+	}
+
+	@Test
+	public void oversizedScannedFrameIsDropped() throws IOException {
+		Random random = new Random(5);
+		byte[] oversized = MjpegStreams.createFrame(3000, random);
+		byte[] next = MjpegStreams.createFrame(500, random);
+
+		for(boolean parts : new boolean[] { false, true }) {
+			byte[] data = parts ? concat(part("", oversized), part("", next)) : concat(oversized, next);
+			for(int chunkSize : CHUNK_SIZES) {
+				MjpegInputStream stream = new MjpegInputStream(new ChunkedInputStream(data, chunkSize));
+				stream.setMaxFrameLength(1000);
+
+				assertFrames(Arrays.asList(next), readFrames(stream));
+				assertEquals(1, stream.getOversizedFrameCount());
+			}
+		}
+	}
+
+	@Test
+	public void frameOfTheMaximalLengthIsKept() throws IOException {
+		Random random = new Random(6);
+		byte[] first = MjpegStreams.createFrame(1000, random);
+		byte[] second = MjpegStreams.createFrame(700, random);
+
+		for(int chunkSize : CHUNK_SIZES) {
+			MjpegInputStream stream = new MjpegInputStream(new ChunkedInputStream(concat(first, second), chunkSize));
+			stream.setMaxFrameLength(first.length);
+
+			assertFrames(Arrays.asList(first, second), readFrames(stream));
+			assertEquals(0, stream.getOversizedFrameCount());
+		}
+	}
+
+	@Test
+	public void streamThatNeverEndsItsFrame() throws IOException {
+		byte[] data = new byte[10000];
+		data[0] = (byte) 0xFF;
+		data[1] = (byte) 0xD8;
+
+		MjpegInputStream stream = new MjpegInputStream(new ChunkedInputStream(data, 333));
+		stream.setMaxFrameLength(1000);
+
+		assertEquals(0, readFrames(stream).size());
+		assertEquals(1, stream.getOversizedFrameCount());
+	}
+}
@@ -0,0 +1,152 @@
+package il.liranfunaro.mjpeg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import il.liranfunaro.mjpeg.benchmark.MjpegStreams;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Streams that are served on the loopback interface, read by a single reader
+ */
+public class MjpegSelectorReaderTest {
+	static final int FRAME_COUNT = 20;
+	static final long TIMEOUT_SECONDS = 10;
+
+	private ServerSocket server;
+	private Thread serverThread;
+	private MjpegSelectorReader reader;
+
+	private final List<byte[]> frames = MjpegStreams.createFrames(5000, FRAME_COUNT, 11);
+
+	@Before
+	public void setUp() throws IOException {
+		server = new ServerSocket(0, 8, InetAddress.getLoopbackAddress());
+		final byte[] body = MjpegStreams.createParts(frames, true);
+
+		serverThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while(true) {
+						final Socket socket = server.accept();
+						new Thread(new Runnable() {
+							@Override
+							public void run() {
+								serve(socket, body);
+							}
+						}).start();
+					}
+				} catch (IOException e) {
+					// The server was closed
+				}
+			}
+		});
+		serverThread.start();
+
+		reader = new MjpegSelectorReader(new FrameBufferPool(FrameBufferPool.DEFAULT_BUFFERS_PER_CLASS), 5000);
+		reader.start();
+	}
+
+	private static void serve(Socket socket, byte[] body) {
+		try {
+			// The request is small and ends before the reader waits for the response
+			OutputStream out = socket.getOutputStream();
+			out.write("HTTP/1.0 200 OK\r\nContent-Type: multipart/x-mixed-replace; boundary=BoundaryString\r\n\r\n".getBytes("US-ASCII"));
+			for(int pos = 0; pos < body.length; pos += 1000) {
+				out.write(body, pos, Math.min(1000, body.length - pos));
+				out.flush();
+			}
+			socket.close();
+		} catch (IOException e) {
+			// The reader closed the stream
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		reader.shutdown();
+		server.close();
+		serverThread.join();
+	}
+
+	static class CountingConsumer implements FrameConsumer {
+		final AtomicInteger frameCount = new AtomicInteger();
+		final CountDownLatch ended = new CountDownLatch(1);
+		volatile IOException cause;
+
+		@Override
+		public void onFrame(MjpegFrame frame) {
+			frameCount.incrementAndGet();
+			frame.release();
+		}
+
+		@Override
+		public void onStreamEnded(IOException cause) {
+			this.cause = cause;
+			ended.countDown();
+		}
+	}
+
+	private InetSocketAddress address() {
+		return new InetSocketAddress(server.getInetAddress(), server.getLocalPort());
+	}
+
+	@Test
+	public void readsWholeStreams() throws InterruptedException {
+		CountingConsumer first = new CountingConsumer();
+		CountingConsumer second = new CountingConsumer();
+		reader.open("/", null, first, address());
+		reader.open("/", null, second, address());
+
+		assertTrue(first.ended.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertTrue(second.ended.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertEquals(FRAME_COUNT, first.frameCount.get());
+		assertEquals(FRAME_COUNT, second.frameCount.get());
+		assertNull(first.cause);
+		assertNull(second.cause);
+	}
+
+	@Test
+	public void failingConsumerEndsItsStreamOnly() throws InterruptedException {
+		final RuntimeException failure = new IllegalStateException("Decoder failed");
+		CountingConsumer failing = new CountingConsumer() {
+			@Override
+			public void onFrame(MjpegFrame frame) {
+				frame.release();
+				throw failure;
+			}
+		};
+		CountingConsumer healthy = new CountingConsumer();
+
+		reader.open("/", null, failing, address());
+		reader.open("/", null, healthy, address());
+
+		assertTrue(failing.ended.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertTrue(failing.cause != null && failing.cause.getCause() == failure);
+
+		assertTrue(healthy.ended.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertEquals(FRAME_COUNT, healthy.frameCount.get());
+		assertNull(healthy.cause);
+
+		// The reader still serves new streams
+		CountingConsumer later = new CountingConsumer();
+		reader.open("/", null, later, address());
+		assertTrue(later.ended.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertEquals(FRAME_COUNT, later.frameCount.get());
+	}
+}
@@ -0,0 +1,191 @@
+package il.liranfunaro.mjpeg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import il.liranfunaro.mjpeg.benchmark.MjpegStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The incremental parser must frame a stream like {@link MjpegInputStream}
+ * does, however its bytes are split between the selector's wakeups
+ */
+public class MjpegStreamParserTest {
+	static final String RESPONSE_HEADERS = "HTTP/1.0 200 OK\r\nContent-Type: multipart/x-mixed-replace; boundary=BoundaryString\r\n\r\n";
+
+	static final int[] CHUNK_SIZES = { 1, 2, 3, 7, 64, 4096, Integer.MAX_VALUE };
+
+	private final FrameBufferPool pool = new FrameBufferPool(FrameBufferPool.DEFAULT_BUFFERS_PER_CLASS);
+
+	static class CollectingConsumer implements FrameConsumer {
+		final List<byte[]> frames = new ArrayList<byte[]>();
+
+		@Override
+		public void onFrame(MjpegFrame frame) {
+			frames.add(Arrays.copyOfRange(frame.getData(), frame.getOffset(), frame.getOffset() + frame.getLength()));
+			frame.release();
+		}
+
+		@Override
+		public void onStreamEnded(IOException cause) {
+		}
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for(byte[] part : parts) {
+			out.write(part, 0, part.length);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] toBytes(String text) {
+		byte[] bytes = new byte[text.length()];
+		for(int i = 0; i < bytes.length; ++i) {
+			bytes[i] = (byte) text.charAt(i);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Feed the data in chunks, each in a buffer of its own like a read of the selector
+	 */
+	private static void feed(MjpegStreamParser parser, byte[] data, int chunkSize) throws IOException {
+		for(int pos = 0; pos < data.length; ) {
+			int count = (int) Math.min(chunkSize, (long) data.length - pos);
+			ByteBuffer buffer = ByteBuffer.allocateDirect(count);
+			buffer.put(data, pos, count);
+			buffer.flip();
+			parser.parse(buffer);
+			assertEquals(0, buffer.remaining());
+			pos += count;
+		}
+	}
+
+	private List<byte[]> parse(byte[] data, int chunkSize, boolean responseHeaders) throws IOException {
+		CollectingConsumer consumer = new CollectingConsumer();
+		feed(new MjpegStreamParser(pool, consumer, responseHeaders), data, chunkSize);
+		return consumer.frames;
+	}
+
+	private static void assertFrames(List<byte[]> expected, List<byte[]> actual) {
+		assertEquals(expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); ++i) {
+			assertArrayEquals("Frame " + i, expected.get(i), actual.get(i));
+		}
+	}
+
+	@Test
+	public void splitAtEveryBoundary() throws IOException {
+		List<byte[]> frames = MjpegStreams.createFrames(2000, 5, 42);
+		for(boolean contentLength : new boolean[] { false, true }) {
+			byte[] data = concat(toBytes(RESPONSE_HEADERS), MjpegStreams.createParts(frames, contentLength));
+			for(int chunkSize : CHUNK_SIZES) {
+				assertFrames(frames, parse(data, chunkSize, true));
+			}
+		}
+	}
+
+	@Test
+	public void matchesTheInputStream() throws IOException {
+		List<byte[]> frames = MjpegStreams.createFrames(3000, 8, 9);
+		for(boolean contentLength : new boolean[] { false, true }) {
+			byte[] data = MjpegStreams.createParts(frames, contentLength);
+
+			List<byte[]> expected = new ArrayList<byte[]>();
+			MjpegInputStream stream = new MjpegInputStream(new ByteArrayInputStream(data));
+			MjpegFrame frame;
+			while((frame = stream.readFrame(pool)) != null) {
+				expected.add(Arrays.copyOfRange(frame.getData(), frame.getOffset(), frame.getOffset() + frame.getLength()));
+				frame.release();
+			}
+
+			assertFrames(expected, parse(data, 1000, false));
+		}
+	}
+
+	@Test
+	public void markersSplitBetweenReads() throws IOException {
+		// With fill bytes before the markers
+		byte[] frame = { (byte) 0xFF, (byte) 0xD8, 1, 2, (byte) 0xFF, 0, 3, (byte) 0xFF, (byte) 0xFF, (byte) 0xD9 };
+		byte[] data = concat(new byte[] { 9, (byte) 0xFF }, frame, frame);
+
+		// Every split point, including inside the SOI and the EOI
+		for(int split = 1; split < data.length; ++split) {
+			CollectingConsumer consumer = new CollectingConsumer();
+			MjpegStreamParser parser = new MjpegStreamParser(pool, consumer, false);
+			parser.parse(ByteBuffer.wrap(data, 0, split));
+			parser.parse(ByteBuffer.wrap(data, split, data.length - split));
+
+			assertFrames(Arrays.asList(frame, frame), consumer.frames);
+		}
+	}
+
+	@Test
+	public void contentLengthKeepsAnEmbeddedEoi() throws IOException {
+		byte[] frame = { (byte) 0xFF, (byte) 0xD8, 1, (byte) 0xFF, (byte) 0xD9, 2, (byte) 0xFF, (byte) 0xD9 };
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		MjpegStreams.writePart(data, frame, true);
+
+		for(int chunkSize : CHUNK_SIZES) {
+			assertFrames(Arrays.asList(frame), parse(data.toByteArray(), chunkSize, false));
+		}
+	}
+
+	@Test
+	public void unexpectedResponseFails() {
+		try {
+			parse(toBytes("HTTP/1.0 401 Unauthorized\r\n\r\n"), 5, true);
+			fail();
+		} catch (IOException e) {
+		}
+	}
+
+	@Test
+	public void oversizedFrameFailsTheStream() throws IOException {
+		Random random = new Random(3);
+		byte[] small = MjpegStreams.createFrame(500, random);
+		byte[] large = MjpegStreams.createFrame(5000, random);
+
+		for(int chunkSize : CHUNK_SIZES) {
+			CollectingConsumer consumer = new CollectingConsumer();
+			MjpegStreamParser parser = new MjpegStreamParser(pool, consumer, false);
+			parser.setMaxFrameLength(1000);
+
+			try {
+				feed(parser, concat(small, large), chunkSize);
+				fail();
+			} catch (IOException e) {
+				assertTrue(e.getMessage().contains("1000"));
+			}
+			parser.release();
+
+			assertFrames(Arrays.asList(small), consumer.frames);
+		}
+	}
+
+	@Test
+	public void frameOfTheMaximalLengthIsKept() throws IOException {
+		byte[] frame = MjpegStreams.createFrame(1000, new Random(4));
+
+		for(int chunkSize : CHUNK_SIZES) {
+			CollectingConsumer consumer = new CollectingConsumer();
+			MjpegStreamParser parser = new MjpegStreamParser(pool, consumer, false);
+			parser.setMaxFrameLength(frame.length);
+			feed(parser, concat(frame, frame), chunkSize);
+
+			assertFrames(Arrays.asList(frame, frame), consumer.frames);
+		}
+	}
+}
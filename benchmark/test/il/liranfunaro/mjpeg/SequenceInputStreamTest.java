@@ -0,0 +1,121 @@
+package il.liranfunaro.mjpeg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import il.liranfunaro.mjpeg.benchmark.ChunkedInputStream;
+import il.liranfunaro.mjpeg.benchmark.MjpegStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Skipping must frame the stream exactly like reading does: it stops at
+ * the end of a frame, and the next read returns -1 for that end.
+ */
+public class SequenceInputStreamTest {
+	static final byte[] FIRST = { (byte) 0xFF, (byte) 0xD8, 1, 2, 3, (byte) 0xFF, (byte) 0xD9 };
+	static final byte[] SECOND = { (byte) 0xFF, (byte) 0xD8, 4, 5, (byte) 0xFF, (byte) 0xD9 };
+
+	private static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for(byte[] part : parts) {
+			out.write(part, 0, part.length);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] part(byte[] frame) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MjpegStreams.writePart(out, frame, true);
+		return out.toByteArray();
+	}
+
+	private static byte[] readFrame(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[3];
+		int count;
+		while((count = in.read(buffer, 0, buffer.length)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+
+	private static void assertSkipStopsAtFrameEnd(InputStream in) throws IOException {
+		assertEquals(FIRST.length, in.skip(1000));
+		assertEquals(-1, in.read());
+		assertArrayEquals(SECOND, readFrame(in));
+	}
+
+	@Test
+	public void skipAcrossFrameBoundaryByScanning() throws IOException {
+		byte[] data = concat(new byte[] { 7, 7 }, FIRST, SECOND);
+		assertSkipStopsAtFrameEnd(new MjpegInputStream(new ByteArrayInputStream(data)));
+	}
+
+	@Test
+	public void skipAcrossFrameBoundaryByContentLength() throws IOException {
+		byte[] data = concat(part(FIRST), part(SECOND));
+		assertSkipStopsAtFrameEnd(new MjpegInputStream(new ByteArrayInputStream(data)));
+	}
+
+	@Test
+	public void skipAcrossFrameBoundaryInSmallChunks() throws IOException {
+		assertSkipStopsAtFrameEnd(new MjpegInputStream(new ChunkedInputStream(concat(FIRST, SECOND), 1)));
+		assertSkipStopsAtFrameEnd(new MjpegInputStream(new ChunkedInputStream(concat(part(FIRST), part(SECOND)), 1)));
+	}
+
+	@Test
+	public void skipInsideFrameThenReadRest() throws IOException {
+		MjpegInputStream in = new MjpegInputStream(new ByteArrayInputStream(concat(FIRST, SECOND)));
+
+		assertEquals(3, in.skip(3));
+		assertArrayEquals(new byte[] { 2, 3, (byte) 0xFF, (byte) 0xD9 }, readFrame(in));
+		assertArrayEquals(SECOND, readFrame(in));
+	}
+
+	@Test
+	public void skipFramesTheStreamLikeRead() throws IOException {
+		List<byte[]> frames = MjpegStreams.createFrames(4096, 8, 42);
+		for(boolean contentLength : new boolean[] { false, true }) {
+			byte[] stream = MjpegStreams.createParts(frames, contentLength);
+
+			MjpegInputStream reader = new MjpegInputStream(new ChunkedInputStream(stream, 1000));
+			MjpegInputStream skipper = new MjpegInputStream(new ChunkedInputStream(stream, 1000));
+			for(int i = 0; ; ++i) {
+				byte[] read = readFrame(reader);
+				long skipped = skipper.skip(Long.MAX_VALUE);
+				assertEquals("Frame " + i, read.length, skipped);
+				assertEquals(-1, skipper.read());
+				if(read.length == 0) {
+					break;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void fillBytesBeforeMarkers() throws IOException {
+		byte[] frame = { (byte) 0xFF, (byte) 0xD8, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xD9 };
+		byte[] data = concat(new byte[] { 7, (byte) 0xFF }, frame, frame);
+
+		for(int chunkSize : new int[] { 1, 2, 3, 100 }) {
+			MjpegInputStream in = new MjpegInputStream(new ChunkedInputStream(data, chunkSize));
+			assertArrayEquals(frame, readFrame(in));
+			assertArrayEquals(frame, readFrame(in));
+
+			// One byte at a time
+			in = new MjpegInputStream(new ChunkedInputStream(data, chunkSize));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			int c;
+			while((c = in.read()) != -1) {
+				out.write(c);
+			}
+			assertArrayEquals(frame, out.toByteArray());
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package il.liranfunaro.mjpeg.benchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Test;
+
+/**
+ * The render path that {@link RenderPathBenchmark} times must not allocate:
+ * a gesture moving the frame out of bounds and its snap-back animation,
+ * and the render thread taking new frames and reading the transform.
+ */
+public class RenderPathAllocationTest {
+	static final int ITERATIONS = 100000;
+
+	// The frames the snap-back takes, the first of which starts its clock
+	static final int SNAP_BACK_FRAMES = (int) ((RenderPathBenchmark.SNAP_BACK_DURATION_NANOS + RenderPathBenchmark.FRAME_INTERVAL_NANOS - 1) /
+			RenderPathBenchmark.FRAME_INTERVAL_NANOS) + 1;
+
+	@Test
+	public void setupFitsTheFrame() {
+		RenderPathBenchmark benchmark = new RenderPathBenchmark();
+		benchmark.setup();
+
+		assertSame(benchmark.content, benchmark.snapshot.content);
+		assertEquals(RenderPathBenchmark.VIEW_WIDTH, benchmark.snapshot.getDisplayWidth());
+	}
+
+	@Test
+	public void gestureSnapsBackIntoTheView() {
+		RenderPathBenchmark benchmark = new RenderPathBenchmark();
+		benchmark.setup();
+		final float fittedX = benchmark.snapshot.translateX;
+		final float fittedY = benchmark.snapshot.translateY;
+
+		assertEquals(SNAP_BACK_FRAMES, benchmark.gesture());
+		assertEquals(fittedX, benchmark.snapshot.translateX, 0.01f);
+		assertEquals(fittedY, benchmark.snapshot.translateY, 0.01f);
+
+		// Over and over, without drifting out of the view
+		for(int i = 0; i < 1000; ++i) {
+			assertEquals(SNAP_BACK_FRAMES, benchmark.gesture());
+		}
+		assertEquals(fittedX, benchmark.snapshot.translateX, 0.5f);
+	}
+
+	@Test
+	public void renderTakesTheNewFrames() {
+		RenderPathBenchmark benchmark = new RenderPathBenchmark();
+		benchmark.setup();
+
+		benchmark.render();
+		assertNotSame(benchmark.content, benchmark.snapshot.content);
+		assertEquals(RenderPathBenchmark.FRAME_WIDTH, benchmark.snapshot.frameWidth);
+	}
+
+	@Test
+	public void renderPathDoesNotAllocate() {
+		RenderPathBenchmark benchmark = new RenderPathBenchmark();
+		benchmark.setup();
+
+		// Let the JIT settle before measuring, so its own allocations aren't counted
+		for(int i = 0; i < ITERATIONS; ++i) {
+			benchmark.gesture();
+			benchmark.render();
+		}
+
+		final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		final long threadId = Thread.currentThread().getId();
+		long animatedFrames = 0;
+		final long before = threads.getThreadAllocatedBytes(threadId);
+		for(int i = 0; i < ITERATIONS; ++i) {
+			animatedFrames += benchmark.gesture();
+			benchmark.render();
+		}
+		final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+		// Every gesture was snapped back, to the end of its animation
+		assertEquals((long) SNAP_BACK_FRAMES * ITERATIONS, animatedFrames);
+
+		// Allow for the bean's own bookkeeping, which is far below a byte per iteration
+		assertTrue("The render path allocated " + allocated + " bytes in " + ITERATIONS + " gestures",
+				allocated < ITERATIONS);
+	}
+}
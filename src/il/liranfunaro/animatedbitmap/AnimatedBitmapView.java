@@ -1,10 +1,11 @@
 package il.liranfunaro.animatedbitmap;
 
+import il.liranfunaro.mjpeg.FrameRegion;
+
 import java.io.IOException;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.content.Context;
 import android.graphics.Bitmap;
@@ -12,8 +13,11 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Point;
+import android.graphics.Rect;
 import android.graphics.RectF;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.view.GestureDetectorCompat;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -23,7 +27,6 @@ import android.view.ScaleGestureDetector;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.view.View;
-import android.view.animation.AccelerateDecelerateInterpolator;
 import android.widget.TextView;
 
 public class AnimatedBitmapView extends SurfaceView implements
@@ -39,41 +42,104 @@ public class AnimatedBitmapView extends SurfaceView implements
 	// Parameter: will the frame-per-second text box is drawn
 	protected boolean showFps = false;
 	
-	// An AsyncTask that render the animation frame-by-frame
-	protected AnimationTask animationTask = new AnimationTask();
+	// Parameter: how long frames are buffered to smooth their arrival, 0 to show them as soon as they're decoded
+	protected volatile long playbackDelay = 0;
+	
+	// Parameter: lower the decoding quality of staged animations when the device can't keep up
+	protected volatile boolean adaptiveQuality = false;
+	
+	// Parameter: the highest frame rate of staged animations, 0 for no limit
+	protected volatile float maxFrameRate = 0;
+	
+	// Parameter: decodes staged animations on a pool shared with other views, null for a thread of their own
+	protected volatile SharedDecodeExecutor decodeExecutor = null;
+	
+	// Parameter: how long a paused playback stays connected, in milliseconds, 0 to stop it when paused
+	protected volatile long standbyTimeout = 0;
+	
+	// Frames of staged animations are read and discarded without decoding while paused
+	protected volatile boolean decodingPaused = false;
+	
+	// True while the playback is paused but stays connected, frames are discarded like while decoding is paused
+	protected volatile boolean standby = false;
+	
+	// Stops a playback that stayed in standby for too long
+	protected final Runnable standbyExpired = new Runnable() {
+		@Override
+		public void run() {
+			standby = false;
+			stopPlayback(false);
+		}
+	};
+	
+	// Reads and decodes the animation frame-by-frame
+	protected final AnimationTask animationTask = new AnimationTask();
+	
+	// Runs the animation task in the background, and runs it again when the playback restarts
+	protected final PlaybackEngine playbackEngine = new PlaybackEngine(animationTask);
+	
+	// Shows the frame rate on the UI thread
+	protected final Handler uiHandler = new Handler(Looper.getMainLooper());
 	
 	// True if no frame had been drawn yet
 	protected AtomicBoolean isFirstFrame = new AtomicBoolean(true);
-	
-	// Indicates if the animation is running 
-	protected final AtomicBoolean playing = new AtomicBoolean(false);
 
-	// The currently displayed bitmap
-	protected AtomicReference<Bitmap> currentBitmap = new AtomicReference<Bitmap>(null);
-	
 	// Used to draw the animation frame
 	protected final Paint framePaint = new Paint();
 
-	// The transformation matrix for the video square
-	protected Matrix transformation = new Matrix();
+	// Passes decoded bitmaps to the render thread, which takes the newest one when it draws
+	protected final TripleBuffer<Bitmap> frameBuffer = new TripleBuffer<Bitmap>();
+	
+	// The drawn bitmap, the part of the frame it holds, and where the frame is shown.
+	// Read by the render thread without locking.
+	protected final FrameTransform<Bitmap> frameTransform = new FrameTransform<Bitmap>();
 	
 	// Indicate the display width
-	protected int dispWidth;
+	protected volatile int dispWidth;
 	
 	// Indicate the diaply height
-	protected int dispHeight;
+	protected volatile int dispHeight;
+	
+	// Notified of the size the frame is displayed at, and of its visible part
+	// if it is a RegionAnimatedBitmap
+	protected volatile DisplaySizeListener displaySizeListener = null;
+	
+	// Changes with the listener, so the render thread notifies a new listener from scratch
+	protected final AtomicInteger displaySizeGeneration = new AtomicInteger(0);
+	
+	// What the listener was last notified of, used by the render thread
+	protected int publishedGeneration = 0;
+	protected int displayedWidth = 0;
+	protected int displayedHeight = 0;
+	protected final Rect visibleRegion = new Rect();
+	
+	// Reused by the render thread, so drawing allocates nothing
+	protected final FrameTransform.Snapshot<Bitmap> renderFrame = new FrameTransform.Snapshot<Bitmap>();
+	protected final Matrix drawMatrix = new Matrix();
+	protected final RectF bitmapRect = new RectF();
+	protected final RectF regionRect = new RectF();
+	protected final FrameRegion visibleFrameRegion = new FrameRegion();
+	protected final Rect visibleBounds = new Rect();
 	
 	// SurfaceHolder holder
 	protected final SurfaceHolder holder = getHolder();
 	
+	// Draws the latest frame and transformation at most once per display refresh
+	protected final RenderLoop renderLoop = new RenderLoop("AnimationRenderer", new RenderLoop.Renderer() {
+		@Override
+		public boolean onRenderFrame(long frameTimeNanos) {
+			return drawFrame(frameTimeNanos);
+		}
+	});
+	
 	/**
 	 * Detectors for gestures
 	 */
 	protected ScaleGestureDetector scaleGestureDetector;
 	protected GestureDetectorCompat gustureDetector; 
 	
-	// Used to animate the square when it had been moved out of bound
-	protected final static AccelerateDecelerateInterpolator animationInterpolator = new AccelerateDecelerateInterpolator();
+	// How long the square takes to move back into bound, in milliseconds
+	protected final static long OFFSET_ANIMATION_DURATION = 300;
 	
 	public AnimatedBitmapView(Context context, AttributeSet attrs) {
 		super(context, attrs);
@@ -94,6 +160,97 @@ public class AnimatedBitmapView extends SurfaceView implements
 		this.backgroundColor = backgroundColor;
 	}
 	
+	/**
+	 * Buffer the frames of staged animations to play them at a steady pace.
+	 * Takes effect when the playback starts.
+	 * 
+	 * @param delay the target delay in milliseconds, 0 for the lowest latency
+	 */
+	public void setPlaybackDelay(long delay) {
+		this.playbackDelay = delay;
+	}
+	
+	/**
+	 * Step the decoding quality down when frames can't be decoded as fast as
+	 * they arrive, and back up when there is headroom. Applies to animations
+	 * that are {@link DegradableAnimatedBitmap}s, and takes effect when the playback starts.
+	 */
+	public void setAdaptiveQuality(boolean adaptiveQuality) {
+		this.adaptiveQuality = adaptiveQuality;
+	}
+	
+	/**
+	 * Limit the frame rate of staged animations. Frames that arrive above the
+	 * limit are read and discarded without being decoded.
+	 * Takes effect when the playback starts.
+	 * 
+	 * @param maxFrameRate the highest rate in frames per second, 0 for no limit
+	 */
+	public void setMaxFrameRate(float maxFrameRate) {
+		this.maxFrameRate = maxFrameRate;
+	}
+	
+	/**
+	 * Decode staged animations on a pool of threads that is shared with other
+	 * views, instead of on a thread of their own. Only the newest frame is
+	 * decoded, so the playback delay doesn't apply.
+	 * Takes effect when the playback starts.
+	 * 
+	 * @param executor the shared pool, or null to decode on a dedicated thread
+	 */
+	public void setDecodeExecutor(SharedDecodeExecutor executor) {
+		this.decodeExecutor = executor;
+	}
+	
+	/**
+	 * Run the playback on the given executor instead of the bounded pool that
+	 * playbacks share, for a screen that plays more streams than the pool has threads.
+	 * Takes effect when the playback starts.
+	 * 
+	 * @param executor the executor, or null for {@link PlaybackEngine#getDefaultExecutor()}
+	 */
+	public void setPlaybackExecutor(Executor executor) {
+		playbackEngine.setExecutor(executor);
+	}
+	
+	/**
+	 * Stop decoding a staged animation, while keeping its stream open.
+	 * Used to spare the decoding of views that aren't visible.
+	 */
+	public void setDecodingPaused(boolean paused) {
+		this.decodingPaused = paused;
+	}
+	
+	public boolean isDecodingPaused() {
+		return decodingPaused;
+	}
+	
+	/**
+	 * Keep a paused playback connected for a while, so it resumes with a live
+	 * frame instead of connecting again
+	 * 
+	 * @param timeout how long to stay connected in milliseconds, 0 to stop playing when paused
+	 * @see #pausePlayback()
+	 */
+	public void setStandbyTimeout(long timeout) {
+		this.standbyTimeout = timeout;
+	}
+	
+	public boolean isInStandby() {
+		return standby;
+	}
+	
+	/**
+	 * Publish the size the frame is displayed at whenever it changes
+	 * 
+	 * @param listener the listener, or null to stop publishing
+	 */
+	public void setDisplaySizeListener(DisplaySizeListener listener) {
+		this.displaySizeListener = listener;
+		displaySizeGeneration.incrementAndGet();
+		redraw();
+	}
+	
 	public void showFps(boolean showFps) {
 		this.showFps = showFps;
 		applyFpsBoxVisibility();
@@ -129,11 +286,7 @@ public class AnimatedBitmapView extends SurfaceView implements
 		    	float focusX = detector.getFocusX();
 		    	float focusY = detector.getFocusY();
 		    	
-		    	synchronized (transformation) {
-		    		transformation.postTranslate(-focusX, -focusY);
-		    		transformation.postScale(scale, scale);
-		    		transformation.postTranslate(focusX, focusY);
-				}
+		    	frameTransform.postScale(scale, focusX, focusY);
 		    	
 		        redraw();
 		        return true;
@@ -147,9 +300,7 @@ public class AnimatedBitmapView extends SurfaceView implements
         	@Override
             public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX,
                     float distanceY) {
-        		synchronized (transformation) {
-					transformation.postTranslate(-distanceX, -distanceY);
-				}
+        		frameTransform.postTranslate(-distanceX, -distanceY);
 				redraw();
                 return true;
             }
@@ -160,16 +311,25 @@ public class AnimatedBitmapView extends SurfaceView implements
         gustureDetector.setOnDoubleTapListener(new SimpleOnGestureListener() {
         	@Override
         	public boolean onDoubleTap(MotionEvent e) {
-        		calculateBestFitTransformation();
+        		frameTransform.fit(dispWidth, dispHeight);
         		redraw();
         		return true;
         	}
+        	
+        	@Override
+        	public boolean onSingleTapConfirmed(MotionEvent e) {
+        		return performClick();
+        	}
         });
 		
 		setOnTouchListener(new OnTouchListener() {
 			
 			@Override
 			public boolean onTouch(View v, MotionEvent event) {
+				if(event.getAction() == MotionEvent.ACTION_DOWN) {
+					frameTransform.cancelAnimation();
+				}
+				
 				boolean isDectected = scaleGestureDetector.onTouchEvent(event);
 				isDectected |= gustureDetector.onTouchEvent(event);
 				
@@ -183,13 +343,19 @@ public class AnimatedBitmapView extends SurfaceView implements
 		});
 	}
 	
+	/**
+	 * Play the stream of the given producer, unless already playing.
+	 * A playback that is stopping is played again once it stopped.
+	 * 
+	 * @param producer the producer, or null to play the last one again
+	 */
 	public void startPlayback(AnimationStreamProducer producer) {
-		if(playing.compareAndSet(false, true)) {
-			if(producer != null) {
-				animationTask.execute(producer);
-			} else {
-				animationTask.execute();
-			}
+		if(producer != null) {
+			animationTask.producer = producer;
+		}
+		
+		if(animationTask.producer != null) {
+			playbackEngine.start();
 		}
 	}
 	
@@ -197,27 +363,88 @@ public class AnimatedBitmapView extends SurfaceView implements
 		startPlayback(null);
 	}
 
+	/**
+	 * Play a staged animation whose frames another thread reads, such as a
+	 * reader that serves many streams at once, instead of reading them on a
+	 * playback thread. The frames are decoded on the shared decode executor,
+	 * which must be set. The playback stops like any other, or when the sink
+	 * is closed, and isn't started again when the view is resumed.
+	 * 
+	 * @return the sink to pass the animation's frames to
+	 * @see #setDecodeExecutor(SharedDecodeExecutor)
+	 */
+	public <F> FrameSink<F> startPushedPlayback(StagedAnimatedBitmap<F> animatedBitmap) {
+		if(decodeExecutor == null) {
+			throw new IllegalStateException("A pushed playback is decoded on a shared decode executor");
+		}
+		
+		stopPlayback(false);
+		animationTask.producer = null;
+		return animationTask.startPushedAnimation(animatedBitmap);
+	}
+
+	/**
+	 * Stop playing. The stream is closed once the frame being read arrives.
+	 * 
+	 * @param wait if true, return only after the stream was closed
+	 */
 	public void stopPlayback(boolean wait) {
-		if(playing.compareAndSet(true, false)) {
-			while (wait) {
-				try {
-					animationTask.get();
-					return;
-				} catch (Exception e) {
-					Log.e(TAG, e.getMessage(), e);
-				}
-			}
-		}		
+		uiHandler.removeCallbacks(standbyExpired);
+		standby = false;
+		playbackEngine.stop(wait);
+		
+		final AnimationTask.StagedPlayback<?> pushed = animationTask.pushedPlayback;
+		if(pushed != null) {
+			pushed.stop(wait);
+		}
+	}
+	
+	/**
+	 * Stop showing the animation, when the view is hidden. With a standby
+	 * timeout, the stream of a staged animation stays open and its frames are
+	 * read without decoding them, until the playback resumes or the timeout
+	 * passes. Without one, the playback stops. Called on the UI thread.
+	 */
+	public void pausePlayback() {
+		if(standby) {
+			return;
+		}
+		
+		if(standbyTimeout > 0 && playbackEngine.isPlaying()) {
+			standby = true;
+			uiHandler.postDelayed(standbyExpired, standbyTimeout);
+		} else {
+			stopPlayback(false);
+		}
+	}
+	
+	/**
+	 * Show the animation again after it was paused. A playback in standby
+	 * decodes the next frame that arrives, one that was stopped starts over.
+	 * Called on the UI thread.
+	 */
+	public void resumePlayback() {
+		uiHandler.removeCallbacks(standbyExpired);
+		standby = false;
+		startPlayback();
+	}
+	
+	public PlaybackEngine.State getPlaybackState() {
+		return playbackEngine.getState();
 	}
 	
 	@Override
 	public void surfaceCreated(SurfaceHolder holder) {
-		startPlayback();
+		// Draws the last frame at once, until a live one is decoded
+		renderLoop.start();
+		resumePlayback();
 	}
 	
 	@Override
 	public void surfaceDestroyed(SurfaceHolder holder) {
-		stopPlayback(true);
+		// Only the render thread draws, so the playback doesn't have to end before the surface does
+		pausePlayback();
+		renderLoop.stop();
 	}
 
 	@Override
@@ -233,197 +460,546 @@ public class AnimatedBitmapView extends SurfaceView implements
 	 * 
 	 * @param bitmap
 	 *            the new frame
+	 * @return a previous frame that is no longer drawn, or null
 	 */
-	protected void setFrame(Bitmap bitmap) {
-		if(bitmap != null) {
-			currentBitmap.set(bitmap);
-			redraw();
+	protected Bitmap setFrame(Bitmap bitmap) {
+		if(bitmap == null) {
+			return null;
 		}
+		
+		return setFrame(bitmap, bitmap.getWidth(), bitmap.getHeight(), null);
 	}
 	
-	protected void render(Canvas canvas, Bitmap bitmap) {
-		if(isFirstFrame.compareAndSet(true, false)) {
-			calculateBestFitTransformation(bitmap);
+	/**
+	 * Sets a new frame that may hold only a region of the whole frame, and redraw the view.
+	 * The bitmap must not be changed until it is returned by a following call.
+	 * Called by one thread at a time.
+	 * 
+	 * @param bitmap the new frame
+	 * @param width the width of the whole frame
+	 * @param height the height of the whole frame
+	 * @param region the part of the whole frame that the bitmap holds, null if it holds all of it
+	 * @return a previous frame that is no longer drawn, or null
+	 */
+	protected Bitmap setFrame(Bitmap bitmap, int width, int height, Rect region) {
+		if(bitmap == null) {
+			return null;
 		}
 		
-		canvas.drawColor(backgroundColor);
-		synchronized (transformation) {
-			canvas.drawBitmap(bitmap, transformation, framePaint);
+		final TripleBuffer.Slot<Bitmap> back = frameBuffer.getBack();
+		back.content = bitmap;
+		back.frameWidth = width;
+		back.frameHeight = height;
+		if(region != null) {
+			back.region.set(region.left, region.top, region.right, region.bottom);
+		} else {
+			back.region.set(0, 0, width, height);
 		}
+		
+		final Bitmap released = frameBuffer.publish();
+		redraw();
+		return released;
 	}
 	
 	/**
-	 * Redraw the view
+	 * Draw the current frame. The bitmap is scaled to the part of the frame
+	 * it holds, and then transformed with the rest of the frame.
+	 * Called on the render thread, and allocates nothing.
 	 */
-	public void redraw() {
-		final Bitmap bitmap = currentBitmap.get();
+	protected void render(Canvas canvas) {
+		canvas.drawColor(backgroundColor);
+		
+		frameTransform.read(renderFrame);
+		final Bitmap bitmap = renderFrame.content;
 		if(bitmap == null) {
 			return;
 		}
 		
+		if(isFirstFrame.compareAndSet(true, false) && frameTransform.fit(dispWidth, dispHeight)) {
+			frameTransform.read(renderFrame);
+		}
+		
+		final FrameRegion region = renderFrame.region;
+		bitmapRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+		regionRect.set(region.left, region.top, region.right, region.bottom);
+		drawMatrix.setRectToRect(bitmapRect, regionRect, Matrix.ScaleToFit.FILL);
+		drawMatrix.postScale(renderFrame.scaleX, renderFrame.scaleY);
+		drawMatrix.postTranslate(renderFrame.translateX, renderFrame.translateY);
+		
+		canvas.drawBitmap(bitmap, drawMatrix, framePaint);
+		publishDisplaySize(renderFrame);
+	}
+	
+	/**
+	 * Notify the listener if the frame is displayed at a new size, or if
+	 * another part of it is visible. Called on the render thread.
+	 */
+	protected void publishDisplaySize(FrameTransform.Snapshot<Bitmap> frame) {
+		// Read before the listener, so a listener that is set meanwhile is notified again
+		final int generation = displaySizeGeneration.get();
+		final DisplaySizeListener listener = displaySizeListener;
+		
+		if(generation != publishedGeneration) {
+			publishedGeneration = generation;
+			displayedWidth = 0;
+			displayedHeight = 0;
+			visibleRegion.setEmpty();
+		}
+		
+		if(listener == null || frame.frameWidth <= 0) {
+			return;
+		}
+		
+		final int displayWidth = frame.getDisplayWidth();
+		final int displayHeight = frame.getDisplayHeight();
+		
+		if(displayWidth != displayedWidth || displayHeight != displayedHeight) {
+			displayedWidth = displayWidth;
+			displayedHeight = displayHeight;
+			listener.onDisplaySizeChanged(displayWidth, displayHeight);
+		}
+		
+		if(!(listener instanceof RegionAnimatedBitmap)) {
+			return;
+		}
+		
+		if(frame.getVisibleRegion(dispWidth, dispHeight, visibleFrameRegion)) {
+			visibleBounds.set(visibleFrameRegion.left, visibleFrameRegion.top, visibleFrameRegion.right, visibleFrameRegion.bottom);
+		} else {
+			visibleBounds.setEmpty();
+		}
+		
+		if(!visibleBounds.equals(visibleRegion)) {
+			visibleRegion.set(visibleBounds);
+			((RegionAnimatedBitmap) listener).onVisibleRegionChanged(visibleBounds);
+		}
+	}
+	
+	/**
+	 * Redraw the view at the next display refresh. Any number of calls
+	 * before it are drawn as a single frame.
+	 */
+	public void redraw() {
+		renderLoop.requestRender();
+	}
+	
+	/**
+	 * Draw a frame on the render thread, with the latest bitmap and transformation
+	 * 
+	 * @return true while the square is animated, so another frame should follow
+	 */
+	protected boolean drawFrame(long frameTimeNanos) {
+		final boolean animating = frameTransform.stepAnimation(frameTimeNanos, OFFSET_ANIMATION_DURATION * 1000000);
+		
+		// Keeps the frame at the same size on the screen if its resolution changed
+		frameTransform.takeFrame(frameBuffer);
+		
+		if(frameTransform.getContent() == null) {
+			return animating;
+		}
+		
 		Canvas canvas = holder.lockCanvas();
 		if(canvas == null) {
-			return;
+			return animating;
 		}
 
 		try {
-			render(canvas, bitmap);
+			render(canvas);
 		} finally {
-			if (canvas != null) {
-				holder.unlockCanvasAndPost(canvas);
-			}
+			holder.unlockCanvasAndPost(canvas);
 		}
+		
+		return animating;
 	}
 
 	/**
-	 * Adjust the square when it is out of bound
+	 * Move the square back into bound when it is out of it, animated by the render loop
 	 */
 	private void adjustOffset() {
-		float dx = 0.0f, dy = 0.0f;
-		boolean noChangeX = false;
-		boolean noChangeY = false;
-		
-		final Bitmap bitmap = currentBitmap.get();
-		if(bitmap == null) {
-			return;
+		if(frameTransform.startSnapBack(dispWidth, dispHeight)) {
+			redraw();
 		}
+	}
+	
+	public class AnimationTask implements AnimatedBitmapTask, Runnable {
+		public volatile AnimationStreamProducer producer = null;
 		
-		RectF desinationRect = new RectF(0,0,bitmap.getWidth(),bitmap.getHeight());
-		synchronized (transformation) {
-			transformation.mapRect(desinationRect);
-		}
+		// The frame rate count, which the decoding threads of the shared executor update in turn
+		protected final Object frameRateLock = new Object();
+		protected long startTime = 0;
+		protected int frameCounter = 0;
+		protected int lastDroppedCount = 0;
 		
-		if(desinationRect.left > 0 && desinationRect.right > dispWidth) {
-			dx -= Math.min(desinationRect.left, desinationRect.right - dispWidth);
-		} else if(desinationRect.left < 0 && desinationRect.right < dispWidth) {
-			dx += Math.min(-desinationRect.left, dispWidth - desinationRect.right);
-		} else {
-			noChangeX = true;
-		}
+		// Adapts the quality of the current staged animation, null if it doesn't
+		protected volatile DegradationController degradation = null;
 		
-		if(desinationRect.top > 0 && desinationRect.bottom > dispHeight) {
-			dy -= Math.min(desinationRect.top, desinationRect.bottom - dispHeight);
-		} else if(desinationRect.top < 0 && desinationRect.bottom < dispHeight) {
-			dy += Math.min(-desinationRect.top, dispHeight - desinationRect.bottom);
-		} else {
-			noChangeY = true;
-		}
+		// The playback whose frames another thread reads, null if there is none
+		protected volatile StagedPlayback<?> pushedPlayback = null;
 		
-		if(noChangeX && noChangeY) {
-			return;
-		}
+		// Where the last decoded bitmap lies in its frame, used by the thread that decodes
+		protected final Rect decodedRegion = new Rect();
+		protected final Point decodedFrameSize = new Point();
 		
-		final long durationMS = 300;
-		final long intervalsMS = 30;
+		@Override
+		public void startAnimation(AnimatedBitmap animatedBitmap) throws IOException {
+			if(animatedBitmap instanceof DisplaySizeListener) {
+				setDisplaySizeListener((DisplaySizeListener) animatedBitmap);
+			}
+			
+			try {
+				if(animatedBitmap instanceof StagedAnimatedBitmap) {
+					startStagedAnimation((StagedAnimatedBitmap<?>) animatedBitmap);
+					return;
+				}
+				
+				while (playbackEngine.isPlaying()) {
+					showFrame(animatedBitmap, animatedBitmap.readNextFrame());
+					countFrame(0);
+				}
+			} finally {
+				if(displaySizeListener == animatedBitmap) {
+					setDisplaySizeListener(null);
+				}
+			}
+		}
 		
-		final Matrix origMat = new Matrix();
-		synchronized (transformation) {
-			origMat.set(transformation);
+		/**
+		 * Read frames on the calling thread and decode them on a separate thread
+		 */
+		protected <F> void startStagedAnimation(StagedAnimatedBitmap<F> animatedBitmap) throws IOException {
+			final StagedPlayback<F> playback = new StagedPlayback<F>(animatedBitmap, playbackDelay);
+			
+			try {
+				while (playbackEngine.isPlaying()) {
+					F frame = animatedBitmap.readEncodedFrame();
+					if(frame == null || !playback.offer(frame)) {
+						break;
+					}
+				}
+			} finally {
+				playback.stop(true);
+			}
 		}
 		
-		final float fdx = dx, fdy = dy;
+		/**
+		 * Decode the frames of a staged animation that another thread reads, on the shared decode executor
+		 */
+		protected <F> FrameSink<F> startPushedAnimation(StagedAnimatedBitmap<F> animatedBitmap) {
+			resetFrameRate();
+			
+			if(animatedBitmap instanceof DisplaySizeListener) {
+				setDisplaySizeListener((DisplaySizeListener) animatedBitmap);
+			}
+			
+			final StagedPlayback<F> playback = new StagedPlayback<F>(animatedBitmap, 0);
+			pushedPlayback = playback;
+			return playback;
+		}
 		
-		final Timer timer = new Timer(true);
-		timer.scheduleAtFixedRate(new TimerTask() {
-			long start = System.currentTimeMillis();
-			long end = start + durationMS;
+		/**
+		 * Decodes the frames of a staged animation as they are offered, on a
+		 * separate thread, or on the shared decode executor if there is one.
+		 * Without a playback delay, when the decoder falls behind only the newest
+		 * frame is decoded and the rest are dropped. With a delay, the frames pass
+		 * through a jitter buffer that releases them at a steady pace.
+		 * With adaptive quality, the decoding quality follows the load.
+		 * Frames above the maximal frame rate are released as soon as they're offered,
+		 * and so are all frames while decoding is paused or in standby.
+		 * Frames are offered by a single thread at a time.
+		 */
+		protected class StagedPlayback<F> implements FrameSink<F> {
+			protected final StagedAnimatedBitmap<F> animatedBitmap;
+			protected final SharedDecodeExecutor executor;
+			protected final FrameQueue<F> queue;
+			protected final DegradationController controller;
+			protected final FrameRateGovernor governor;
+			protected final SharedDecodeExecutor.Task task;
+			protected final Thread decoder;
+			
+			/**
+			 * @param delay the playback delay, 0 for none. Ignored with a shared decode executor.
+			 */
+			protected StagedPlayback(final StagedAnimatedBitmap<F> animatedBitmap, long delay) {
+				this.animatedBitmap = animatedBitmap;
+				this.executor = decodeExecutor;
+				this.queue = delay > 0 && executor == null ? new JitterBuffer<F>(delay) : new LatestFrameMailbox<F>();
+				
+				if(adaptiveQuality && animatedBitmap instanceof DegradableAnimatedBitmap) {
+					controller = new DegradationController();
+					((DegradableAnimatedBitmap) animatedBitmap).setDegradationLevel(controller.getLevel());
+				} else {
+					controller = null;
+				}
+				degradation = controller;
+				
+				final float frameRate = maxFrameRate;
+				governor = frameRate > 0 ? new FrameRateGovernor(frameRate) : null;
+				
+				if(executor != null) {
+					task = new SharedDecodeExecutor.Task() {
+						@Override
+						protected void decodeNext() {
+							F frame = queue.poll();
+							if(frame == null) {
+								return;
+							}
+							
+							try {
+								decodeFrame(animatedBitmap, frame, controller, queue);
+							} catch (IOException e) {
+								Log.e(TAG, e.getMessage(), e);
+								closeQueue(queue, animatedBitmap);
+							}
+						}
+					};
+					decoder = null;
+				} else {
+					task = null;
+					decoder = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								F frame;
+								while((frame = queue.take()) != null) {
+									decodeFrame(animatedBitmap, frame, controller, queue);
+								}
+							} catch (InterruptedException e) {
+							} catch (IOException e) {
+								Log.e(TAG, e.getMessage(), e);
+							} finally {
+								closeQueue(queue, animatedBitmap);
+							}
+						}
+					}, "AnimationDecoder");
+					decoder.start();
+				}
+			}
 			
 			@Override
-			public void run() {
-				long cur = Math.min(end, System.currentTimeMillis());
-				float  t = animationInterpolator.getInterpolation((float)(cur - start)/(float)durationMS);
+			public boolean offer(F frame) {
+				if(decodingPaused || standby || (governor != null && !governor.accept())) {
+					animatedBitmap.releaseFrame(frame);
+					return !queue.isClosed();
+				}
 				
-				synchronized (transformation) {
-					transformation.set(origMat);
-					transformation.postTranslate(fdx*t, fdy*t);
+				if(controller != null) {
+					controller.onFrameArrived();
+				}
+				
+				F dropped = queue.put(frame);
+				if(dropped != null) {
+					animatedBitmap.releaseFrame(dropped);
 				}
-				redraw();
 				
-				if(cur == end) {
-					cancel();
-					timer.cancel();
-					timer.purge();
+				// The queue was closed, by stopping or by a decoding error
+				if(dropped == frame) {
+					return false;
+				}
+				
+				if(task != null) {
+					executor.schedule(task);
+				}
+				return true;
+			}
+			
+			/**
+			 * Stop decoding, without waiting for a frame that is being decoded
+			 */
+			@Override
+			public void close() {
+				closeQueue(queue, animatedBitmap);
+				if(degradation == controller) {
+					degradation = null;
+				}
+				
+				if(pushedPlayback == this) {
+					pushedPlayback = null;
+					if(displaySizeListener == animatedBitmap) {
+						setDisplaySizeListener(null);
+					}
+				}
+			}
+			
+			/**
+			 * Stop decoding
+			 *
+			 * @param wait if true, return only after the frame being decoded was shown
+			 */
+			protected void stop(boolean wait) {
+				if(wait && task != null) {
+					executor.cancel(task);
+				}
+				close();
+				
+				boolean interrupted = false;
+				while(wait && decoder != null && decoder.isAlive()) {
+					try {
+						decoder.join();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				
+				if(interrupted) {
+					Thread.currentThread().interrupt();
 				}
 			}
-		}, 0, intervalsMS);
-	}
-	
-	private void calculateBestFitTransformation() {
-		final Bitmap bitmap = currentBitmap.get();
-		if(bitmap != null) {
-			calculateBestFitTransformation(bitmap);
 		}
-	}
-	
-	private void calculateBestFitTransformation(Bitmap bitmap) {
-		calculateBestFitTransformation(bitmap.getWidth(), bitmap.getHeight());
-	}
-	
-	private void calculateBestFitTransformation(int bitmapWidth, int bitmapHeight) {
-		// Try full width
-		float scale = (float)dispWidth / (float)bitmapWidth;
 		
-		if(bitmapHeight * scale > dispHeight) {
-			scale = (float)dispHeight / (float)bitmapHeight;
+		/**
+		 * Decode and show a frame, unless the controller skips it, and release it.
+		 * The frame is counted if it was decoded.
+		 */
+		protected <F> void decodeFrame(StagedAnimatedBitmap<F> animatedBitmap, F frame,
+				DegradationController controller, FrameQueue<F> queue) throws IOException {
+			try {
+				if(controller != null && controller.shouldSkip()) {
+					return;
+				}
+				
+				final long start = System.nanoTime();
+				showFrame(animatedBitmap, animatedBitmap.decodeFrame(frame));
+				
+				if(controller != null && controller.onFrameProcessed(System.nanoTime() - start)) {
+					((DegradableAnimatedBitmap) animatedBitmap).setDegradationLevel(controller.getLevel());
+				}
+			} finally {
+				animatedBitmap.releaseFrame(frame);
+			}
+			
+			countFrame(queue.getDroppedCount());
+		}
+		
+		/**
+		 * Show a decoded frame, at the part of the frame it holds if it was decoded by region,
+		 * and give back the frame it replaced once it is no longer drawn
+		 */
+		protected void showFrame(AnimatedBitmap animatedBitmap, Bitmap bitmap) {
+			if(bitmap == null) {
+				return;
+			}
+			
+			if(animatedBitmap instanceof RegionAnimatedBitmap) {
+				((RegionAnimatedBitmap) animatedBitmap).getDecodedRegion(decodedRegion, decodedFrameSize);
+			} else {
+				decodedFrameSize.set(0, 0);
+			}
+			
+			final Bitmap released = decodedFrameSize.x > 0 && decodedFrameSize.y > 0 ?
+					setFrame(bitmap, decodedFrameSize.x, decodedFrameSize.y, decodedRegion) : setFrame(bitmap);
+			
+			// The animation may decode the next frames into it
+			if(released != null && animatedBitmap instanceof PooledAnimatedBitmap) {
+				((PooledAnimatedBitmap) animatedBitmap).releaseBitmap(released);
+			}
 		}
 		
-		synchronized (transformation) {
-			transformation.setScale(scale, scale);
-			transformation.postTranslate((dispWidth - scale*bitmapWidth) / 2, (dispHeight - scale*bitmapHeight) / 2);
+		/**
+		 * Close the queue and release the frames that are left in it
+		 */
+		protected <F> void closeQueue(FrameQueue<F> queue, StagedAnimatedBitmap<F> animatedBitmap) {
+			queue.close();
+			
+			F left;
+			while((left = queue.poll()) != null) {
+				animatedBitmap.releaseFrame(left);
+			}
 		}
-	}
-	
-	public class AnimationTask extends AsyncTask<AnimationStreamProducer, Integer, Void> implements AnimatedBitmapTask {
-		public AnimationStreamProducer producer = null;
-		protected long startTime = 0;
-		protected int frameCounter = 0;
 		
-		@Override
-		public void startAnimation(AnimatedBitmap animatedBitmap) throws IOException {
-			while (playing.get()) {
-				setFrame(animatedBitmap.readNextFrame());
+		/**
+		 * Count a displayed frame and publish the frame rate once a second
+		 * 
+		 * @param droppedCount the total number of frames that were dropped so far
+		 */
+		protected void countFrame(int droppedCount) {
+			if (!showFps) {
+				return;
+			}
+			
+			final int frames;
+			final int dropped;
+			synchronized (frameRateLock) {
+				++frameCounter;
 				
-				if (showFps) {
-					++frameCounter;
-					
-					if ((System.currentTimeMillis() - startTime) >= 1000) {
-						publishProgress(frameCounter);
-						frameCounter = 0;
-						startTime = System.currentTimeMillis();
-					}
+				final long now = System.currentTimeMillis();
+				if (now - startTime < 1000) {
+					return;
 				}
+				
+				frames = frameCounter;
+				dropped = droppedCount - lastDroppedCount;
+				frameCounter = 0;
+				lastDroppedCount = droppedCount;
+				startTime = now;
 			}
+			
+			final DegradationController controller = degradation;
+			publishFrameRate(frames, dropped, controller != null ? controller.getLevel() : null);
 		}
 		
-		@Override
-		protected void onProgressUpdate(Integer... progress) {
+		/**
+		 * Show the frame rate on the UI thread
+		 * 
+		 * @param level the decoding quality, or null if it isn't adapted
+		 */
+		protected void publishFrameRate(final int frames, final int dropped, final DegradationLevel level) {
+			uiHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					showFrameRate(frames, dropped, level);
+				}
+			});
+		}
+		
+		protected void showFrameRate(int frames, int dropped, DegradationLevel level) {
 			if(fpsTextView == null) {
 				return;
 			}
 			
 			String fps;
-			if(playing.get() && progress[0] > 0 ) {
-				fps = String.valueOf(progress[0]) + " fps";
+			if((playbackEngine.isPlaying() || pushedPlayback != null) && frames > 0) {
+				fps = String.valueOf(frames) + " fps";
+				if(dropped > 0) {
+					fps += " (" + dropped + " dropped)";
+				}
+				if(level != null) {
+					fps += " - " + level.getLabel();
+				}
 			} else {
 				fps = "Stopped";
 			}
 
 			fpsTextView.setText(fps);
-	     }
+		}
 		
+		/**
+		 * Each playback counts its frames from scratch
+		 */
+		protected void resetFrameRate() {
+			synchronized (frameRateLock) {
+				frameCounter = 0;
+				lastDroppedCount = 0;
+				startTime = System.currentTimeMillis();
+			}
+		}
+		
+		/**
+		 * Play the producer's stream until the playback is stopped
+		 */
 		@Override
-		protected Void doInBackground(AnimationStreamProducer... producer) {
-			if(producer.length == 0 || producer[0] == null) {
-				if(this.producer == null) {
-					return null;
-				}
-			} else {
-				this.producer = producer[0];
+		public void run() {
+			final AnimationStreamProducer current = producer;
+			if(current == null) {
+				return;
 			}
 			
-			this.producer.getAnimationStream(this);
+			resetFrameRate();
 			
-			return null;
+			try {
+				current.getAnimationStream(this);
+			} catch (RuntimeException e) {
+				Log.e(TAG, "Playback failed", e);
+			}
 		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,12 @@
+package il.liranfunaro.animatedbitmap;
+
+/**
+ * An animation whose decoding can be made cheaper when the device can't keep up
+ */
+public interface DegradableAnimatedBitmap extends AnimatedBitmap {
+	/**
+	 * Decode the following frames at the given level.
+	 * Called on the decoding thread.
+	 */
+	public void setDegradationLevel(DegradationLevel level);
+}
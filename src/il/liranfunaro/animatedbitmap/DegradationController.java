@@ -0,0 +1,152 @@
+package il.liranfunaro.animatedbitmap;
+
+/**
+ * Steps the decoding quality down when the work per frame doesn't fit in the
+ * time between frames, and back up when there is headroom.
+ * 
+ * The load is the average time it took to decode and draw a frame, divided by
+ * the average interval between the decoded frames' arrivals, and is evaluated
+ * once a period. A single overloaded period steps the level down, but it takes
+ * a few periods in a row with plenty of headroom to step it back up. When a
+ * step up is overloaded right away, the next step up waits twice as long, so
+ * the level doesn't keep oscillating around what the device can do.
+ */
+public class DegradationController {
+	public static final long EVALUATION_PERIOD_MS = 1000;
+	
+	// Step down when the work per frame takes more than this fraction of the time between frames
+	public static final double OVERLOAD_THRESHOLD = 0.9;
+	
+	// Step up only below this fraction, since the level above costs up to twice as much
+	public static final double HEADROOM_THRESHOLD = 0.4;
+	
+	// The number of periods in a row with headroom before stepping up
+	public static final int MIN_STEP_UP_PERIODS = 3;
+	public static final int MAX_STEP_UP_PERIODS = 48;
+	
+	private volatile DegradationLevel level;
+	
+	// The current period's measurements
+	private long periodStart = 0;
+	private long firstArrival = 0;
+	private long lastArrival = 0;
+	private int arrivalCount = 0;
+	private long workTime = 0;
+	private int workCount = 0;
+	
+	private int headroomPeriods = 0;
+	private int stepUpPeriods = MIN_STEP_UP_PERIODS;
+	private boolean steppedUp = false;
+	
+	private int frameCount = 0;
+	
+	public DegradationController() {
+		this(DegradationLevel.FULL_QUALITY);
+	}
+	
+	public DegradationController(DegradationLevel initialLevel) {
+		this.level = initialLevel;
+	}
+	
+	public DegradationLevel getLevel() {
+		return level;
+	}
+	
+	/**
+	 * Called by the reading thread when a frame arrives
+	 */
+	public synchronized void onFrameArrived() {
+		final long now = System.nanoTime();
+		if(arrivalCount == 0) {
+			firstArrival = now;
+		}
+		lastArrival = now;
+		++arrivalCount;
+	}
+	
+	/**
+	 * Called by the decoding thread for each frame it takes
+	 * 
+	 * @return true if the frame should be skipped at the current level
+	 */
+	public synchronized boolean shouldSkip() {
+		final int interval = level.getDecodeInterval();
+		return interval > 1 && (frameCount++ % interval) != 0;
+	}
+	
+	/**
+	 * Called by the decoding thread after a frame was decoded and drawn
+	 * 
+	 * @param workNanos how long the frame took
+	 * @return true if the level changed
+	 */
+	public synchronized boolean onFrameProcessed(long workNanos) {
+		workTime += workNanos;
+		++workCount;
+		
+		final long now = System.nanoTime();
+		if(periodStart == 0) {
+			periodStart = now;
+			return false;
+		}
+		
+		if(now - periodStart < EVALUATION_PERIOD_MS * 1000000) {
+			return false;
+		}
+		
+		boolean changed = false;
+		if(arrivalCount > 1) {
+			changed = evaluate((double) workTime / workCount,
+					(double) (lastArrival - firstArrival) / (arrivalCount - 1));
+		}
+		
+		periodStart = now;
+		arrivalCount = 0;
+		workTime = 0;
+		workCount = 0;
+		
+		return changed;
+	}
+	
+	private boolean evaluate(double work, double arrivalInterval) {
+		final DegradationLevel current = level;
+		final double load = work / (arrivalInterval * current.getDecodeInterval());
+		final boolean afterStepUp = steppedUp;
+		steppedUp = false;
+		
+		if(load > OVERLOAD_THRESHOLD) {
+			headroomPeriods = 0;
+			if(afterStepUp) {
+				stepUpPeriods = Math.min(stepUpPeriods * 2, MAX_STEP_UP_PERIODS);
+			}
+			
+			return setLevel(current.lower());
+		}
+		
+		if(afterStepUp) {
+			stepUpPeriods = MIN_STEP_UP_PERIODS;
+		}
+		
+		if(load < HEADROOM_THRESHOLD) {
+			if(++headroomPeriods >= stepUpPeriods) {
+				headroomPeriods = 0;
+				steppedUp = setLevel(current.higher());
+				return steppedUp;
+			}
+		} else {
+			headroomPeriods = 0;
+		}
+		
+		return false;
+	}
+	
+	private boolean setLevel(DegradationLevel newLevel) {
+		if(newLevel == level) {
+			return false;
+		}
+		
+		level = newLevel;
+		frameCount = 0;
+		return true;
+	}
+}
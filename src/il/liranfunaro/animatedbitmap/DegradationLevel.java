@@ -0,0 +1,51 @@
+package il.liranfunaro.animatedbitmap;
+
+/**
+ * The rungs a {@link DegradationController} steps down through when frames
+ * can't be decoded as fast as they arrive, from the best quality to the cheapest.
+ * Frames are decoded with 16 bits per pixel at every rung, so the first rung
+ * is the quality the frames are decoded at without adaptive quality.
+ */
+public enum DegradationLevel {
+	FULL_QUALITY("Full quality", 0, 1),
+	HALF_RESOLUTION("Half resolution", 1, 1),
+	QUARTER_RESOLUTION("Quarter resolution", 2, 1),
+	HALF_FRAME_RATE("Half frame rate", 2, 2);
+	
+	private final String label;
+	private final int sampleShift;
+	private final int decodeInterval;
+	
+	private DegradationLevel(String label, int sampleShift, int decodeInterval) {
+		this.label = label;
+		this.sampleShift = sampleShift;
+		this.decodeInterval = decodeInterval;
+	}
+	
+	public String getLabel() {
+		return label;
+	}
+	
+	/**
+	 * @return the power of two to sub-sample frames by, on top of what the display needs
+	 */
+	public int getSampleShift() {
+		return sampleShift;
+	}
+	
+	/**
+	 * @return decode one frame out of this many
+	 */
+	public int getDecodeInterval() {
+		return decodeInterval;
+	}
+	
+	public DegradationLevel lower() {
+		final DegradationLevel[] levels = values();
+		return levels[Math.min(ordinal() + 1, levels.length - 1)];
+	}
+	
+	public DegradationLevel higher() {
+		return values()[Math.max(ordinal() - 1, 0)];
+	}
+}
@@ -0,0 +1,17 @@
+package il.liranfunaro.animatedbitmap;
+
+/**
+ * Notified of the size a frame is shown at on the screen, so frames can be
+ * decoded at no more than the resolution that is actually displayed.
+ * An {@link AnimatedBitmap} that implements it is notified while it plays.
+ */
+public interface DisplaySizeListener {
+	/**
+	 * Called when the frame is zoomed, or the view is resized, so the frame
+	 * is displayed at a different size. May be called from any thread.
+	 * 
+	 * @param width the displayed width of the whole frame, in screen pixels
+	 * @param height the displayed height of the whole frame, in screen pixels
+	 */
+	public void onDisplaySizeChanged(int width, int height);
+}
@@ -0,0 +1,43 @@
+package il.liranfunaro.animatedbitmap;
+
+/**
+ * Hands frames from a reading thread to a decoding thread
+ *
+ * @param <F> the type of a frame
+ */
+public interface FrameQueue<F> {
+	/**
+	 * Add a frame to the queue.
+	 * 
+	 * @return a frame that was dropped to make room for it, the given frame
+	 * itself if the queue is closed, or null. The caller is responsible for releasing it.
+	 */
+	public F put(F frame);
+	
+	/**
+	 * Wait until a frame is due and remove it from the queue.
+	 * 
+	 * @return the frame, or null if the queue was closed
+	 */
+	public F take() throws InterruptedException;
+	
+	/**
+	 * Remove a waiting frame without waiting for it.
+	 * 
+	 * @return the frame, or null if there is none. The caller is responsible for releasing it.
+	 */
+	public F poll();
+	
+	/**
+	 * Close the queue and wake up the consumer. The frames that are left in
+	 * the queue should be removed with {@link #poll()} and released.
+	 */
+	public void close();
+	
+	public boolean isClosed();
+	
+	/**
+	 * @return the number of frames that were dropped before being taken
+	 */
+	public int getDroppedCount();
+}
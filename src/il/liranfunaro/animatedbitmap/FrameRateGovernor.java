@@ -0,0 +1,50 @@
+package il.liranfunaro.animatedbitmap;
+
+/**
+ * Caps the rate frames are let through at, so frames that arrive faster
+ * than they can be shown aren't decoded at all.
+ * Frames are let through on a schedule of one per interval, with some
+ * tolerance for jitter in their arrival, so a stream at twice the cap is
+ * halved evenly instead of in bursts.
+ */
+public class FrameRateGovernor {
+	// A frame that arrives this fraction of an interval early is still let through
+	public static final double ARRIVAL_TOLERANCE = 0.25;
+	
+	private final long interval;
+	private boolean started = false;
+	private long nextDue = 0;
+	
+	/**
+	 * @param maxFrameRate the highest rate to let frames through at, in frames per second
+	 */
+	public FrameRateGovernor(float maxFrameRate) {
+		this.interval = (long) (1000000000L / maxFrameRate);
+	}
+	
+	/**
+	 * @return true if a frame that arrived now should be shown, false to discard it
+	 */
+	public boolean accept() {
+		return accept(System.nanoTime());
+	}
+	
+	/**
+	 * @param now the frame's arrival time, in nanoseconds on a monotonic clock
+	 * @return true if the frame should be shown, false to discard it
+	 */
+	public boolean accept(long now) {
+		if(started && now < nextDue - (long) (interval * ARRIVAL_TOLERANCE)) {
+			return false;
+		}
+		
+		// Start the schedule over on the first frame, and after the stream fell a whole interval behind it
+		if(!started || now - nextDue >= interval) {
+			nextDue = now + interval;
+		} else {
+			nextDue += interval;
+		}
+		started = true;
+		return true;
+	}
+}
@@ -0,0 +1,24 @@
+package il.liranfunaro.animatedbitmap;
+
+/**
+ * Takes the encoded frames of a staged animation that are read by another
+ * thread, such as a reader that serves many streams at once, and decodes
+ * and shows them like the frames the view reads itself
+ *
+ * @param <F> the type of an encoded frame
+ * @see AnimatedBitmapView#startPushedPlayback(StagedAnimatedBitmap)
+ */
+public interface FrameSink<F> {
+	/**
+	 * Pass a frame to be decoded. The sink takes ownership of the frame.
+	 *
+	 * @return false if the playback was stopped, in which case the frame was
+	 * released and no more frames should be passed
+	 */
+	public boolean offer(F frame);
+
+	/**
+	 * Stop the playback, when the frames ended
+	 */
+	public void close();
+}
@@ -0,0 +1,312 @@
+package il.liranfunaro.animatedbitmap;
+
+import il.liranfunaro.mjpeg.FrameRegion;
+
+/**
+ * Where a frame is shown in a view: the frame's size, the part of the frame
+ * that its content holds, and the scale and translation that map the frame
+ * onto the view.
+ *
+ * Writers serialize among themselves, while the render thread reads without
+ * locking through a sequence lock: it copies the state into a {@link Snapshot},
+ * and copies it again if a writer changed it meanwhile. The render thread
+ * takes the writers' lock, and may wait on a gesture, only to show a new
+ * frame or to step an animation. Neither reading nor writing allocates, so
+ * drawing and gestures don't make garbage.
+ *
+ * @param <T> the type of the content, a bitmap on Android
+ */
+public class FrameTransform<T> {
+	/**
+	 * A consistent copy of the transform, reused from frame to frame
+	 */
+	public static class Snapshot<T> {
+		public T content;
+		public int frameWidth;
+		public int frameHeight;
+		public final FrameRegion region = new FrameRegion();
+		public float scaleX;
+		public float scaleY;
+		public float translateX;
+		public float translateY;
+
+		/**
+		 * @return the width the whole frame is displayed at, in the view's pixels
+		 */
+		public int getDisplayWidth() {
+			return Math.round(frameWidth * Math.abs(scaleX));
+		}
+
+		/**
+		 * @return the height the whole frame is displayed at, in the view's pixels
+		 */
+		public int getDisplayHeight() {
+			return Math.round(frameHeight * Math.abs(scaleY));
+		}
+
+		/**
+		 * Map the view back to the frame to find its visible part
+		 *
+		 * @param out set to the visible part, in the frame's pixels
+		 * @return false, leaving out empty, if no part of the frame is visible
+		 */
+		public boolean getVisibleRegion(int viewWidth, int viewHeight, FrameRegion out) {
+			if(frameWidth <= 0 || scaleX == 0 || scaleY == 0) {
+				out.setEmpty();
+				return false;
+			}
+
+			final float x0 = -translateX / scaleX;
+			final float x1 = (viewWidth - translateX) / scaleX;
+			final float y0 = -translateY / scaleY;
+			final float y1 = (viewHeight - translateY) / scaleY;
+
+			out.set((int) Math.floor(Math.min(x0, x1)), (int) Math.floor(Math.min(y0, y1)),
+					(int) Math.ceil(Math.max(x0, x1)), (int) Math.ceil(Math.max(y0, y1)));
+			return out.intersect(0, 0, frameWidth, frameHeight);
+		}
+	}
+
+	// Odd while a writer changes the state
+	private volatile int sequence = 0;
+
+	// The state, written only while holding writeLock
+	private volatile T content = null;
+	private volatile int frameWidth = 0;
+	private volatile int frameHeight = 0;
+	private volatile int regionLeft = 0;
+	private volatile int regionTop = 0;
+	private volatile int regionRight = 0;
+	private volatile int regionBottom = 0;
+	private volatile float scaleX = 1;
+	private volatile float scaleY = 1;
+	private volatile float translateX = 0;
+	private volatile float translateY = 0;
+
+	private final Object writeLock = new Object();
+
+	// Moves the frame back into the view, written only while holding writeLock.
+	// Read without it first, so there is no locking while nothing moves.
+	private volatile boolean animating = false;
+	private long animationStart = 0;
+	private float animationOriginX = 0;
+	private float animationOriginY = 0;
+	private float animationDx = 0;
+	private float animationDy = 0;
+
+	/**
+	 * Copy the state without locking. Spins while a writer is in the middle of a change.
+	 */
+	public void read(Snapshot<T> out) {
+		int before;
+		do {
+			before = sequence;
+			while((before & 1) != 0) {
+				Thread.yield();
+				before = sequence;
+			}
+
+			out.content = content;
+			out.frameWidth = frameWidth;
+			out.frameHeight = frameHeight;
+			out.region.set(regionLeft, regionTop, regionRight, regionBottom);
+			out.scaleX = scaleX;
+			out.scaleY = scaleY;
+			out.translateX = translateX;
+			out.translateY = translateY;
+		} while(sequence != before);
+	}
+
+	public T getContent() {
+		return content;
+	}
+
+	private void beginWrite() {
+		sequence = sequence + 1;
+	}
+
+	private void endWrite() {
+		sequence = sequence + 1;
+	}
+
+	/**
+	 * Show new content, which holds a region of a frame. If the frame's size
+	 * changed, it is scaled to keep it at the same size in the view.
+	 */
+	public void setFrame(T content, int width, int height, int left, int top, int right, int bottom) {
+		synchronized (writeLock) {
+			beginWrite();
+
+			if(frameWidth > 0 && (width != frameWidth || height != frameHeight)) {
+				scaleX = scaleX * frameWidth / width;
+				scaleY = scaleY * frameHeight / height;
+			}
+			frameWidth = width;
+			frameHeight = height;
+			regionLeft = left;
+			regionTop = top;
+			regionRight = right;
+			regionBottom = bottom;
+			this.content = content;
+
+			endWrite();
+		}
+	}
+
+	/**
+	 * Show the newest frame of a buffer, if it has one that wasn't shown yet.
+	 * Used by the render thread.
+	 *
+	 * @return true if the frame changed
+	 */
+	public boolean takeFrame(TripleBuffer<T> frameBuffer) {
+		if(!frameBuffer.swap()) {
+			return false;
+		}
+
+		final TripleBuffer.Slot<T> front = frameBuffer.getFront();
+		final FrameRegion region = front.region;
+		setFrame(front.content, front.frameWidth, front.frameHeight, region.left, region.top, region.right, region.bottom);
+		return true;
+	}
+
+	public void postTranslate(float dx, float dy) {
+		synchronized (writeLock) {
+			beginWrite();
+			translateX = translateX + dx;
+			translateY = translateY + dy;
+			endWrite();
+		}
+	}
+
+	/**
+	 * Scale the frame around a point in the view
+	 */
+	public void postScale(float scale, float focusX, float focusY) {
+		synchronized (writeLock) {
+			beginWrite();
+			scaleX = scaleX * scale;
+			scaleY = scaleY * scale;
+			translateX = (translateX - focusX) * scale + focusX;
+			translateY = (translateY - focusY) * scale + focusY;
+			endWrite();
+		}
+	}
+
+	/**
+	 * Fit the whole frame in the view, centered
+	 *
+	 * @return false if there is no frame yet
+	 */
+	public boolean fit(int viewWidth, int viewHeight) {
+		synchronized (writeLock) {
+			if(frameWidth <= 0) {
+				return false;
+			}
+
+			// Try full width
+			float scale = (float) viewWidth / frameWidth;
+			if(frameHeight * scale > viewHeight) {
+				scale = (float) viewHeight / frameHeight;
+			}
+
+			beginWrite();
+			scaleX = scale;
+			scaleY = scale;
+			translateX = (viewWidth - scale * frameWidth) / 2;
+			translateY = (viewHeight - scale * frameHeight) / 2;
+			animating = false;
+			endWrite();
+			return true;
+		}
+	}
+
+	/**
+	 * Start moving the frame back into the view, if it was moved partly out
+	 * of it while it could fit. The animation is advanced by {@link #stepAnimation}.
+	 *
+	 * @return false if the frame doesn't need to move
+	 */
+	public boolean startSnapBack(int viewWidth, int viewHeight) {
+		synchronized (writeLock) {
+			if(frameWidth <= 0) {
+				return false;
+			}
+
+			final float left = translateX;
+			final float right = translateX + frameWidth * scaleX;
+			final float top = translateY;
+			final float bottom = translateY + frameHeight * scaleY;
+
+			float dx = 0, dy = 0;
+
+			if(left > 0 && right > viewWidth) {
+				dx = -Math.min(left, right - viewWidth);
+			} else if(left < 0 && right < viewWidth) {
+				dx = Math.min(-left, viewWidth - right);
+			}
+
+			if(top > 0 && bottom > viewHeight) {
+				dy = -Math.min(top, bottom - viewHeight);
+			} else if(top < 0 && bottom < viewHeight) {
+				dy = Math.min(-top, viewHeight - bottom);
+			}
+
+			if(dx == 0 && dy == 0) {
+				return false;
+			}
+
+			animating = true;
+			animationStart = 0;
+			animationOriginX = translateX;
+			animationOriginY = translateY;
+			animationDx = dx;
+			animationDy = dy;
+			return true;
+		}
+	}
+
+	/**
+	 * Move the frame along its animation to where it is at the given time.
+	 * The animation starts at the first step after it was started.
+	 *
+	 * @param durationNanos how long the whole animation takes
+	 * @return true if the animation hadn't ended
+	 */
+	public boolean stepAnimation(long timeNanos, long durationNanos) {
+		if(!animating) {
+			return false;
+		}
+
+		synchronized (writeLock) {
+			if(!animating) {
+				return false;
+			}
+
+			if(animationStart == 0) {
+				animationStart = timeNanos;
+			}
+
+			final float elapsed = Math.min(1f, (float) (timeNanos - animationStart) / durationNanos);
+			// Accelerate, then decelerate
+			final float t = (float) (Math.cos((elapsed + 1) * Math.PI) / 2) + 0.5f;
+
+			beginWrite();
+			translateX = animationOriginX + animationDx * t;
+			translateY = animationOriginY + animationDy * t;
+			endWrite();
+
+			animating = elapsed < 1f;
+			return animating;
+		}
+	}
+
+	/**
+	 * Leave the frame where it is, when the user touches it again
+	 */
+	public void cancelAnimation() {
+		synchronized (writeLock) {
+			animating = false;
+		}
+	}
+}
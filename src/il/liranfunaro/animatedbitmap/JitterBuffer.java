@@ -0,0 +1,197 @@
+package il.liranfunaro.animatedbitmap;
+
+/**
+ * Smooths the bursty arrival of frames over a network.
+ * Each frame is tagged with its arrival time, and frames are released at the
+ * cadence they arrive at on average, after a configurable delay. The release
+ * rate is nudged faster or slower to keep the buffered delay near the target,
+ * and frames that are far behind are dropped so the delay can't keep growing.
+ *
+ * @param <F> the type of a frame
+ */
+public class JitterBuffer<F> implements FrameQueue<F> {
+	public static final int DEFAULT_CAPACITY = 64;
+
+	// The cadence that is assumed until frames have arrived
+	public static final long DEFAULT_FRAME_INTERVAL_MS = 100;
+
+	// Intervals longer than this are stalls, not a frame rate
+	public static final long MAX_FRAME_INTERVAL_MS = 2000;
+
+	// The cadence is the average of the first CADENCE_SMOOTHING intervals,
+	// and then a new interval's weight in it is 1/CADENCE_SMOOTHING
+	public static final int CADENCE_SMOOTHING = 16;
+
+	// How much faster or slower than the cadence frames may be released
+	public static final double MAX_RATE_CORRECTION = 0.5;
+
+	// Frames older than this many times the target delay are dropped
+	public static final int MAX_DELAY_FACTOR = 3;
+
+	private final long targetDelay;
+
+	// A ring of the buffered frames and their arrival times
+	private final Object[] frames;
+	private final long[] arrivals;
+	private int head = 0;
+	private int count = 0;
+
+	private double frameInterval = 0;
+	private int intervalCount = 0;
+	private long lastArrival = -1;
+
+	// The buffer fills up to the target delay before it starts releasing frames
+	private boolean prebuffered = false;
+	private long nextRelease = 0;
+
+	private boolean closed = false;
+	private int droppedCount = 0;
+
+	/**
+	 * @param targetDelay how long frames should stay in the buffer, in milliseconds
+	 */
+	public JitterBuffer(long targetDelay) {
+		this(targetDelay, DEFAULT_CAPACITY);
+	}
+
+	public JitterBuffer(long targetDelay, int capacity) {
+		this.targetDelay = targetDelay;
+		this.frames = new Object[capacity];
+		this.arrivals = new long[capacity];
+	}
+
+	/**
+	 * @return the current time in milliseconds, on a monotonic clock
+	 */
+	protected long now() {
+		return System.nanoTime() / 1000000;
+	}
+
+	public long getTargetDelay() {
+		return targetDelay;
+	}
+
+	/**
+	 * @return the estimated interval between frames, in milliseconds
+	 */
+	public synchronized double getFrameInterval() {
+		return intervalCount > 0 ? frameInterval : DEFAULT_FRAME_INTERVAL_MS;
+	}
+
+	public synchronized int getBufferedCount() {
+		return count;
+	}
+
+	/**
+	 * Tag a frame with its arrival time and buffer it.
+	 * If the buffer is full, or its oldest frame is far behind, the oldest frame is dropped.
+	 */
+	@Override
+	public synchronized F put(F frame) {
+		if(closed) {
+			return frame;
+		}
+
+		final long now = now();
+
+		if(lastArrival >= 0) {
+			long interval = now - lastArrival;
+			if(interval < MAX_FRAME_INTERVAL_MS) {
+				intervalCount = Math.min(intervalCount + 1, CADENCE_SMOOTHING);
+				frameInterval += (interval - frameInterval) / intervalCount;
+			}
+		}
+		lastArrival = now;
+
+		F dropped = null;
+		if(count == frames.length ||
+				(count > 0 && now - arrivals[head] > MAX_DELAY_FACTOR * targetDelay)) {
+			dropped = removeFirst();
+			++droppedCount;
+		}
+
+		int tail = (head + count) % frames.length;
+		frames[tail] = frame;
+		arrivals[tail] = now;
+		++count;
+
+		notifyAll();
+		return dropped;
+	}
+
+	/**
+	 * Wait until the oldest frame is due and remove it from the buffer
+	 */
+	@Override
+	public synchronized F take() throws InterruptedException {
+		while(true) {
+			if(closed) {
+				return null;
+			}
+
+			if(count == 0) {
+				// Ran dry, fill up to the target delay again
+				prebuffered = false;
+				wait();
+				continue;
+			}
+
+			final long now = now();
+			final long age = now - arrivals[head];
+
+			if(!prebuffered) {
+				if(age < targetDelay) {
+					wait(targetDelay - age);
+					continue;
+				}
+				prebuffered = true;
+				nextRelease = now;
+			}
+
+			if(now < nextRelease) {
+				wait(nextRelease - now);
+				continue;
+			}
+
+			// Release faster when frames are late, slower when the buffer runs low
+			double interval = getFrameInterval();
+			double correction = (age - targetDelay) / (2.0 * Math.max(targetDelay, 1));
+			correction = Math.max(-MAX_RATE_CORRECTION, Math.min(MAX_RATE_CORRECTION, correction));
+
+			// Don't fall more than one frame behind the schedule, or the next frames come in a burst
+			nextRelease = Math.max(nextRelease + (long) (interval * (1 - correction)), now - (long) interval);
+
+			return removeFirst();
+		}
+	}
+
+	@Override
+	public synchronized F poll() {
+		return count > 0 ? removeFirst() : null;
+	}
+
+	@Override
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	@Override
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public synchronized int getDroppedCount() {
+		return droppedCount;
+	}
+
+	@SuppressWarnings("unchecked")
+	private F removeFirst() {
+		F frame = (F) frames[head];
+		frames[head] = null;
+		head = (head + 1) % frames.length;
+		--count;
+		return frame;
+	}
+}
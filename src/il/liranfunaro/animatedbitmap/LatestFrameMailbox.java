@@ -0,0 +1,87 @@
+package il.liranfunaro.animatedbitmap;
+
+/**
+ * A single slot that hands frames from a producer to a consumer thread.
+ * A new frame replaces the one that is waiting in the slot, so the consumer
+ * always gets the newest frame and never falls behind the producer.
+ *
+ * @param <F> the type of a frame
+ */
+public class LatestFrameMailbox<F> implements FrameQueue<F> {
+	private F frame = null;
+	private boolean closed = false;
+	private int droppedCount = 0;
+	
+	/**
+	 * Place a frame in the slot.
+	 * 
+	 * @return the frame that was replaced, or the given frame itself if the
+	 * mailbox is closed. The caller is responsible for releasing it.
+	 */
+	@Override
+	public synchronized F put(F newFrame) {
+		if(closed) {
+			return newFrame;
+		}
+		
+		F replaced = frame;
+		frame = newFrame;
+		
+		if(replaced != null) {
+			++droppedCount;
+		}
+		
+		notifyAll();
+		return replaced;
+	}
+	
+	/**
+	 * Wait for a frame and remove it from the slot.
+	 * 
+	 * @return the newest frame, or null if the mailbox was closed
+	 */
+	@Override
+	public synchronized F take() throws InterruptedException {
+		while(frame == null && !closed) {
+			wait();
+		}
+		
+		if(closed) {
+			return null;
+		}
+		
+		F taken = frame;
+		frame = null;
+		return taken;
+	}
+	
+	@Override
+	public synchronized F poll() {
+		F taken = frame;
+		frame = null;
+		return taken;
+	}
+	
+	/**
+	 * Close the mailbox and wake up the consumer.
+	 * The frame that was left in the slot can still be removed with {@link #poll()}.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+	
+	@Override
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+	
+	/**
+	 * @return the number of frames that were replaced before being taken
+	 */
+	@Override
+	public synchronized int getDroppedCount() {
+		return droppedCount;
+	}
+}
@@ -0,0 +1,193 @@
+package il.liranfunaro.animatedbitmap;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a playback in the background, and can start it again after it was
+ * stopped. Playbacks run on a bounded pool of their own, so a stream that
+ * plays for minutes doesn't hold up the application's other background work
+ * the way it does on the serial AsyncTask executor.
+ *
+ * A playback is {@link State#IDLE} until it is started, {@link State#PLAYING}
+ * until it is stopped, and {@link State#STOPPING} until its body returns.
+ * The body checks {@link #isPlaying()} between frames to know when to return.
+ * It isn't interrupted, since an interrupt closes any interruptible channel
+ * the body happens to be using. Starting while stopping
+ * plays again as soon as the previous run returns.
+ */
+public class PlaybackEngine {
+	public enum State {
+		IDLE,
+		PLAYING,
+		STOPPING
+	}
+
+	// Enough for a few views and their recordings, the grid of cameras reads its streams on a thread of its own
+	public static final int MAX_DEFAULT_THREADS = 8;
+
+	// Idle playback threads end after this long, in seconds
+	public static final long THREAD_KEEP_ALIVE = 30;
+
+	private static ExecutorService defaultExecutor = null;
+
+	/**
+	 * @return the pool that runs playbacks that weren't given an executor
+	 */
+	public static synchronized ExecutorService getDefaultExecutor() {
+		if(defaultExecutor == null) {
+			final AtomicInteger count = new AtomicInteger(0);
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_DEFAULT_THREADS, MAX_DEFAULT_THREADS,
+					THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Playback-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.allowCoreThreadTimeOut(true);
+			defaultExecutor = executor;
+		}
+		return defaultExecutor;
+	}
+
+	private final Runnable body;
+
+	// Written while holding this, read without locking by the playing body
+	private volatile State state = State.IDLE;
+
+	// Guarded by this
+	private boolean restartPending = false;
+	private Executor executor = null;
+
+	/**
+	 * @param body plays until {@link #isPlaying()} is false
+	 */
+	public PlaybackEngine(Runnable body) {
+		this.body = body;
+	}
+
+	/**
+	 * Run the following playbacks on the given executor
+	 *
+	 * @param executor the executor, or null for {@link #getDefaultExecutor()}
+	 */
+	public synchronized void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return true while the body should keep playing
+	 */
+	public boolean isPlaying() {
+		return state == State.PLAYING;
+	}
+
+	/**
+	 * Start playing, unless already playing
+	 *
+	 * @return false if it was already playing, or if the executor rejected it
+	 */
+	public synchronized boolean start() {
+		switch(state) {
+		case IDLE:
+			return submit();
+		case STOPPING:
+			if(restartPending) {
+				return false;
+			}
+			restartPending = true;
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private boolean submit() {
+		state = State.PLAYING;
+		try {
+			(executor != null ? executor : getDefaultExecutor()).execute(new Runnable() {
+				@Override
+				public void run() {
+					play();
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			// The executor was shut down
+			state = State.IDLE;
+			return false;
+		}
+	}
+
+	private void play() {
+		synchronized (this) {
+			// Stopped before it had a thread
+			if(state != State.PLAYING) {
+				finish();
+				return;
+			}
+		}
+
+		try {
+			body.run();
+		} finally {
+			synchronized (this) {
+				finish();
+			}
+		}
+	}
+
+	/**
+	 * Called when a run returns, while holding the lock
+	 */
+	private void finish() {
+		if(restartPending) {
+			restartPending = false;
+			submit();
+		} else {
+			state = State.IDLE;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Stop playing, and cancel a start that is pending
+	 *
+	 * @param wait if true, return only after the body returned
+	 */
+	public void stop(boolean wait) {
+		boolean interrupted = false;
+
+		synchronized (this) {
+			restartPending = false;
+
+			if(state == State.PLAYING) {
+				state = State.STOPPING;
+			}
+
+			while(wait && state == State.STOPPING) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package il.liranfunaro.animatedbitmap;
+
+import android.graphics.Bitmap;
+
+/**
+ * An animation that decodes its frames into a pool of bitmaps. A decoded
+ * bitmap isn't written to until the view gives it back, so the next frame
+ * is decoded while the previous one is still on the screen.
+ */
+public interface PooledAnimatedBitmap extends AnimatedBitmap {
+	/**
+	 * Give back a decoded bitmap that is no longer drawn.
+	 * May be called from any thread.
+	 */
+	public void releaseBitmap(Bitmap bitmap);
+}
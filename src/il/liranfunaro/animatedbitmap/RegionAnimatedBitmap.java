@@ -0,0 +1,30 @@
+package il.liranfunaro.animatedbitmap;
+
+import android.graphics.Point;
+import android.graphics.Rect;
+
+/**
+ * An animation that can decode only a region of its frames, so a frame that
+ * is zoomed into is decoded just where it is visible. The view tells it which
+ * part of the frame is visible, and asks it which part each decoded bitmap holds.
+ * Regions are in the pixels of the whole frame, which may be larger than the
+ * bitmaps when they are sub-sampled.
+ */
+public interface RegionAnimatedBitmap extends AnimatedBitmap, DisplaySizeListener {
+	/**
+	 * Called when a different part of the frame becomes visible.
+	 * May be called from any thread.
+	 * 
+	 * @param visible the visible part of the frame, empty if none of it is visible
+	 */
+	public void onVisibleRegionChanged(Rect visible);
+	
+	/**
+	 * Called on the decoding thread right after a frame was decoded
+	 * 
+	 * @param region set to the part of the frame that the decoded bitmap holds
+	 * @param frameSize set to the size of the whole frame, or to 0 if the bitmap
+	 * holds the whole frame at its own size
+	 */
+	public void getDecodedRegion(Rect region, Point frameSize);
+}
@@ -0,0 +1,179 @@
+package il.liranfunaro.animatedbitmap;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.view.Choreographer;
+
+/**
+ * Draws on a thread of its own, at most once per display refresh.
+ * Any number of render requests between two refreshes are coalesced into a
+ * single frame, which draws whatever is the latest state at that time.
+ * Frames are paced by {@link Choreographer} from Jelly Bean, and by a fixed
+ * interval before it.
+ */
+public class RenderLoop {
+	// The frame interval when there is no Choreographer, in milliseconds
+	public static final long FALLBACK_FRAME_INTERVAL = 16;
+
+	public interface Renderer {
+		/**
+		 * Draw a frame, on the render thread
+		 *
+		 * @param frameTimeNanos the time the frame started, in the {@link System#nanoTime()} time base
+		 * @return true if another frame should follow, as long as something is animated
+		 */
+		boolean onRenderFrame(long frameTimeNanos);
+	}
+
+	private final String name;
+	private final Renderer renderer;
+
+	// True while a frame is scheduled and hadn't started yet
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	// Guarded by this
+	private HandlerThread thread = null;
+	private Handler handler = null;
+
+	// Used by the render thread
+	private VsyncScheduler vsyncScheduler = null;
+	private long lastFrameTime = 0;
+
+	private final Runnable scheduleFrame = new Runnable() {
+		@Override
+		public void run() {
+			if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+				if(vsyncScheduler == null) {
+					// A Choreographer belongs to the thread it is taken on
+					vsyncScheduler = new VsyncScheduler(RenderLoop.this);
+				}
+				vsyncScheduler.schedule();
+			} else {
+				final Handler current = currentHandler();
+				if(current != null) {
+					final long delay = lastFrameTime + FALLBACK_FRAME_INTERVAL * 1000000 - System.nanoTime();
+					current.postDelayed(fallbackFrame, Math.max(0, delay / 1000000));
+				}
+			}
+		}
+	};
+
+	private final Runnable fallbackFrame = new Runnable() {
+		@Override
+		public void run() {
+			doFrame(System.nanoTime());
+		}
+	};
+
+	public RenderLoop(String name, Renderer renderer) {
+		this.name = name;
+		this.renderer = renderer;
+	}
+
+	/**
+	 * Start the render thread and draw a first frame
+	 */
+	public synchronized void start() {
+		if(thread != null) {
+			return;
+		}
+
+		thread = new HandlerThread(name, Process.THREAD_PRIORITY_DISPLAY);
+		thread.start();
+		handler = new Handler(thread.getLooper());
+		vsyncScheduler = null;
+		scheduled.set(false);
+
+		requestRender();
+	}
+
+	/**
+	 * Stop the render thread, and wait until it doesn't draw anymore
+	 */
+	public void stop() {
+		final HandlerThread stopped;
+		synchronized (this) {
+			stopped = thread;
+			thread = null;
+			handler = null;
+		}
+
+		if(stopped == null) {
+			return;
+		}
+
+		stopped.quit();
+
+		boolean interrupted = false;
+		while(stopped.isAlive()) {
+			try {
+				stopped.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized Handler currentHandler() {
+		return handler;
+	}
+
+	/**
+	 * Draw a frame at the next display refresh, unless one is already due.
+	 * Ignored while the loop is stopped.
+	 */
+	public void requestRender() {
+		if(!scheduled.compareAndSet(false, true)) {
+			return;
+		}
+
+		final Handler current = currentHandler();
+		if(current == null) {
+			scheduled.set(false);
+			return;
+		}
+
+		current.post(scheduleFrame);
+	}
+
+	void doFrame(long frameTimeNanos) {
+		// Requests made while drawing are for the next frame
+		scheduled.set(false);
+		lastFrameTime = frameTimeNanos;
+
+		if(renderer.onRenderFrame(frameTimeNanos)) {
+			requestRender();
+		}
+	}
+
+	/**
+	 * Kept apart so the Choreographer isn't loaded before Jelly Bean
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	private static class VsyncScheduler implements Choreographer.FrameCallback {
+		private final RenderLoop loop;
+		private final Choreographer choreographer = Choreographer.getInstance();
+
+		VsyncScheduler(RenderLoop loop) {
+			this.loop = loop;
+		}
+
+		void schedule() {
+			choreographer.postFrameCallback(this);
+		}
+
+		@Override
+		public void doFrame(long frameTimeNanos) {
+			loop.doFrame(frameTimeNanos);
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package il.liranfunaro.animatedbitmap;
+
+import java.util.ArrayDeque;
+
+import android.util.Log;
+
+/**
+ * A bounded pool of decoding threads that is shared by several views, so
+ * showing many streams at once doesn't mean a decoding thread for each.
+ * 
+ * Each view registers a {@link Task} and schedules it whenever a frame arrives.
+ * Scheduled tasks are run in turn, one frame at a time, so a fast stream
+ * can't starve the others. A task is never run by two threads at once, and
+ * a task that is scheduled while it runs is queued again when it's done.
+ */
+public class SharedDecodeExecutor {
+	static final String TAG = "SharedDecodeExecutor";
+	
+	public static final int MAX_DEFAULT_THREADS = 4;
+	
+	/**
+	 * Decodes the pending frame of a single view
+	 */
+	public static abstract class Task {
+		// Guarded by the executor
+		private boolean queued = false;
+		private boolean running = false;
+		private boolean pending = false;
+		
+		/**
+		 * Decode and show the view's pending frame, if there is one
+		 */
+		protected abstract void decodeNext();
+	}
+	
+	private final ArrayDeque<Task> ready = new ArrayDeque<Task>();
+	private final Thread[] workers;
+	private boolean shutdown = false;
+	
+	/**
+	 * @return a thread for each core but one, for the UI and the streams, and no more than {@link #MAX_DEFAULT_THREADS}
+	 */
+	public static int getDefaultThreadCount() {
+		return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, MAX_DEFAULT_THREADS));
+	}
+	
+	public SharedDecodeExecutor() {
+		this(getDefaultThreadCount());
+	}
+	
+	public SharedDecodeExecutor(int threadCount) {
+		workers = new Thread[threadCount];
+		for(int i = 0; i < threadCount; ++i) {
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work();
+				}
+			}, "SharedDecoder-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+	
+	public int getThreadCount() {
+		return workers.length;
+	}
+	
+	/**
+	 * Queue a task to run, if it isn't already
+	 */
+	public synchronized void schedule(Task task) {
+		if(shutdown) {
+			return;
+		}
+		
+		if(task.running) {
+			task.pending = true;
+		} else if(!task.queued) {
+			task.queued = true;
+			ready.addLast(task);
+			notify();
+		}
+	}
+	
+	/**
+	 * Remove a task from the queue, and wait until it isn't running
+	 */
+	public synchronized void cancel(Task task) {
+		if(task.queued) {
+			ready.remove(task);
+			task.queued = false;
+		}
+		task.pending = false;
+		
+		boolean interrupted = false;
+		while(task.running) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Stop the threads. Tasks that are still queued aren't run.
+	 */
+	public synchronized void shutdown() {
+		shutdown = true;
+		ready.clear();
+		notifyAll();
+	}
+	
+	private void work() {
+		while(true) {
+			Task task;
+			
+			synchronized (this) {
+				while(ready.isEmpty() && !shutdown) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+					}
+				}
+				
+				if(shutdown) {
+					return;
+				}
+				
+				task = ready.removeFirst();
+				task.queued = false;
+				task.pending = false;
+				task.running = true;
+			}
+			
+			try {
+				task.decodeNext();
+			} catch (RuntimeException e) {
+				Log.e(TAG, e.getMessage(), e);
+			} finally {
+				synchronized (this) {
+					task.running = false;
+					
+					// A frame arrived while it ran, give it another turn after the others
+					if(task.pending && !shutdown) {
+						task.pending = false;
+						task.queued = true;
+						ready.addLast(task);
+					}
+					
+					// Wake a worker for the requeued task, and whoever waits to cancel it
+					notifyAll();
+				}
+			}
+		}
+	}
+}
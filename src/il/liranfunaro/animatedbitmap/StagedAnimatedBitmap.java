@@ -0,0 +1,28 @@
+package il.liranfunaro.animatedbitmap;
+
+import java.io.IOException;
+
+import android.graphics.Bitmap;
+
+/**
+ * An animated bitmap whose reading and decoding can run as separate stages,
+ * so a slow decoder can skip to the newest frame instead of falling behind.
+ *
+ * @param <F> the type of an encoded frame
+ */
+public interface StagedAnimatedBitmap<F> extends AnimatedBitmap {
+	/**
+	 * @return the next encoded frame, or null if the animation has ended
+	 */
+	public F readEncodedFrame() throws IOException;
+	
+	/**
+	 * @return the decoded frame, or null if it couldn't be decoded
+	 */
+	public Bitmap decodeFrame(F frame) throws IOException;
+	
+	/**
+	 * Release a frame that was returned by {@link #readEncodedFrame()}
+	 */
+	public void releaseFrame(F frame);
+}
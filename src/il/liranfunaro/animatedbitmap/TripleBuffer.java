@@ -0,0 +1,111 @@
+package il.liranfunaro.animatedbitmap;
+
+import il.liranfunaro.mjpeg.FrameRegion;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands decoded frames from the decoding thread to the render thread without
+ * copying and without locking. There are three slots: the front one is drawn
+ * by the render thread, the back one is filled by the decoding thread, and the
+ * pending one holds the newest frame that wasn't drawn yet. Publishing swaps
+ * the back slot with the pending one, and drawing swaps the pending one with
+ * the front, so neither thread waits for the other and a frame is never
+ * changed while it is drawn.
+ *
+ * The content that the back slot held when it is handed to the decoding
+ * thread is no longer drawn, so it can be decoded into again.
+ *
+ * @param <T> the type of the content, a bitmap on Android
+ */
+public class TripleBuffer<T> {
+	public static class Slot<T> {
+		public T content;
+		public int frameWidth;
+		public int frameHeight;
+		// The part of the frame the content holds
+		public final FrameRegion region = new FrameRegion();
+	}
+
+	// The indices of the front, pending and back slots, two bits each
+	private static final int PENDING_SHIFT = 2;
+	private static final int BACK_SHIFT = 4;
+	private static final int INDEX_MASK = 3;
+
+	// Set while the pending slot holds a frame that wasn't drawn yet
+	private static final int FRESH = 1 << 6;
+
+	private final Slot<T>[] slots;
+	private final AtomicInteger state = new AtomicInteger(0 | (1 << PENDING_SHIFT) | (2 << BACK_SHIFT));
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public TripleBuffer() {
+		slots = new Slot[3];
+		for(int i = 0; i < slots.length; ++i) {
+			slots[i] = new Slot<T>();
+		}
+	}
+
+	private static int front(int state) {
+		return state & INDEX_MASK;
+	}
+
+	private static int pending(int state) {
+		return (state >> PENDING_SHIFT) & INDEX_MASK;
+	}
+
+	private static int back(int state) {
+		return (state >> BACK_SHIFT) & INDEX_MASK;
+	}
+
+	/**
+	 * @return the slot to fill with the next frame. Used by a single decoding thread at a time.
+	 */
+	public Slot<T> getBack() {
+		return slots[back(state.get())];
+	}
+
+	/**
+	 * Make the filled back slot the newest frame, replacing a pending frame
+	 * that wasn't drawn yet
+	 *
+	 * @return the content of the new back slot, which is no longer drawn, or null
+	 */
+	public T publish() {
+		int current, next;
+		do {
+			current = state.get();
+			next = front(current) | (back(current) << PENDING_SHIFT) | (pending(current) << BACK_SHIFT) | FRESH;
+		} while(!state.compareAndSet(current, next));
+
+		final Slot<T> back = slots[pending(current)];
+		final T released = back.content;
+		back.content = null;
+		return released;
+	}
+
+	/**
+	 * Take the newest frame to be drawn, if there is a new one. Used by the render thread.
+	 *
+	 * @return true if the front slot changed
+	 */
+	public boolean swap() {
+		int current, next;
+		do {
+			current = state.get();
+			if((current & FRESH) == 0) {
+				return false;
+			}
+			next = pending(current) | (front(current) << PENDING_SHIFT) | (back(current) << BACK_SHIFT);
+		} while(!state.compareAndSet(current, next));
+
+		return true;
+	}
+
+	/**
+	 * @return the slot that is drawn. Used by the render thread.
+	 */
+	public Slot<T> getFront() {
+		return slots[front(state.get())];
+	}
+}
@@ -0,0 +1,187 @@
+package il.liranfunaro.mjpeg;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Records frames on a writer thread of its own, so the thread that reads
+ * the stream never waits for the disk. Each frame is copied to a pooled
+ * buffer and queued for the writer. When the writer falls behind and the
+ * queue is full, the frame is dropped and counted instead.
+ *
+ * Closing is asynchronous as well: the writer records the queued frames
+ * and then closes the recorder. If the writer fails, the recording stops
+ * and the following frames are refused with its error.
+ */
+public class AsyncMjpegRecorder implements Runnable {
+	public final static int DEFAULT_QUEUE_CAPACITY = 16;
+
+	protected final MjpegRecorder recorder;
+	protected final FrameBufferPool pool;
+	protected final int queueCapacity;
+
+	// Guarded by this
+	private final ArrayDeque<MjpegFrame> queue;
+	private boolean closed = false;
+	private IOException failure = null;
+	private int droppedCount = 0;
+
+	private Thread thread = null;
+
+	public AsyncMjpegRecorder(MjpegRecorder recorder) {
+		this(recorder, FrameBufferPool.getDefault(), DEFAULT_QUEUE_CAPACITY);
+	}
+
+	public AsyncMjpegRecorder(MjpegRecorder recorder, FrameBufferPool pool, int queueCapacity) {
+		this.recorder = recorder;
+		this.pool = pool;
+		this.queueCapacity = queueCapacity;
+		this.queue = new ArrayDeque<MjpegFrame>(queueCapacity);
+	}
+
+	public MjpegRecorder getRecorder() {
+		return recorder;
+	}
+
+	public synchronized void start() {
+		if(thread == null) {
+			thread = new Thread(this, "MjpegRecorder");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Queue a frame to be recorded. The frame is copied, so it can be
+	 * released as soon as this returns.
+	 *
+	 * @return false if the queue was full and the frame was dropped
+	 * @throws IOException if the recorder was closed or failed to write
+	 */
+	public boolean record(MjpegFrame frame) throws IOException {
+		synchronized (this) {
+			checkOpen();
+
+			if(queue.size() >= queueCapacity) {
+				++droppedCount;
+				return false;
+			}
+		}
+
+		// Copy outside the lock, the writer only waits for it to poll the queue
+		final int length = frame.getLength();
+		byte[] data = pool.acquire(length);
+		System.arraycopy(frame.getData(), frame.getOffset(), data, 0, length);
+		MjpegFrame copy = new MjpegFrame(pool, data, 0, length, frame.getTimestamp());
+
+		synchronized (this) {
+			if(closed || failure != null) {
+				copy.release();
+				checkOpen();
+			}
+
+			queue.addLast(copy);
+			notifyAll();
+		}
+		return true;
+	}
+
+	private void checkOpen() throws IOException {
+		if(failure != null) {
+			throw new IOException("Recording failed", failure);
+		}
+		if(closed) {
+			throw new IOException("Recorder is closed");
+		}
+	}
+
+	/**
+	 * @return the number of frames that were dropped because the queue was full
+	 */
+	public synchronized int getDroppedCount() {
+		return droppedCount;
+	}
+
+	/**
+	 * Stop accepting frames. The writer records the queued frames and then
+	 * closes the recorder. Returns without waiting for it.
+	 */
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Wait for the writer to close the recorder after {@link #close()}
+	 *
+	 * @return true if the writer finished, false if the time ran out first
+	 */
+	public boolean awaitClosed(long timeoutMs) throws InterruptedException {
+		final Thread writer;
+		synchronized (this) {
+			writer = thread;
+		}
+
+		if(writer != null) {
+			writer.join(timeoutMs);
+			return !writer.isAlive();
+		}
+		return true;
+	}
+
+	/**
+	 * @return the next frame to record, or null once closed and all the
+	 * queued frames were taken
+	 */
+	private synchronized MjpegFrame take() {
+		boolean interrupted = false;
+
+		while(queue.isEmpty() && !closed) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return queue.pollFirst();
+	}
+
+	private synchronized void fail(IOException e) {
+		if(failure == null) {
+			failure = e;
+		}
+
+		for(MjpegFrame frame : queue) {
+			frame.release();
+		}
+		queue.clear();
+	}
+
+	@Override
+	public void run() {
+		try {
+			MjpegFrame frame;
+			while((frame = take()) != null) {
+				try {
+					recorder.record(frame);
+				} finally {
+					frame.release();
+				}
+			}
+		} catch (IOException e) {
+			fail(e);
+		} catch (RuntimeException e) {
+			fail(new IOException("Recording failed", e));
+		} finally {
+			try {
+				recorder.close();
+			} catch (IOException e) {
+				fail(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package il.liranfunaro.mjpeg;
+
+import java.util.ArrayDeque;
+
+/**
+ * A pool of reusable frame buffers, grouped by power-of-two size classes.
+ * Buffers are handed out for the life time of a single {@link MjpegFrame}
+ * and are returned to the pool when the frame is released.
+ */
+public class FrameBufferPool {
+	public final static int MIN_SIZE_CLASS_SHIFT = 16;
+	public final static int MAX_SIZE_CLASS_SHIFT = 26;
+	public final static int DEFAULT_BUFFERS_PER_CLASS = 4;
+
+	private static final FrameBufferPool defaultPool = new FrameBufferPool(DEFAULT_BUFFERS_PER_CLASS);
+
+	protected final int buffersPerClass;
+	protected final ArrayDeque<byte[]>[] sizeClasses;
+
+	public static FrameBufferPool getDefault() {
+		return defaultPool;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public FrameBufferPool(int buffersPerClass) {
+		this.buffersPerClass = buffersPerClass;
+		this.sizeClasses = new ArrayDeque[MAX_SIZE_CLASS_SHIFT - MIN_SIZE_CLASS_SHIFT + 1];
+
+		for(int i = 0; i < sizeClasses.length; ++i) {
+			sizeClasses[i] = new ArrayDeque<byte[]>(buffersPerClass);
+		}
+	}
+
+	/**
+	 * @return the index of the smallest size class that can hold the given
+	 * length, or -1 if it is larger than the largest class
+	 */
+	protected static int getSizeClass(int length) {
+		int shift = MIN_SIZE_CLASS_SHIFT;
+		while(shift <= MAX_SIZE_CLASS_SHIFT && (1 << shift) < length) {
+			++shift;
+		}
+
+		return shift <= MAX_SIZE_CLASS_SHIFT ? shift - MIN_SIZE_CLASS_SHIFT : -1;
+	}
+
+	/**
+	 * @return a buffer at least minLength bytes long
+	 */
+	public byte[] acquire(int minLength) {
+		int sizeClass = getSizeClass(minLength);
+		if(sizeClass < 0) {
+			return new byte[minLength];
+		}
+
+		byte[] buffer;
+		synchronized (sizeClasses[sizeClass]) {
+			buffer = sizeClasses[sizeClass].pollFirst();
+		}
+
+		return buffer != null ? buffer : new byte[1 << (sizeClass + MIN_SIZE_CLASS_SHIFT)];
+	}
+
+	/**
+	 * Return a buffer that was acquired from this pool
+	 */
+	public void release(byte[] buffer) {
+		int sizeClass = getSizeClass(buffer.length);
+		if(sizeClass < 0 || buffer.length != (1 << (sizeClass + MIN_SIZE_CLASS_SHIFT))) {
+			return;
+		}
+
+		synchronized (sizeClasses[sizeClass]) {
+			if(sizeClasses[sizeClass].size() < buffersPerClass) {
+				sizeClasses[sizeClass].offerFirst(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Drop all the pooled buffers
+	 */
+	public void clear() {
+		for(ArrayDeque<byte[]> sizeClass : sizeClasses) {
+			synchronized (sizeClass) {
+				sizeClass.clear();
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package il.liranfunaro.mjpeg;
+
+/**
+ * Tells whether a compressed frame is worth decoding, by comparing it with
+ * the last frame that was let through. A frame is fingerprinted by its size
+ * and a fixed number of bytes sampled across it, so the check costs the same
+ * for any frame size. Frames of a static scene are usually byte identical, or
+ * differ only by a few bytes of sensor noise. A frame is never taken as
+ * unchanged by its size alone, since motion in a small part of the scene
+ * often changes the size by less than the tolerance. A frame of a similar
+ * size is sampled at the last frame's positions, so the bytes that didn't
+ * move still compare equal.
+ *
+ * A frame is let through at least once in a while even if it looks unchanged,
+ * so slow changes and the camera's time overlay are eventually shown.
+ * An instance is meant to be used by a single stream.
+ */
+public class FrameChangeDetector {
+	public static final int DEFAULT_SAMPLE_COUNT = 64;
+
+	// Frames whose sizes differ by at most this fraction may be nearly identical
+	public static final float DEFAULT_SIZE_TOLERANCE = 0.002f;
+
+	// Nearly identical frames differ in at most this many of their sampled bytes
+	public static final int DEFAULT_MAX_DIFFERENT_SAMPLES = 2;
+
+	public static final long DEFAULT_MAX_SKIP_MS = 5000;
+
+	protected final int sampleCount;
+	protected final float sizeTolerance;
+	protected final int maxDifferentSamples;
+	protected final long maxSkipTime;
+
+	// The fingerprint of the last frame that was let through
+	private int lastLength = -1;
+	private final byte[] lastSamples;
+	private int lastSampled = 0;
+	private long lastTimestamp = 0;
+
+	// The samples of the checked frame
+	private final byte[] samples;
+
+	private int skippedCount = 0;
+
+	public FrameChangeDetector() {
+		this(DEFAULT_SAMPLE_COUNT, DEFAULT_SIZE_TOLERANCE, DEFAULT_MAX_DIFFERENT_SAMPLES, DEFAULT_MAX_SKIP_MS);
+	}
+
+	/**
+	 * @param sampleCount the number of bytes that are compared
+	 * @param sizeTolerance the largest size difference of nearly identical frames, as a fraction
+	 * of the frame's size. 0 skips only identical frames.
+	 * @param maxDifferentSamples the largest number of sampled bytes that differ between nearly
+	 * identical frames
+	 * @param maxSkipTime the longest time to skip frames for, in milliseconds
+	 */
+	public FrameChangeDetector(int sampleCount, float sizeTolerance, int maxDifferentSamples, long maxSkipTime) {
+		this.sampleCount = sampleCount;
+		this.sizeTolerance = sizeTolerance;
+		this.maxDifferentSamples = maxDifferentSamples;
+		this.maxSkipTime = maxSkipTime;
+		this.lastSamples = new byte[sampleCount];
+		this.samples = new byte[sampleCount];
+	}
+
+	/**
+	 * Copy bytes that are sampled evenly across the given span of the frame.
+	 * Positions past the frame's end are taken from its last byte.
+	 *
+	 * @param span the length to spread the samples over, so frames of
+	 * different sizes can be sampled at the same positions
+	 * @return the number of sampled bytes, less than the sample count only for a smaller frame
+	 */
+	protected int sample(MjpegFrame frame, int span, byte[] out) {
+		final byte[] data = frame.getData();
+		final int offset = frame.getOffset();
+		final int length = frame.getLength();
+
+		if(length <= sampleCount) {
+			System.arraycopy(data, offset, out, 0, length);
+			return length;
+		}
+
+		// Sample in fixed point so the samples span the whole frame
+		final long step = ((long) span << 16) / sampleCount;
+		long pos = 0;
+		for(int i = 0; i < sampleCount; ++i, pos += step) {
+			out[i] = data[offset + Math.min((int) (pos >>> 16), length - 1)];
+		}
+		return sampleCount;
+	}
+
+	/**
+	 * @return the number of sampled bytes that differ from the last frame's,
+	 * or more than the sample count if they can't be compared
+	 */
+	private int countDifferentSamples(int sampled) {
+		if(sampled != lastSampled) {
+			return sampleCount + 1;
+		}
+
+		int different = 0;
+		for(int i = 0; i < sampled; ++i) {
+			if(samples[i] != lastSamples[i]) {
+				++different;
+			}
+		}
+		return different;
+	}
+
+	/**
+	 * Check a frame, and remember it as the last frame if it changed
+	 *
+	 * @return true if the frame should be decoded and shown
+	 */
+	public boolean isChanged(MjpegFrame frame) {
+		final int length = frame.getLength();
+		final long timestamp = frame.getTimestamp();
+
+		boolean unchanged = false;
+		if(lastLength >= 0 && timestamp - lastTimestamp < maxSkipTime) {
+			final boolean sameSize = length == lastLength;
+			final boolean similarSize = sizeTolerance > 0 && Math.abs(length - lastLength) <= sizeTolerance * lastLength;
+
+			if(sameSize || similarSize) {
+				// Sample at the last frame's positions, or a few bytes more or less would move all the samples
+				final int different = countDifferentSamples(sample(frame, lastLength, samples));
+				unchanged = (sameSize && different == 0) || (similarSize && different <= maxDifferentSamples);
+			}
+		}
+
+		if(unchanged) {
+			++skippedCount;
+			return false;
+		}
+
+		lastLength = length;
+		lastSampled = sample(frame, length, lastSamples);
+		lastTimestamp = timestamp;
+		return true;
+	}
+
+	/**
+	 * Forget the last frame, so the next frame is let through
+	 */
+	public void reset() {
+		lastLength = -1;
+	}
+
+	/**
+	 * @return the number of frames that were found unchanged
+	 */
+	public int getSkippedCount() {
+		return skippedCount;
+	}
+}
@@ -0,0 +1,22 @@
+package il.liranfunaro.mjpeg;
+
+import java.io.IOException;
+
+/**
+ * Receives the frames of a single MJPEG stream.
+ * The callbacks are made on the reading thread and should return quickly.
+ */
+public interface FrameConsumer {
+	/**
+	 * Called for each complete frame. The consumer takes ownership
+	 * of the frame and must release it.
+	 */
+	public void onFrame(MjpegFrame frame);
+
+	/**
+	 * Called once when the stream has ended.
+	 *
+	 * @param cause the error that ended the stream, or null if it was closed normally
+	 */
+	public void onStreamEnded(IOException cause);
+}
@@ -0,0 +1,16 @@
+package il.liranfunaro.mjpeg;
+
+import java.io.IOException;
+
+/**
+ * Decodes compressed frames into images of the platform.
+ * A decoder may reuse its output for the following frames.
+ *
+ * @param <T> the type of a decoded image
+ */
+public interface FrameDecoder<T> {
+	/**
+	 * @return the decoded image, or null if the frame couldn't be decoded or was skipped
+	 */
+	public T decode(MjpegFrame frame) throws IOException;
+}
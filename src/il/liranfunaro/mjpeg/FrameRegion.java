@@ -0,0 +1,69 @@
+package il.liranfunaro.mjpeg;
+
+/**
+ * A rectangle in the pixels of a frame, from left and top inclusive to right
+ * and bottom exclusive
+ */
+public class FrameRegion {
+	public int left;
+	public int top;
+	public int right;
+	public int bottom;
+
+	public FrameRegion() {
+	}
+
+	public FrameRegion(int left, int top, int right, int bottom) {
+		set(left, top, right, bottom);
+	}
+
+	public void set(int left, int top, int right, int bottom) {
+		this.left = left;
+		this.top = top;
+		this.right = right;
+		this.bottom = bottom;
+	}
+
+	public void set(FrameRegion region) {
+		set(region.left, region.top, region.right, region.bottom);
+	}
+
+	public void setEmpty() {
+		set(0, 0, 0, 0);
+	}
+
+	public boolean isEmpty() {
+		return left >= right || top >= bottom;
+	}
+
+	public int width() {
+		return right - left;
+	}
+
+	public int height() {
+		return bottom - top;
+	}
+
+	/**
+	 * Clip the region to a rectangle
+	 *
+	 * @return false, leaving the region empty, if they don't intersect
+	 */
+	public boolean intersect(int left, int top, int right, int bottom) {
+		set(Math.max(this.left, left), Math.max(this.top, top), Math.min(this.right, right), Math.min(this.bottom, bottom));
+		if(isEmpty()) {
+			setEmpty();
+			return false;
+		}
+		return true;
+	}
+
+	public boolean contains(FrameRegion region) {
+		return !isEmpty() && left <= region.left && top <= region.top && right >= region.right && bottom >= region.bottom;
+	}
+
+	@Override
+	public String toString() {
+		return "(" + left + ", " + top + ", " + right + ", " + bottom + ")";
+	}
+}
@@ -0,0 +1,322 @@
+package il.liranfunaro.mjpeg;
+
+import java.io.IOException;
+
+/**
+ * The platform independent part of decoding a frame: frames are checked by a
+ * {@link JpegFrameValidator} and, optionally, a {@link FrameChangeDetector}
+ * before they are decoded, and the sample size is chosen from the frame's header
+ * and the size the frame is displayed at. Decoders that implement
+ * {@link RegionFrameDecoder} decode only around the visible part of a frame
+ * while it is zoomed into.
+ * An instance is meant to be used by a single stream.
+ *
+ * @param <T> the type of a decoded image
+ */
+public abstract class JpegFrameDecoder<T> implements FrameDecoder<T> {
+	// A frame is decoded by region while its visible part is at most this fraction of
+	// its area, which is from a 2x zoom on. The threshold is on the visible part rather
+	// than on the decoded region, so it doesn't depend on the margins: at 2x zoom the
+	// region with its margins is over half of the frame. Region decoding still reads
+	// the whole frame, so it saves little more than the color conversion and copying
+	// of the pixels it leaves out.
+	public static final float MAX_VISIBLE_FRACTION = 0.25f;
+
+	// The decoded region extends past the visible one by this fraction of its size on
+	// each side, so a small pan shows decoded pixels until the next frame is decoded
+	public static final float REGION_MARGIN = 0.25f;
+
+	// Regions are aligned to the largest JPEG block size
+	public static final int REGION_ALIGNMENT = 16;
+
+	protected final JpegFrameValidator validator = new JpegFrameValidator();
+
+	// Skips frames that look like the last decoded one, null to decode every frame
+	protected volatile FrameChangeDetector changeDetector = null;
+
+	// The largest decoded frame size, 0 for no limit
+	protected int maxFrameWidth = 0;
+	protected int maxFrameHeight = 0;
+
+	// Sub-samples frames further than the display needs, to make decoding cheaper
+	protected volatile int sampleSizeFactor = 1;
+
+	// The size the frame is displayed at, 0 when unknown
+	protected volatile int displayWidth = 0;
+	protected volatile int displayHeight = 0;
+
+	// The visible part of the frame, empty when unknown. Guarded by itself.
+	protected final FrameRegion visibleRegion = new FrameRegion();
+
+	// The source size, sample size and decoded region of the last decoded frame
+	protected int lastWidth = 0;
+	protected int lastHeight = 0;
+	protected int lastSampleSize = 0;
+	protected final FrameRegion lastRegion = new FrameRegion();
+	protected boolean lastDecodedRegion = false;
+
+	// Used by the decoding thread while choosing a region
+	protected final FrameRegion visible = new FrameRegion();
+	protected final FrameRegion region = new FrameRegion();
+
+	/**
+	 * @return the validator that counts the frames that were rejected before decoding
+	 */
+	public JpegFrameValidator getValidator() {
+		return validator;
+	}
+
+	/**
+	 * Skip decoding frames that are identical or nearly identical to the last decoded frame
+	 *
+	 * @param changeDetector the detector to use, or null to decode every frame
+	 */
+	public void setChangeDetector(FrameChangeDetector changeDetector) {
+		this.changeDetector = changeDetector;
+	}
+
+	public FrameChangeDetector getChangeDetector() {
+		return changeDetector;
+	}
+
+	/**
+	 * Limit the size of the decoded frames. Larger frames are sub-sampled
+	 * by a power of two until they fit.
+	 *
+	 * @param maxWidth the largest width, 0 for no limit
+	 * @param maxHeight the largest height, 0 for no limit
+	 */
+	public void setMaxFrameSize(int maxWidth, int maxHeight) {
+		this.maxFrameWidth = maxWidth;
+		this.maxFrameHeight = maxHeight;
+	}
+
+	/**
+	 * Decode frames at no more than the resolution they are displayed at.
+	 * Frames are sub-sampled by the largest power of two that keeps them at
+	 * least as large as the displayed size.
+	 *
+	 * @param width the displayed width of the whole frame in pixels, 0 to decode at full resolution
+	 * @param height the displayed height of the whole frame in pixels, 0 to decode at full resolution
+	 */
+	public void setDisplaySize(int width, int height) {
+		this.displayWidth = width;
+		this.displayHeight = height;
+	}
+
+	/**
+	 * Decode only around the visible part of a frame, while a small enough part
+	 * of it is visible. Has no effect unless the decoder can decode regions.
+	 * The region is in the frame's pixels, an empty one decodes the whole frame.
+	 */
+	public void setVisibleRegion(int left, int top, int right, int bottom) {
+		synchronized (visibleRegion) {
+			visibleRegion.set(left, top, right, bottom);
+		}
+	}
+
+	/**
+	 * @return the width of the last decoded frame, before it was sub-sampled
+	 */
+	public int getFrameWidth() {
+		return lastWidth;
+	}
+
+	/**
+	 * @return the height of the last decoded frame, before it was sub-sampled
+	 */
+	public int getFrameHeight() {
+		return lastHeight;
+	}
+
+	/**
+	 * @return the part of the frame that the last decoded image holds, in the frame's pixels.
+	 * Should be read by the decoding thread.
+	 */
+	public FrameRegion getDecodedRegion() {
+		return lastRegion;
+	}
+
+	/**
+	 * @return the sample size of the last decoded frame, 0 if none was decoded yet
+	 */
+	public int getSampleSize() {
+		return lastSampleSize;
+	}
+
+	/**
+	 * Sub-sample frames further than the display needs, to decode them faster
+	 *
+	 * @param factor a power of two to multiply the sample size by, 1 for none
+	 */
+	public void setSampleSizeFactor(int factor) {
+		this.sampleSizeFactor = Math.max(1, factor);
+	}
+
+	public int getSampleSizeFactor() {
+		return sampleSizeFactor;
+	}
+
+	/**
+	 * @return the sample size for the frame's header
+	 */
+	protected int calculateSampleSize(JpegHeader header) {
+		return calculateSampleSize(header.getWidth(), header.getHeight());
+	}
+
+	/**
+	 * @return the largest power of two sample size that keeps the frame at
+	 * least as large as it is displayed, times the sample size factor,
+	 * or larger if it must be to keep the frame within the size limit
+	 */
+	protected int calculateSampleSize(int width, int height) {
+		final int dispWidth = displayWidth;
+		final int dispHeight = displayHeight;
+		int sampleSize = 1;
+
+		if(dispWidth > 0 && dispHeight > 0) {
+			while(sampled(width, sampleSize << 1) >= dispWidth && sampled(height, sampleSize << 1) >= dispHeight) {
+				sampleSize <<= 1;
+			}
+		}
+
+		sampleSize *= sampleSizeFactor;
+
+		while((maxFrameWidth > 0 && sampled(width, sampleSize) > maxFrameWidth) ||
+				(maxFrameHeight > 0 && sampled(height, sampleSize) > maxFrameHeight)) {
+			sampleSize <<= 1;
+		}
+
+		return sampleSize;
+	}
+
+	private static int sampled(int size, int sampleSize) {
+		return (size + sampleSize - 1) / sampleSize;
+	}
+
+	/**
+	 * @return true if the decoder implements {@link RegionFrameDecoder}
+	 */
+	protected boolean canDecodeRegions() {
+		return this instanceof RegionFrameDecoder;
+	}
+
+	/**
+	 * Choose the part of a frame to decode: all of it, unless only a small part
+	 * of it is visible. Sets {@link #visible} to the visible part of the frame.
+	 *
+	 * @param out set to the part to decode
+	 * @return true if only a region of the frame should be decoded
+	 */
+	protected boolean selectRegion(int width, int height, FrameRegion out) {
+		synchronized (visibleRegion) {
+			visible.set(visibleRegion);
+		}
+
+		if(!canDecodeRegions() || !visible.intersect(0, 0, width, height)) {
+			out.set(0, 0, width, height);
+			return false;
+		}
+
+		// The visible part is rounded out to whole pixels, don't count that against the zoom
+		if((long) (visible.width() - 1) * (visible.height() - 1) > MAX_VISIBLE_FRACTION * width * height) {
+			out.set(0, 0, width, height);
+			return false;
+		}
+
+		final int marginX = (int) (visible.width() * REGION_MARGIN);
+		final int marginY = (int) (visible.height() * REGION_MARGIN);
+		final int mask = ~(REGION_ALIGNMENT - 1);
+
+		out.set((visible.left - marginX) & mask, (visible.top - marginY) & mask,
+				(visible.right + marginX + REGION_ALIGNMENT - 1) & mask, (visible.bottom + marginY + REGION_ALIGNMENT - 1) & mask);
+		out.intersect(0, 0, width, height);
+
+		// The margins may reach all the edges of the frame, and then it is decoded whole
+		return out.width() < width || out.height() < height;
+	}
+
+	/**
+	 * @return true if the last decoded frame no longer fits how the frame is displayed,
+	 * since it was zoomed or panned out of the decoded region
+	 */
+	protected boolean isDecodedFrameStale() {
+		if(lastSampleSize == 0) {
+			return false;
+		}
+
+		if(calculateSampleSize(lastWidth, lastHeight) != lastSampleSize) {
+			return true;
+		}
+
+		boolean byRegion = selectRegion(lastWidth, lastHeight, region);
+		return byRegion != lastDecodedRegion || (byRegion && !lastRegion.contains(visible));
+	}
+
+	/**
+	 * Frames that are structurally broken are rejected without decoding,
+	 * and so are unchanged frames when a change detector is set.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public T decode(MjpegFrame frame) throws IOException {
+		final FrameChangeDetector detector = changeDetector;
+		if(detector != null) {
+			// Replace the shown frame even if it is unchanged, it doesn't fit the display anymore
+			if(isDecodedFrameStale()) {
+				detector.reset();
+			}
+
+			if(!detector.isChanged(frame)) {
+				return null;
+			}
+		}
+
+		JpegFrameValidator.Result result = validator.validate(frame);
+		T decoded = null;
+
+		if(result.isValid()) {
+			JpegHeader header = validator.getHeader();
+			final int sampleSize = calculateSampleSize(header);
+			final boolean byRegion = selectRegion(header.getWidth(), header.getHeight(), region);
+
+			if(byRegion) {
+				decoded = ((RegionFrameDecoder<T>) this).decodeRegion(frame, header, sampleSize, region);
+			} else {
+				decoded = decodeValid(frame, header, sampleSize);
+			}
+
+			if(decoded != null) {
+				lastWidth = header.getWidth();
+				lastHeight = header.getHeight();
+				lastSampleSize = sampleSize;
+				lastRegion.set(region);
+				lastDecodedRegion = byRegion;
+			}
+		} else {
+			onRejected(result);
+		}
+
+		// Let the next frame through, since this one won't be shown
+		if(decoded == null && detector != null) {
+			detector.reset();
+		}
+
+		return decoded;
+	}
+
+	/**
+	 * Decode a frame that passed validation
+	 *
+	 * @param header the frame's header
+	 * @param sampleSize the power of two to sub-sample the frame by
+	 * @return the decoded image, or null if it couldn't be decoded
+	 */
+	protected abstract T decodeValid(MjpegFrame frame, JpegHeader header, int sampleSize) throws IOException;
+
+	/**
+	 * Called when a frame fails validation
+	 */
+	protected void onRejected(JpegFrameValidator.Result result) {
+	}
+}
@@ -0,0 +1,166 @@
+package il.liranfunaro.mjpeg;
+
+/**
+ * A cheap structural check of a JPEG frame before it is decoded.
+ * It walks the header segments from the SOI marker to the first SOS marker,
+ * and checks that the frame ends with an EOI marker. Bytes before the SOI
+ * or after the EOI are trimmed from the frame, so frames that were split
+ * with some garbage around them still decode.
+ * The frame's dimensions are read from its SOFn segment on the way.
+ * An instance is meant to be used by a single stream.
+ */
+public class JpegFrameValidator {
+	public static final int MARKER_SOI = 0xD8;
+	public static final int MARKER_EOI = 0xD9;
+	public static final int MARKER_SOS = 0xDA;
+	public static final int MARKER_DHT = 0xC4;
+	public static final int MARKER_JPG = 0xC8;
+	public static final int MARKER_DAC = 0xCC;
+	public static final int MARKER_TEM = 0x01;
+
+	// How far back from the end of the frame the EOI marker is looked for
+	public static final int MAX_TRAILING_BYTES = 64;
+
+	public enum Result {
+		VALID, MISSING_SOI, BAD_MARKER, TRUNCATED_SEGMENT, BAD_FRAME_HEADER, MISSING_SOF, MISSING_SOS, MISSING_EOI;
+
+		public boolean isValid() {
+			return this == VALID;
+		}
+	}
+
+	private final int[] counts = new int[Result.values().length];
+	private final MarkerScanner scanner = new MarkerScanner();
+	private final JpegHeader header = new JpegHeader();
+
+	/**
+	 * Check the frame and trim it to its SOI...EOI range
+	 */
+	public Result validate(MjpegFrame frame) {
+		Result result = check(frame);
+
+		synchronized (counts) {
+			++counts[result.ordinal()];
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the header of the last frame that was checked, valid only if the check succeeded
+	 */
+	public JpegHeader getHeader() {
+		return header;
+	}
+
+	/**
+	 * @return the number of frames that were checked with the given result
+	 */
+	public int getCount(Result result) {
+		synchronized (counts) {
+			return counts[result.ordinal()];
+		}
+	}
+
+	/**
+	 * @return the number of frames that failed the check
+	 */
+	public int getRejectedCount() {
+		int rejected = 0;
+
+		synchronized (counts) {
+			for(Result result : Result.values()) {
+				if(!result.isValid()) {
+					rejected += counts[result.ordinal()];
+				}
+			}
+		}
+
+		return rejected;
+	}
+
+	public static boolean isStartOfFrame(int marker) {
+		return marker >= 0xC0 && marker <= 0xCF &&
+				marker != MARKER_DHT && marker != MARKER_JPG && marker != MARKER_DAC;
+	}
+
+	/**
+	 * @return true for markers that are not followed by a segment length
+	 */
+	public static boolean isStandalone(int marker) {
+		return marker == MARKER_TEM || (marker >= 0xD0 && marker <= 0xD7);
+	}
+
+	private Result check(MjpegFrame frame) {
+		final byte[] data = frame.getData();
+		int start = frame.getOffset();
+		int end = start + frame.getLength();
+
+		// Resynchronise to the first SOI
+		start = scanner.indexOfMarker(data, start, end, MarkerScanner.MARKER_PREFIX, MARKER_SOI);
+		if(start < 0) {
+			return Result.MISSING_SOI;
+		}
+
+		// Trim anything after the last EOI
+		int eoi = end - 2;
+		while(eoi > start && eoi >= end - MAX_TRAILING_BYTES &&
+				!((data[eoi] & 0xFF) == 0xFF && (data[eoi + 1] & 0xFF) == MARKER_EOI)) {
+			--eoi;
+		}
+
+		if(eoi <= start || (data[eoi] & 0xFF) != 0xFF || (data[eoi + 1] & 0xFF) != MARKER_EOI) {
+			return Result.MISSING_EOI;
+		}
+
+		end = eoi + 2;
+		frame.slice(start, end - start);
+
+		boolean foundSof = false;
+		int pos = start + 2;
+
+		while(pos + 1 < end) {
+			if((data[pos] & 0xFF) != 0xFF) {
+				return Result.BAD_MARKER;
+			}
+
+			int marker = data[pos + 1] & 0xFF;
+			if(marker == 0xFF) {
+				// Fill byte
+				++pos;
+				continue;
+			}
+
+			if(marker == MARKER_EOI) {
+				return Result.MISSING_SOS;
+			}
+
+			if(isStandalone(marker)) {
+				pos += 2;
+				continue;
+			}
+
+			if(pos + 3 >= end) {
+				return Result.TRUNCATED_SEGMENT;
+			}
+
+			int segmentLength = ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+			if(segmentLength < 2 || pos + 2 + segmentLength > end) {
+				return Result.TRUNCATED_SEGMENT;
+			}
+
+			if(isStartOfFrame(marker)) {
+				if(!header.read(data, pos, pos + 2 + segmentLength)) {
+					return Result.BAD_FRAME_HEADER;
+				}
+				foundSof = true;
+			} else if(marker == MARKER_SOS) {
+				return foundSof ? Result.VALID : Result.MISSING_SOF;
+			}
+
+			pos += 2 + segmentLength;
+		}
+
+		return Result.MISSING_SOS;
+	}
+}
@@ -0,0 +1,118 @@
+package il.liranfunaro.mjpeg;
+
+/**
+ * The frame layout that is declared by a JPEG's SOFn segment,
+ * read without decoding any pixels.
+ */
+public class JpegHeader {
+	public static final int MAX_COMPONENTS = 4;
+
+	private int sofMarker = 0;
+	private int precision = 0;
+	private int width = 0;
+	private int height = 0;
+	private int componentCount = 0;
+
+	private final int[] componentIds = new int[MAX_COMPONENTS];
+	private final int[] horizontalSampling = new int[MAX_COMPONENTS];
+	private final int[] verticalSampling = new int[MAX_COMPONENTS];
+
+	/**
+	 * Read the header from a SOFn segment
+	 *
+	 * @param pos the position of the segment's marker (0xFF) in the data
+	 * @param end the end of the frame's data
+	 * @return false if the segment is malformed
+	 */
+	public boolean read(byte[] data, int pos, int end) {
+		// Marker (2), length (2), precision (1), height (2), width (2), components (1)
+		if(pos + 10 > end) {
+			return false;
+		}
+
+		int marker = data[pos + 1] & 0xFF;
+		int parsedPrecision = data[pos + 4] & 0xFF;
+		int parsedHeight = ((data[pos + 5] & 0xFF) << 8) | (data[pos + 6] & 0xFF);
+		int parsedWidth = ((data[pos + 7] & 0xFF) << 8) | (data[pos + 8] & 0xFF);
+		int parsedComponents = data[pos + 9] & 0xFF;
+
+		if(parsedWidth == 0 || parsedHeight == 0 || parsedComponents == 0 ||
+				parsedComponents > MAX_COMPONENTS || pos + 10 + 3 * parsedComponents > end) {
+			return false;
+		}
+
+		sofMarker = marker;
+		precision = parsedPrecision;
+		height = parsedHeight;
+		width = parsedWidth;
+		componentCount = parsedComponents;
+
+		for(int i = 0; i < componentCount; ++i) {
+			int component = pos + 10 + 3 * i;
+			componentIds[i] = data[component] & 0xFF;
+			horizontalSampling[i] = (data[component + 1] & 0xF0) >> 4;
+			verticalSampling[i] = data[component + 1] & 0x0F;
+		}
+
+		return true;
+	}
+
+	public int getSofMarker() {
+		return sofMarker;
+	}
+
+	public boolean isProgressive() {
+		return sofMarker == 0xC2 || sofMarker == 0xC6 || sofMarker == 0xCA || sofMarker == 0xCE;
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getComponentCount() {
+		return componentCount;
+	}
+
+	public boolean isGrayscale() {
+		return componentCount == 1;
+	}
+
+	public int getComponentId(int component) {
+		return componentIds[component];
+	}
+
+	public int getHorizontalSampling(int component) {
+		return horizontalSampling[component];
+	}
+
+	public int getVerticalSampling(int component) {
+		return verticalSampling[component];
+	}
+
+	/**
+	 * @return the width of the image when decoded with the given sample size
+	 */
+	public int getSampledWidth(int sampleSize) {
+		return (width + sampleSize - 1) / sampleSize;
+	}
+
+	/**
+	 * @return the height of the image when decoded with the given sample size
+	 */
+	public int getSampledHeight(int sampleSize) {
+		return (height + sampleSize - 1) / sampleSize;
+	}
+
+	@Override
+	public String toString() {
+		return width + "x" + height + " (" + componentCount + " components)";
+	}
+}
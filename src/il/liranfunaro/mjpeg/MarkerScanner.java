@@ -0,0 +1,100 @@
+package il.liranfunaro.mjpeg;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds JPEG markers (a prefix byte, usually 0xFF, followed by a marker byte)
+ * in byte arrays and buffers. Candidates for the prefix byte are searched
+ * eight bytes at a time, and only they are compared against the marker byte.
+ *
+ * An instance keeps a little-endian view of the last scanned array,
+ * so it should be reused for scanning the same buffer.
+ */
+public class MarkerScanner {
+	public static final int MARKER_PREFIX = 0xFF;
+
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGHS = 0x8080808080808080L;
+
+	private byte[] array = null;
+	private ByteBuffer view = null;
+
+	/**
+	 * @return the index of the first occurrence of the prefix byte in
+	 * data[from, to), or -1 if there is none
+	 */
+	public int indexOf(byte[] data, int from, int to, int prefix) {
+		if(data != array) {
+			array = data;
+			view = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		return indexOf(view, from, to, prefix);
+	}
+
+	/**
+	 * @return the index of the first marker (prefix followed by the marker byte)
+	 * that lies entirely in data[from, to), or -1 if there is none
+	 */
+	public int indexOfMarker(byte[] data, int from, int to, int prefix, int marker) {
+		int pos = from;
+		while((pos = indexOf(data, pos, to - 1, prefix)) >= 0) {
+			if((data[pos + 1] & 0xFF) == marker) {
+				return pos;
+			}
+			++pos;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return the index of the first occurrence of the prefix byte between the
+	 * absolute indexes [from, to) of the buffer, or -1 if there is none
+	 */
+	public static int indexOf(ByteBuffer buffer, int from, int to, int prefix) {
+		final long pattern = ONES * (prefix & 0xFF);
+		final boolean littleEndian = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+
+		int pos = from;
+		for(; pos + 8 <= to; pos += 8) {
+			long word = buffer.getLong(pos);
+			if(!littleEndian) {
+				word = Long.reverseBytes(word);
+			}
+
+			// Bytes equal to the prefix become zero, the lowest flagged byte is the first zero byte
+			long x = word ^ pattern;
+			long found = (x - ONES) & ~x & HIGHS;
+			if(found != 0) {
+				return pos + (Long.numberOfTrailingZeros(found) >>> 3);
+			}
+		}
+
+		for(; pos < to; ++pos) {
+			if((buffer.get(pos) & 0xFF) == (prefix & 0xFF)) {
+				return pos;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return the index of the first marker (prefix followed by the marker byte)
+	 * that lies entirely between the absolute indexes [from, to) of the buffer,
+	 * or -1 if there is none
+	 */
+	public static int indexOfMarker(ByteBuffer buffer, int from, int to, int prefix, int marker) {
+		int pos = from;
+		while((pos = indexOf(buffer, pos, to - 1, prefix)) >= 0) {
+			if((buffer.get(pos + 1) & 0xFF) == marker) {
+				return pos;
+			}
+			++pos;
+		}
+
+		return -1;
+	}
+}
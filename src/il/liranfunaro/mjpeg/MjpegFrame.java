@@ -0,0 +1,74 @@
+package il.liranfunaro.mjpeg;
+
+/**
+ * A single compressed JPEG frame, held as a slice of a pooled buffer.
+ * The frame must be released once it is no longer used so its buffer
+ * can be reused by the following frames.
+ */
+public class MjpegFrame {
+	protected final FrameBufferPool pool;
+
+	protected byte[] data;
+	protected int offset;
+	protected int length;
+
+	// The time the frame was received, in milliseconds since the epoch
+	protected long timestamp;
+
+	public MjpegFrame(FrameBufferPool pool, byte[] data, int offset, int length) {
+		this(pool, data, offset, length, System.currentTimeMillis());
+	}
+
+	public MjpegFrame(FrameBufferPool pool, byte[] data, int offset, int length, long timestamp) {
+		this.pool = pool;
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+		this.timestamp = timestamp;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Narrow the frame to a part of its buffer
+	 */
+	void slice(int offset, int length) {
+		if(offset < 0 || length < 0 || offset + length > data.length) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		this.offset = offset;
+		this.length = length;
+	}
+
+	public boolean isReleased() {
+		return data == null;
+	}
+
+	/**
+	 * Return the frame's buffer to its pool.
+	 * The frame's data must not be accessed afterwards.
+	 */
+	public void release() {
+		if(data != null) {
+			if(pool != null) {
+				pool.release(data);
+			}
+			data = null;
+		}
+	}
+}
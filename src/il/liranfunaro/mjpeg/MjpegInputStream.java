@@ -1,12 +1,208 @@
 package il.liranfunaro.mjpeg;
 
+import java.io.IOException;
 import java.io.InputStream;
 
+/**
+ * Splits a multipart MJPEG stream into JPEG frames.
+ * When a part declares its Content-Length the frame is read in bulk by its
+ * length, otherwise it is found by scanning for the SOI/EOI markers.
+ * A scanned frame that grows to the maximal frame length without an EOI is
+ * dropped, and the stream is scanned for the next SOI.
+ */
 public class MjpegInputStream extends SequenceInputStream {
     public static final int[] SOI = { (int) 0xFF, (int) 0xD8 };
     public static final int[] EOF = { (int) 0xFF, (int) 0xD9 };
 
+    public static final String CONTENT_LENGTH_HEADER = "Content-Length:";
+    public static final int MAX_HEADER_LINE_LENGTH = 1024;
+    public static final int MAX_FRAME_LENGTH = 1 << 26;
+    public static final int DEFAULT_FRAME_LENGTH = 1 << 18;
+
+    // The length of the current frame as declared by its part header, -1 if unknown
+    private int contentLength = -1;
+
+    private int maxFrameLength = MAX_FRAME_LENGTH;
+    private int oversizedFrameCount = 0;
+
     public MjpegInputStream(InputStream in) {
         super(in, SOI, EOF);
     }
-}
\ No newline at end of file
+
+    /**
+     * Limit the length of a frame, so a stream that never ends its frame
+     * can't exhaust the memory. Defaults to {@link #MAX_FRAME_LENGTH}.
+     */
+    public void setMaxFrameLength(int maxFrameLength) {
+        if(maxFrameLength <= 0) {
+            throw new IllegalArgumentException("Maximal frame length must be positive");
+        }
+
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    /**
+     * @return the number of frames that were dropped for reaching the maximal frame length
+     */
+    public int getOversizedFrameCount() {
+        return oversizedFrameCount;
+    }
+
+    /**
+     * @return the length of the current frame as declared by its part header,
+     * or -1 if the part had no Content-Length header
+     */
+    public int getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * Read the next frame into a buffer from the default pool
+     *
+     * @see #readFrame(FrameBufferPool)
+     */
+    public MjpegFrame readFrame() throws IOException {
+        return readFrame(FrameBufferPool.getDefault());
+    }
+
+    /**
+     * Read the next complete frame into a pooled buffer.
+     * The caller must release the returned frame.
+     *
+     * @return the frame, or null if the stream has ended
+     */
+    public MjpegFrame readFrame(FrameBufferPool pool) throws IOException {
+        while(true) {
+            if(!beginFrame()) {
+                return null;
+            }
+
+            int remaining = getFrameRemaining();
+            byte[] data = pool.acquire(remaining >= 0 ? remaining : Math.min(DEFAULT_FRAME_LENGTH, maxFrameLength));
+            int length = 0;
+            boolean oversized = false;
+
+            try {
+                while(true) {
+                    final int limit = Math.min(data.length, maxFrameLength);
+                    if(length == limit) {
+                        if(isFrameEnded()) {
+                            // Consume the end of the frame
+                            read();
+                            break;
+                        }
+
+                        if(limit == maxFrameLength) {
+                            // Only a scanned frame gets here, a declared length was checked
+                            oversized = true;
+                            break;
+                        }
+
+                        byte[] larger = pool.acquire(Math.min(data.length << 1, maxFrameLength));
+                        System.arraycopy(data, 0, larger, 0, length);
+                        pool.release(data);
+                        data = larger;
+                        continue;
+                    }
+
+                    int count = read(data, length, limit - length);
+                    if(count == -1) {
+                        break;
+                    }
+                    length += count;
+                }
+            } catch (IOException e) {
+                pool.release(data);
+                throw e;
+            }
+
+            if(oversized) {
+                // Drop the frame and look for the next one
+                pool.release(data);
+                restart();
+                ++oversizedFrameCount;
+                continue;
+            }
+
+            if(length == 0) {
+                pool.release(data);
+                return null;
+            }
+
+            return new MjpegFrame(pool, data, 0, length);
+        }
+    }
+
+    @Override
+    protected boolean findFrameStart() throws IOException {
+        contentLength = -1;
+
+        int c;
+        while((c = peekByte(0)) == '\r' || c == '\n') {
+            readRawByte();
+        }
+
+        if(c == '-' && peekByte(1) == '-') {
+            int length = readPartHeaders();
+            if(length > 0) {
+                contentLength = length;
+                setFrameLength(length);
+                return true;
+            }
+        }
+
+        return super.findFrameStart();
+    }
+
+    /**
+     * Consume the boundary line and the part headers that follow it.
+     *
+     * @return the part's Content-Length, or -1 if it is missing or malformed
+     */
+    private int readPartHeaders() throws IOException {
+        // The boundary line
+        if(readHeaderLine() == null) {
+            return -1;
+        }
+
+        int length = -1;
+
+        String line;
+        while((line = readHeaderLine()) != null && line.length() > 0) {
+            if(line.regionMatches(true, 0, CONTENT_LENGTH_HEADER, 0, CONTENT_LENGTH_HEADER.length())) {
+                try {
+                    length = Integer.parseInt(line.substring(CONTENT_LENGTH_HEADER.length()).trim());
+                } catch (NumberFormatException e) {
+                    length = -1;
+                }
+            }
+        }
+
+        if(line == null || length > maxFrameLength) {
+            return -1;
+        }
+
+        return length;
+    }
+
+    /**
+     * @return the next header line without its line break, or null if the
+     * stream ended or the line is too long to be a header
+     */
+    private String readHeaderLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+
+        int c;
+        while((c = readRawByte()) != -1 && c != '\n') {
+            if(line.length() == MAX_HEADER_LINE_LENGTH) {
+                return null;
+            }
+
+            if(c != '\r') {
+                line.append((char) c);
+            }
+        }
+
+        return c == -1 ? null : line.toString();
+    }
+}
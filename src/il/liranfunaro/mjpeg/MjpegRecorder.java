@@ -0,0 +1,226 @@
+package il.liranfunaro.mjpeg;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Records compressed frames as they were received, without re-encoding them.
+ * The frames are appended to segment files, and each segment has an index
+ * file with the timestamp, offset and length of its frames. The index is
+ * memory-mapped, so adding an entry is a plain memory write.
+ *
+ * Frames are collected in a staging buffer and written to the segment in
+ * batches. The index's frame count is only advanced after the frames were
+ * written, so a reader never sees an entry whose data is not in the segment.
+ *
+ * A recorder is meant to be fed by a single stream.
+ */
+public class MjpegRecorder {
+	public static final String SEGMENT_EXTENSION = ".mjpg";
+	public static final String INDEX_EXTENSION = ".idx";
+
+	// Index layout: magic (4), version (4), frame count (4), reserved (4), then the entries
+	public static final int INDEX_MAGIC = 0x4D4A4958; // "MJIX"
+	public static final int INDEX_VERSION = 1;
+	public static final int INDEX_HEADER_SIZE = 16;
+	public static final int INDEX_COUNT_OFFSET = 8;
+
+	// Entry layout: timestamp (8), offset in the segment (8), length (4), reserved (4)
+	public static final int INDEX_ENTRY_SIZE = 24;
+
+	public static final int DEFAULT_MAX_SEGMENT_FRAMES = 1 << 16;
+	public static final long DEFAULT_MAX_SEGMENT_SIZE = 1L << 28;
+	public static final int DEFAULT_WRITE_BUFFER_SIZE = 1 << 20;
+
+	// The longest time frames may wait in the staging buffer
+	public static final long FLUSH_INTERVAL_MS = 1000;
+
+	protected final File directory;
+	protected final int maxSegmentFrames;
+	protected final long maxSegmentSize;
+
+	private final ByteBuffer writeBuffer;
+
+	private RandomAccessFile segmentFile = null;
+	private FileChannel segmentChannel = null;
+	private RandomAccessFile indexFile = null;
+	private MappedByteBuffer index = null;
+
+	// Frames that are in the index, and how many of them were written to the segment
+	private int frameCount = 0;
+	private int committedCount = 0;
+	private long segmentSize = 0;
+	private long lastFlushTime = 0;
+
+	private boolean closed = false;
+
+	public MjpegRecorder(File directory) {
+		this(directory, DEFAULT_MAX_SEGMENT_FRAMES, DEFAULT_MAX_SEGMENT_SIZE, DEFAULT_WRITE_BUFFER_SIZE);
+	}
+
+	public MjpegRecorder(File directory, int maxSegmentFrames, long maxSegmentSize, int writeBufferSize) {
+		this.directory = directory;
+		this.maxSegmentFrames = maxSegmentFrames;
+		this.maxSegmentSize = maxSegmentSize;
+		this.writeBuffer = ByteBuffer.allocateDirect(writeBufferSize);
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public static String getSegmentName(long startTime) {
+		return String.format(Locale.US, "%013d", startTime);
+	}
+
+	/**
+	 * Append a frame to the recording. The frame is copied, so it can be
+	 * released as soon as this returns.
+	 */
+	public synchronized void record(MjpegFrame frame) throws IOException {
+		if(closed) {
+			throw new IOException("Recorder is closed");
+		}
+
+		final long timestamp = frame.getTimestamp();
+		final int length = frame.getLength();
+
+		if(index == null || frameCount == maxSegmentFrames ||
+				(frameCount > 0 && segmentSize + length > maxSegmentSize)) {
+			openSegment(timestamp);
+		}
+
+		int entry = INDEX_HEADER_SIZE + frameCount * INDEX_ENTRY_SIZE;
+		index.putLong(entry, timestamp);
+		index.putLong(entry + 8, segmentSize);
+		index.putInt(entry + 16, length);
+		index.putInt(entry + 20, 0);
+
+		if(length > writeBuffer.remaining()) {
+			flush();
+		}
+
+		if(length > writeBuffer.capacity()) {
+			writeFully(ByteBuffer.wrap(frame.getData(), frame.getOffset(), length));
+		} else {
+			writeBuffer.put(frame.getData(), frame.getOffset(), length);
+		}
+
+		++frameCount;
+		segmentSize += length;
+
+		if(timestamp - lastFlushTime >= FLUSH_INTERVAL_MS) {
+			flush();
+		}
+	}
+
+	/**
+	 * Write the staged frames to the segment and commit them in the index
+	 */
+	public synchronized void flush() throws IOException {
+		if(segmentChannel == null) {
+			return;
+		}
+
+		writeBuffer.flip();
+		writeFully(writeBuffer);
+		writeBuffer.clear();
+
+		commit();
+		lastFlushTime = System.currentTimeMillis();
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Flush the staged frames and close the current segment.
+	 * Does nothing if the recorder was already closed.
+	 */
+	public synchronized void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			flush();
+		} finally {
+			closeSegment();
+		}
+	}
+
+	private void writeFully(ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()) {
+			segmentChannel.write(buffer);
+		}
+	}
+
+	private void commit() {
+		if(committedCount != frameCount) {
+			committedCount = frameCount;
+			index.putInt(INDEX_COUNT_OFFSET, committedCount);
+		}
+	}
+
+	private void openSegment(long startTime) throws IOException {
+		flush();
+		closeSegment();
+
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can't create recording directory: " + directory);
+		}
+
+		// Segments are named by their start time, skip names that are taken
+		long name = startTime;
+		while(new File(directory, getSegmentName(name) + SEGMENT_EXTENSION).exists()) {
+			++name;
+		}
+
+		segmentFile = new RandomAccessFile(new File(directory, getSegmentName(name) + SEGMENT_EXTENSION), "rw");
+		segmentChannel = segmentFile.getChannel();
+
+		indexFile = new RandomAccessFile(new File(directory, getSegmentName(name) + INDEX_EXTENSION), "rw");
+		index = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+				INDEX_HEADER_SIZE + (long) maxSegmentFrames * INDEX_ENTRY_SIZE);
+		index.order(ByteOrder.LITTLE_ENDIAN);
+
+		index.putInt(0, INDEX_MAGIC);
+		index.putInt(4, INDEX_VERSION);
+		index.putInt(INDEX_COUNT_OFFSET, 0);
+		index.putInt(12, 0);
+
+		frameCount = 0;
+		committedCount = 0;
+		segmentSize = 0;
+		lastFlushTime = startTime;
+	}
+
+	private void closeSegment() throws IOException {
+		if(index != null) {
+			index.force();
+			index = null;
+		}
+
+		try {
+			if(segmentFile != null) {
+				segmentFile.close();
+			}
+		} finally {
+			segmentFile = null;
+			segmentChannel = null;
+
+			if(indexFile != null) {
+				indexFile.close();
+				indexFile = null;
+			}
+		}
+	}
+}
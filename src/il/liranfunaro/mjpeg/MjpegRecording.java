@@ -0,0 +1,258 @@
+package il.liranfunaro.mjpeg;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Random access to the frames of a recording that was made by {@link MjpegRecorder}.
+ * The segments' indexes are memory-mapped, so finding a frame by its number or
+ * timestamp is a binary search in memory. A frame's data is copied out of
+ * the memory-mapped segment, without reading the segment sequentially.
+ *
+ * Only the frames that were committed when the recording was opened are visible.
+ */
+public class MjpegRecording {
+	protected static class Segment {
+		final File file;
+		final MappedByteBuffer index;
+		final int frameCount;
+
+		// The recording's frame number of the segment's first frame
+		final int firstFrame;
+
+		Segment(File file, MappedByteBuffer index, int frameCount, int firstFrame) {
+			this.file = file;
+			this.index = index;
+			this.frameCount = frameCount;
+			this.firstFrame = firstFrame;
+		}
+
+		long getTimestamp(int frame) {
+			return index.getLong(MjpegRecorder.INDEX_HEADER_SIZE + frame * MjpegRecorder.INDEX_ENTRY_SIZE);
+		}
+
+		long getOffset(int frame) {
+			return index.getLong(MjpegRecorder.INDEX_HEADER_SIZE + frame * MjpegRecorder.INDEX_ENTRY_SIZE + 8);
+		}
+
+		int getLength(int frame) {
+			return index.getInt(MjpegRecorder.INDEX_HEADER_SIZE + frame * MjpegRecorder.INDEX_ENTRY_SIZE + 16);
+		}
+	}
+
+	protected final File directory;
+	protected final Segment[] segments;
+	protected final int frameCount;
+
+	// The segment whose data is currently mapped
+	private int mappedSegment = -1;
+	private MappedByteBuffer mappedData = null;
+
+	public MjpegRecording(File directory) throws IOException {
+		this.directory = directory;
+
+		File[] indexFiles = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(MjpegRecorder.INDEX_EXTENSION);
+			}
+		});
+
+		if(indexFiles == null) {
+			throw new IOException("No recording in " + directory);
+		}
+
+		// Segment names are fixed-width start times
+		Arrays.sort(indexFiles);
+
+		ArrayList<Segment> found = new ArrayList<Segment>(indexFiles.length);
+		int count = 0;
+
+		for(File indexFile : indexFiles) {
+			String name = indexFile.getName();
+			File segmentFile = new File(directory,
+					name.substring(0, name.length() - MjpegRecorder.INDEX_EXTENSION.length()) + MjpegRecorder.SEGMENT_EXTENSION);
+
+			Segment segment = openSegment(indexFile, segmentFile, count);
+			if(segment != null) {
+				found.add(segment);
+				count += segment.frameCount;
+			}
+		}
+
+		this.segments = found.toArray(new Segment[found.size()]);
+		this.frameCount = count;
+	}
+
+	/**
+	 * @return the segment, or null if it has no frames or isn't a recording segment
+	 */
+	private static Segment openSegment(File indexFile, File segmentFile, int firstFrame) throws IOException {
+		if(!segmentFile.isFile()) {
+			return null;
+		}
+
+		RandomAccessFile file = new RandomAccessFile(indexFile, "r");
+		try {
+			if(file.length() < MjpegRecorder.INDEX_HEADER_SIZE) {
+				return null;
+			}
+
+			MappedByteBuffer header = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, MjpegRecorder.INDEX_HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+
+			if(header.getInt(0) != MjpegRecorder.INDEX_MAGIC || header.getInt(4) != MjpegRecorder.INDEX_VERSION) {
+				return null;
+			}
+
+			int count = header.getInt(MjpegRecorder.INDEX_COUNT_OFFSET);
+			long size = MjpegRecorder.INDEX_HEADER_SIZE + (long) count * MjpegRecorder.INDEX_ENTRY_SIZE;
+			if(count <= 0 || size > file.length()) {
+				return null;
+			}
+
+			MappedByteBuffer index = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+			index.order(ByteOrder.LITTLE_ENDIAN);
+
+			return new Segment(segmentFile, index, count, firstFrame);
+		} finally {
+			// The mapping stays valid after the file is closed
+			file.close();
+		}
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	public boolean isEmpty() {
+		return frameCount == 0;
+	}
+
+	/**
+	 * @return the timestamp of the first frame, in milliseconds since the epoch
+	 */
+	public long getStartTime() {
+		return getTimestamp(0);
+	}
+
+	/**
+	 * @return the timestamp of the last frame, in milliseconds since the epoch
+	 */
+	public long getEndTime() {
+		return getTimestamp(frameCount - 1);
+	}
+
+	public long getTimestamp(int frame) {
+		Segment segment = getSegment(frame);
+		return segment.getTimestamp(frame - segment.firstFrame);
+	}
+
+	public int getLength(int frame) {
+		Segment segment = getSegment(frame);
+		return segment.getLength(frame - segment.firstFrame);
+	}
+
+	/**
+	 * @return the number of the last frame whose timestamp is not after the given time,
+	 * or 0 if the time is before the recording
+	 */
+	public int findFrame(long timestamp) {
+		int low = 0;
+		int high = frameCount - 1;
+
+		while(low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if(getTimestamp(middle) <= timestamp) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Copy a frame out of its segment into a pooled buffer
+	 */
+	public synchronized MjpegFrame readFrame(int frame, FrameBufferPool pool) throws IOException {
+		final int segmentNumber = getSegmentNumber(frame);
+		final Segment segment = segments[segmentNumber];
+		final int segmentFrame = frame - segment.firstFrame;
+
+		final long offset = segment.getOffset(segmentFrame);
+		final int length = segment.getLength(segmentFrame);
+
+		if(segmentNumber != mappedSegment) {
+			mapSegment(segmentNumber);
+		}
+
+		if(offset < 0 || offset + length > mappedData.capacity()) {
+			throw new IOException("Frame " + frame + " is outside of its segment " + segment.file);
+		}
+
+		byte[] data = pool.acquire(length);
+		mappedData.position((int) offset);
+		mappedData.get(data, 0, length);
+
+		return new MjpegFrame(pool, data, 0, length, segment.getTimestamp(segmentFrame));
+	}
+
+	/**
+	 * Release the mapping of the last segment that was read
+	 */
+	public synchronized void close() {
+		mappedSegment = -1;
+		mappedData = null;
+	}
+
+	private void mapSegment(int segmentNumber) throws IOException {
+		// Only one segment is mapped at a time, to keep the address space small
+		mappedSegment = -1;
+		mappedData = null;
+
+		RandomAccessFile file = new RandomAccessFile(segments[segmentNumber].file, "r");
+		try {
+			mappedData = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			mappedSegment = segmentNumber;
+		} finally {
+			file.close();
+		}
+	}
+
+	private Segment getSegment(int frame) {
+		return segments[getSegmentNumber(frame)];
+	}
+
+	private int getSegmentNumber(int frame) {
+		if(frame < 0 || frame >= frameCount) {
+			throw new IndexOutOfBoundsException("Frame " + frame + " of " + frameCount);
+		}
+
+		int low = 0;
+		int high = segments.length - 1;
+
+		while(low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if(segments[middle].firstFrame <= frame) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		return low;
+	}
+}
@@ -0,0 +1,314 @@
+package il.liranfunaro.mjpeg;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Reads many MJPEG HTTP streams on a single I/O thread.
+ * Each stream is read through a non-blocking socket channel into its own
+ * direct buffer, and its complete frames are handed to the stream's consumer.
+ * An error in one stream, or in its consumer, ends that stream only.
+ */
+public class MjpegSelectorReader implements Runnable {
+	public final static int DEFAULT_READ_BUFFER_SIZE = 1 << 16;
+	public final static int DEFAULT_CONNECT_TIMEOUT_MS = 30000;
+	public final static int SELECT_TIMEOUT_MS = 1000;
+
+	protected final FrameBufferPool pool;
+	protected final int connectTimeoutMs;
+
+	protected final Selector selector;
+	protected final ConcurrentLinkedQueue<Stream> pendingStreams = new ConcurrentLinkedQueue<Stream>();
+	protected final ConcurrentLinkedQueue<Stream> closingStreams = new ConcurrentLinkedQueue<Stream>();
+
+	// Accessed only by the I/O thread
+	private final HashSet<Stream> streams = new HashSet<Stream>();
+
+	private Thread thread = null;
+	private volatile boolean running = false;
+
+	public MjpegSelectorReader() throws IOException {
+		this(FrameBufferPool.getDefault(), DEFAULT_CONNECT_TIMEOUT_MS);
+	}
+
+	public MjpegSelectorReader(FrameBufferPool pool, int connectTimeoutMs) throws IOException {
+		this.pool = pool;
+		this.connectTimeoutMs = connectTimeoutMs;
+		this.selector = Selector.open();
+	}
+
+	public synchronized void start() {
+		if(thread == null) {
+			running = true;
+			thread = new Thread(this, "MjpegSelectorReader");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Close all the streams and stop the I/O thread.
+	 * The reader can't be started again afterwards.
+	 */
+	public synchronized void shutdown() {
+		if(thread != null) {
+			running = false;
+			selector.wakeup();
+			thread = null;
+		}
+	}
+
+	/**
+	 * Open an HTTP MJPEG stream.
+	 * The addresses are tried in order until one of them connects.
+	 *
+	 * @param path the request path, e.g. "/"
+	 * @param authString base64 encoded "user:password" for basic authentication, or null
+	 */
+	public Stream open(String path, String authString, FrameConsumer consumer, InetSocketAddress... addresses) {
+		if(addresses.length == 0) {
+			throw new IllegalArgumentException("At least one address is required");
+		}
+
+		Stream stream = new Stream(path, authString, consumer, addresses);
+		pendingStreams.add(stream);
+		selector.wakeup();
+		return stream;
+	}
+
+	@Override
+	public void run() {
+		try {
+			while(running) {
+				registerPendingStreams();
+				closeRequestedStreams();
+
+				selector.select(SELECT_TIMEOUT_MS);
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					Stream stream = (Stream) key.attachment();
+					try {
+						stream.handle(key);
+					} catch (IOException e) {
+						stream.fail(e);
+					} catch (RuntimeException e) {
+						// Thrown by the consumer, the other streams must go on
+						stream.fail(new IOException("Failed to handle a frame", e));
+					}
+				}
+
+				checkConnectTimeouts();
+			}
+		} catch (IOException e) {
+			running = false;
+		} finally {
+			for(Stream stream : streams.toArray(new Stream[streams.size()])) {
+				stream.finish(null);
+			}
+
+			Stream stream;
+			while((stream = pendingStreams.poll()) != null) {
+				stream.finish(null);
+			}
+
+			try {
+				selector.close();
+			} catch (IOException e) {}
+		}
+	}
+
+	private void registerPendingStreams() {
+		Stream stream;
+		while((stream = pendingStreams.poll()) != null) {
+			if(stream.closed) {
+				stream.finish(null);
+				continue;
+			}
+
+			streams.add(stream);
+			stream.connect();
+		}
+	}
+
+	private void closeRequestedStreams() {
+		Stream stream;
+		while((stream = closingStreams.poll()) != null) {
+			stream.finish(null);
+		}
+	}
+
+	private void checkConnectTimeouts() {
+		long now = System.currentTimeMillis();
+
+		for(Stream stream : streams.toArray(new Stream[streams.size()])) {
+			if(stream.connectDeadline > 0 && now >= stream.connectDeadline) {
+				stream.fail(new IOException("Connection timed out"));
+			}
+		}
+	}
+
+	public class Stream {
+		protected final InetSocketAddress[] addresses;
+		protected final String path;
+		protected final String authString;
+		protected final FrameConsumer consumer;
+
+		protected final ByteBuffer readBuffer = ByteBuffer.allocateDirect(DEFAULT_READ_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		protected final MjpegStreamParser parser;
+
+		private int addressIndex = 0;
+		private SocketChannel channel = null;
+		private ByteBuffer request = null;
+		private long connectDeadline = 0;
+		private boolean receivedData = false;
+		private boolean finished = false;
+
+		volatile boolean closed = false;
+
+		protected Stream(String path, String authString, FrameConsumer consumer, InetSocketAddress[] addresses) {
+			this.path = path;
+			this.authString = authString;
+			this.consumer = consumer;
+			this.addresses = addresses;
+			this.parser = new MjpegStreamParser(pool, consumer, true);
+		}
+
+		/**
+		 * Stop reading the stream. The consumer's onStreamEnded() is called
+		 * on the I/O thread once the connection is closed.
+		 */
+		public void close() {
+			if(!closed) {
+				closed = true;
+				closingStreams.add(this);
+				selector.wakeup();
+			}
+		}
+
+		public boolean isClosed() {
+			return closed;
+		}
+
+		private ByteBuffer buildRequest(InetSocketAddress address) {
+			StringBuilder request = new StringBuilder();
+			request.append("GET ").append(path.length() == 0 ? "/" : path).append(" HTTP/1.0\r\n");
+			request.append("Host: ").append(address.getHostName()).append(':').append(address.getPort()).append("\r\n");
+			if(authString != null) {
+				request.append("Authorization: Basic ").append(authString.trim()).append("\r\n");
+			}
+			request.append("\r\n");
+
+			return ByteBuffer.wrap(request.toString().getBytes());
+		}
+
+		private void connect() {
+			closeChannel();
+
+			while(addressIndex < addresses.length) {
+				InetSocketAddress address = addresses[addressIndex++];
+				if(address == null || address.isUnresolved()) {
+					continue;
+				}
+
+				try {
+					channel = SocketChannel.open();
+					channel.configureBlocking(false);
+					request = buildRequest(address);
+					connectDeadline = System.currentTimeMillis() + connectTimeoutMs;
+
+					if(channel.connect(address)) {
+						channel.register(selector, SelectionKey.OP_WRITE, this);
+					} else {
+						channel.register(selector, SelectionKey.OP_CONNECT, this);
+					}
+					return;
+				} catch (IOException e) {
+					closeChannel();
+				}
+			}
+
+			finish(new IOException("Unable to connect to stream"));
+		}
+
+		private void handle(SelectionKey key) throws IOException {
+			if(!key.isValid()) {
+				return;
+			}
+
+			if(key.isConnectable() && channel.finishConnect()) {
+				key.interestOps(SelectionKey.OP_WRITE);
+			}
+
+			if(key.isValid() && key.isWritable()) {
+				channel.write(request);
+				if(!request.hasRemaining()) {
+					request = null;
+					connectDeadline = 0;
+					key.interestOps(SelectionKey.OP_READ);
+				}
+			}
+
+			if(key.isValid() && key.isReadable()) {
+				int count = channel.read(readBuffer);
+				if(count < 0) {
+					finish(null);
+					return;
+				}
+
+				receivedData |= count > 0;
+
+				readBuffer.flip();
+				parser.parse(readBuffer);
+				readBuffer.clear();
+			}
+		}
+
+		private void fail(IOException e) {
+			if(!receivedData && addressIndex < addresses.length) {
+				// Try the next address
+				connect();
+			} else {
+				finish(e);
+			}
+		}
+
+		private void closeChannel() {
+			if(channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {}
+				channel = null;
+			}
+		}
+
+		private void finish(IOException cause) {
+			if(finished) {
+				return;
+			}
+
+			finished = true;
+			closed = true;
+			closeChannel();
+			parser.release();
+			streams.remove(this);
+
+			try {
+				consumer.onStreamEnded(cause);
+			} catch (RuntimeException e) {
+				// The stream has ended either way, and the other streams must go on
+			}
+		}
+	}
+}
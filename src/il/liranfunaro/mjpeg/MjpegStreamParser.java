@@ -0,0 +1,311 @@
+package il.liranfunaro.mjpeg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An incremental MJPEG parser for non-blocking readers.
+ * It is fed with whatever bytes are available and emits complete frames to
+ * its consumer, using the same framing rules as {@link MjpegInputStream}:
+ * parts with a Content-Length header are copied in bulk by their length,
+ * other parts are found by scanning for the SOI/EOI markers. A scanned frame
+ * that grows beyond the maximal frame length fails the stream.
+ */
+public class MjpegStreamParser {
+	protected enum State {
+		RESPONSE_HEADERS, PART_START, PART_HEADERS, LENGTH_BODY, SCAN_START, SCAN_BODY
+	}
+
+	protected final FrameBufferPool pool;
+	protected final FrameConsumer consumer;
+
+	private State state;
+
+	private int maxFrameLength = MjpegInputStream.MAX_FRAME_LENGTH;
+
+	// The header line that is currently being read
+	private final StringBuilder line = new StringBuilder();
+	private boolean firstLine = true;
+	private int contentLength = -1;
+
+	// The frame that is currently being read
+	private byte[] frameData = null;
+	private int frameLength = 0;
+	private int matchCount = 0;
+
+	/**
+	 * @param expectResponseHeaders true if the input starts with the HTTP response
+	 * status line and headers, false if it starts with the multipart body
+	 */
+	public MjpegStreamParser(FrameBufferPool pool, FrameConsumer consumer, boolean expectResponseHeaders) {
+		this.pool = pool;
+		this.consumer = consumer;
+		this.state = expectResponseHeaders ? State.RESPONSE_HEADERS : State.PART_START;
+	}
+
+	/**
+	 * Limit the length of a frame, so a stream that never ends its frame
+	 * can't exhaust the memory. Defaults to {@link MjpegInputStream#MAX_FRAME_LENGTH}.
+	 */
+	public void setMaxFrameLength(int maxFrameLength) {
+		if(maxFrameLength <= 0) {
+			throw new IllegalArgumentException("Maximal frame length must be positive");
+		}
+
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	/**
+	 * @return true if the HTTP response headers were parsed already
+	 */
+	public boolean isInBody() {
+		return state != State.RESPONSE_HEADERS;
+	}
+
+	/**
+	 * Consume all the remaining bytes of the input
+	 *
+	 * @throws IOException if the server's response is not a stream, or if
+	 * a frame is longer than the maximal frame length
+	 */
+	public void parse(ByteBuffer input) throws IOException {
+		while(input.hasRemaining()) {
+			switch(state) {
+			case RESPONSE_HEADERS:
+				parseResponseHeaders(input);
+				break;
+			case PART_START:
+				parsePartStart(input);
+				break;
+			case PART_HEADERS:
+				parsePartHeaders(input);
+				break;
+			case LENGTH_BODY:
+				parseLengthBody(input);
+				break;
+			case SCAN_START:
+				parseScanStart(input);
+				break;
+			case SCAN_BODY:
+				parseScanBody(input);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Drop the frame that is currently being read, if any
+	 */
+	public void release() {
+		if(frameData != null) {
+			pool.release(frameData);
+			frameData = null;
+		}
+	}
+
+	/**
+	 * Accumulate the next header line
+	 *
+	 * @return true if a complete line is available in {@link #line}
+	 * @throws IOException if the line is too long to be a header
+	 */
+	private boolean readLine(ByteBuffer input) throws IOException {
+		while(input.hasRemaining()) {
+			int c = input.get() & 0xFF;
+			if(c == '\n') {
+				return true;
+			}
+
+			if(line.length() == MjpegInputStream.MAX_HEADER_LINE_LENGTH) {
+				throw new IOException("Header line is too long");
+			}
+
+			if(c != '\r') {
+				line.append((char) c);
+			}
+		}
+
+		return false;
+	}
+
+	private void parseResponseHeaders(ByteBuffer input) throws IOException {
+		if(!readLine(input)) {
+			return;
+		}
+
+		if(firstLine) {
+			// e.g. "HTTP/1.0 200 OK"
+			int codeStart = line.indexOf(" ") + 1;
+			if(codeStart == 0 || !line.toString().startsWith("200", codeStart)) {
+				throw new IOException("Unexpected response: " + line);
+			}
+			firstLine = false;
+		} else if(line.length() == 0) {
+			state = State.PART_START;
+		}
+
+		line.setLength(0);
+	}
+
+	private void parsePartStart(ByteBuffer input) {
+		int c = input.get(input.position());
+
+		if(c == '\r' || c == '\n') {
+			input.get();
+		} else if(c == '-') {
+			state = State.PART_HEADERS;
+			firstLine = true;
+			contentLength = -1;
+		} else {
+			state = State.SCAN_START;
+			matchCount = 0;
+		}
+	}
+
+	private void parsePartHeaders(ByteBuffer input) {
+		try {
+			if(!readLine(input)) {
+				return;
+			}
+		} catch (IOException e) {
+			// Not a header after all
+			line.setLength(0);
+			state = State.SCAN_START;
+			matchCount = 0;
+			return;
+		}
+
+		if(firstLine) {
+			// The boundary line
+			firstLine = false;
+		} else if(line.length() == 0) {
+			if(contentLength > 0 && contentLength <= maxFrameLength) {
+				beginFrame(contentLength);
+				state = State.LENGTH_BODY;
+			} else {
+				state = State.SCAN_START;
+				matchCount = 0;
+			}
+		} else if(line.toString().regionMatches(true, 0, MjpegInputStream.CONTENT_LENGTH_HEADER, 0,
+				MjpegInputStream.CONTENT_LENGTH_HEADER.length())) {
+			try {
+				contentLength = Integer.parseInt(line.substring(MjpegInputStream.CONTENT_LENGTH_HEADER.length()).trim());
+			} catch (NumberFormatException e) {
+				contentLength = -1;
+			}
+		}
+
+		line.setLength(0);
+	}
+
+	private void parseLengthBody(ByteBuffer input) {
+		int count = Math.min(input.remaining(), contentLength - frameLength);
+		input.get(frameData, frameLength, count);
+		frameLength += count;
+
+		if(frameLength == contentLength) {
+			emitFrame();
+		}
+	}
+
+	private void parseScanStart(ByteBuffer input) {
+		final int[] soi = MjpegInputStream.SOI;
+
+		while(input.hasRemaining() && matchCount < soi.length) {
+			if(matchCount == 0) {
+				int candidate = MarkerScanner.indexOf(input, input.position(), input.limit(), soi[0]);
+				if(candidate < 0) {
+					input.position(input.limit());
+					break;
+				}
+				input.position(candidate);
+			}
+
+			final int c = input.get() & 0xFF;
+			if(soi[matchCount] == c) {
+				++matchCount;
+			} else {
+				// A fill byte may come before the marker, as in FF FF D8
+				matchCount = soi[0] == c ? 1 : 0;
+			}
+		}
+
+		if(matchCount == soi.length) {
+			beginFrame(Math.min(MjpegInputStream.DEFAULT_FRAME_LENGTH, maxFrameLength));
+			for(int b : soi) {
+				frameData[frameLength++] = (byte) b;
+			}
+
+			matchCount = 0;
+			state = State.SCAN_BODY;
+		}
+	}
+
+	private void parseScanBody(ByteBuffer input) throws IOException {
+		final int[] eoi = MjpegInputStream.EOF;
+
+		final int start = input.position();
+		final int limit = input.limit();
+
+		int pos = start;
+		while(pos < limit) {
+			if(matchCount == 0) {
+				int candidate = MarkerScanner.indexOf(input, pos, limit, eoi[0]);
+				if(candidate < 0) {
+					pos = limit;
+					break;
+				}
+				pos = candidate;
+			}
+
+			final int c = input.get(pos++) & 0xFF;
+			if(eoi[matchCount] == c) {
+				if(++matchCount == eoi.length) {
+					break;
+				}
+			} else {
+				matchCount = eoi[0] == c ? 1 : 0;
+			}
+		}
+
+		int count = pos - start;
+		ensureFrameCapacity(frameLength + count);
+		input.get(frameData, frameLength, count);
+		frameLength += count;
+
+		if(matchCount == eoi.length) {
+			emitFrame();
+		}
+	}
+
+	private void beginFrame(int length) {
+		release();
+		frameData = pool.acquire(length);
+		frameLength = 0;
+	}
+
+	private void ensureFrameCapacity(int length) throws IOException {
+		// A pooled buffer may be longer than the limit
+		if(length > maxFrameLength) {
+			throw new IOException("Frame is longer than " + maxFrameLength + " bytes");
+		}
+
+		if(length <= frameData.length) {
+			return;
+		}
+
+		byte[] larger = pool.acquire(Math.min(Math.max(length, frameData.length << 1), maxFrameLength));
+		System.arraycopy(frameData, 0, larger, 0, frameLength);
+		pool.release(frameData);
+		frameData = larger;
+	}
+
+	private void emitFrame() {
+		MjpegFrame frame = new MjpegFrame(pool, frameData, 0, frameLength);
+		frameData = null;
+		frameLength = 0;
+		state = State.PART_START;
+
+		consumer.onFrame(frame);
+	}
+}
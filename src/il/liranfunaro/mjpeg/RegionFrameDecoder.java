@@ -0,0 +1,21 @@
+package il.liranfunaro.mjpeg;
+
+import java.io.IOException;
+
+/**
+ * Implemented by a {@link JpegFrameDecoder} that can decode a region of a
+ * frame, so only the visible part of a zoomed in frame is decoded
+ *
+ * @param <T> the type of a decoded image
+ */
+public interface RegionFrameDecoder<T> {
+	/**
+	 * Decode a region of a frame that passed validation
+	 *
+	 * @param header the frame's header
+	 * @param sampleSize the power of two to sub-sample the region by
+	 * @param region the region to decode, in the frame's pixels
+	 * @return the decoded region, or null if it couldn't be decoded
+	 */
+	public T decodeRegion(MjpegFrame frame, JpegHeader header, int sampleSize, FrameRegion region) throws IOException;
+}
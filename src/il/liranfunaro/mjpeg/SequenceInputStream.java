@@ -4,24 +4,45 @@ import java.io.IOException;
 import java.io.InputStream;
 
 public class SequenceInputStream extends InputStream {
+	public final static int DEFAULT_BUFFER_SIZE = 1 << 13;
+
 	protected final InputStream in;
 	
 	protected final int[] startSequance;
 	protected final int[] stopSequance;
+
+	// Bytes that were read from the underlying stream but not consumed yet
+	protected final byte[] buffer;
+	protected int bufferPos = 0;
+	protected int bufferCount = 0;
+
+	protected final MarkerScanner scanner = new MarkerScanner();
     
 	private boolean foundStart;
 	
 	private int startSequanceReturned;
 	private int stopSequanceMatchCount;
 	
+	// Bytes left in the current frame when its length is known in advance, -1 otherwise
+	private int frameRemaining;
+
 	private boolean endTransmittion = false;;
 	
 	public SequenceInputStream(InputStream in, int[] startSequance, int[] stopSequance) throws IllegalArgumentException {
+		this(in, startSequance, stopSequance, DEFAULT_BUFFER_SIZE);
+	}
+
+	public SequenceInputStream(InputStream in, int[] startSequance, int[] stopSequance, int bufferSize) throws IllegalArgumentException {
 		validateInput(in, startSequance, stopSequance);
+
+		if(bufferSize <= 0) {
+			throw new IllegalArgumentException("Buffer size must be positive");
+		}
 		
 		this.in = in;
 		this.startSequance = startSequance;
 		this.stopSequance = stopSequance;
+		this.buffer = new byte[bufferSize];
 		
 		restart();
 	}
@@ -32,13 +53,14 @@ public class SequenceInputStream extends InputStream {
 	
 	@Override
 	public int available() throws IOException {
-		return in.available();
+		return (bufferCount - bufferPos) + in.available();
 	}
 	
 	public void restart() {
 		this.foundStart = false;
 		this.startSequanceReturned = 0;
 		this.stopSequanceMatchCount = 0;
+		this.frameRemaining = -1;
 	}
 	
 	private void validateInput(InputStream in, int[] startSequance, int[] stopSequance) throws IllegalArgumentException {
@@ -51,65 +73,385 @@ public class SequenceInputStream extends InputStream {
 		}
 	}
 	
+	/**
+	 * Read more bytes from the underlying stream into the internal buffer,
+	 * moving the unconsumed bytes to its beginning.
+	 *
+	 * @return false if the underlying stream has ended or the buffer is full
+	 */
+	private boolean fillBuffer() throws IOException {
+		if(endTransmittion) {
+			return false;
+		}
+
+		if(bufferPos == bufferCount) {
+			bufferPos = bufferCount = 0;
+		} else if(bufferPos > 0) {
+			System.arraycopy(buffer, bufferPos, buffer, 0, bufferCount - bufferPos);
+			bufferCount -= bufferPos;
+			bufferPos = 0;
+		}
+
+		if(bufferCount == buffer.length) {
+			return false;
+		}
+
+		int count;
+		do {
+			count = in.read(buffer, bufferCount, buffer.length - bufferCount);
+		} while(count == 0);
+
+		if(count < 0) {
+			return false;
+		}
+
+		bufferCount += count;
+		return true;
+	}
+
+	/**
+	 * Peek at a byte ahead of the current position without consuming it.
+	 *
+	 * @param offset the distance from the current position, must be smaller than the buffer size
+	 * @return the byte value, or -1 if the stream ends before it
+	 */
+	protected int peekByte(int offset) throws IOException {
+		while(bufferCount - bufferPos <= offset) {
+			if(!fillBuffer()) {
+				return -1;
+			}
+		}
+
+		return buffer[bufferPos + offset] & 0xFF;
+	}
+
+	/**
+	 * Consume a single byte outside of any frame.
+	 *
+	 * @return the byte value, or -1 if the stream has ended
+	 */
+	protected int readRawByte() throws IOException {
+		if(bufferPos == bufferCount && !fillBuffer()) {
+			return -1;
+		}
+
+		return buffer[bufferPos++] & 0xFF;
+	}
+
+	/**
+	 * Look for the beginning of the next frame.
+	 * Subclasses may consume any framing headers here and call
+	 * {@link #setFrameLength(int)} when the frame size is known in advance.
+	 *
+	 * @return false if the stream has ended before a frame was found
+	 */
+	protected boolean findFrameStart() throws IOException {
+		return lookForStartSequance();
+	}
+
+	/**
+	 * Declare the exact length of the frame that starts at the current position.
+	 * The frame is then read in bulk without scanning for the stop sequence.
+	 * Must be called only from {@link #findFrameStart()}.
+	 */
+	protected void setFrameLength(int length) {
+		if(length < 0) {
+			throw new IllegalArgumentException("Frame length must not be negative");
+		}
+
+		frameRemaining = length;
+		// The start sequence is part of the frame's data
+		startSequanceReturned = startSequance.length;
+	}
+
+	/**
+	 * @return the number of bytes left in the current frame, or -1 if it is unknown
+	 */
+	public int getFrameRemaining() {
+		return frameRemaining;
+	}
+
 	private boolean lookForStartSequance() throws IOException {
 		int sequancePos = 0;
 		
-		int c = -1;
-		while(sequancePos < startSequance.length && (c = in.read()) != -1) {
-			if(startSequance[sequancePos] == c) {
-				++sequancePos;
-			} else {
-				sequancePos = 0;
+		while(sequancePos < startSequance.length) {
+			if(bufferPos == bufferCount && !fillBuffer()) {
+				return false;
+			}
+
+			while(bufferPos < bufferCount && sequancePos < startSequance.length) {
+				if(sequancePos == 0) {
+					// Skip directly to the next candidate for the sequence
+					int candidate = scanner.indexOf(buffer, bufferPos, bufferCount, startSequance[0]);
+					if(candidate < 0) {
+						bufferPos = bufferCount;
+						break;
+					}
+					bufferPos = candidate;
+				}
+
+				final int c = buffer[bufferPos++] & 0xFF;
+				if(startSequance[sequancePos] == c) {
+					++sequancePos;
+				} else {
+					// The byte may begin the sequence itself, as the second FF of FF FF D8
+					sequancePos = startSequance[0] == c ? 1 : 0;
+				}
 			}
 		}
 		
-		return sequancePos == startSequance.length;
+		return true;
 	}
 	
-	private int readUntilEndSequance() throws IOException {
+	/**
+	 * Consume up to len bytes of the current frame body from the buffer,
+	 * stopping right after the stop sequence.
+	 *
+	 * @param b destination array, or null to discard the bytes
+	 * @return the number of bytes consumed, or -1 at the end of the frame
+	 */
+	private int readUntilEndSequance(byte[] b, int off, int len) throws IOException {
 		if(stopSequanceMatchCount == stopSequance.length) {
 			// Found stop sequence => end of stream
 			restart();
 			return -1;
 		}
 		
-		int c = in.read();
-		
-		if(stopSequance[stopSequanceMatchCount] == c) {
-			++stopSequanceMatchCount;
-		} else {
-			stopSequanceMatchCount = 0;
-		}
-		
-		if(c == -1) {
+		if(bufferPos == bufferCount && !fillBuffer()) {
 			setEndTransmittion();
+			return -1;
 		}
-		
-		return c;
+
+		final int start = bufferPos;
+		// len may be as large as Integer.MAX_VALUE when skipping
+		final int end = start + Math.min(len, bufferCount - start);
+
+		int pos = start;
+		while(pos < end) {
+			if(stopSequanceMatchCount == 0) {
+				// Skip directly to the next candidate for the sequence
+				int candidate = scanner.indexOf(buffer, pos, end, stopSequance[0]);
+				if(candidate < 0) {
+					pos = end;
+					break;
+				}
+				pos = candidate;
+			}
+
+			final int c = buffer[pos++] & 0xFF;
+			if(stopSequance[stopSequanceMatchCount] == c) {
+				if(++stopSequanceMatchCount == stopSequance.length) {
+					break;
+				}
+			} else {
+				stopSequanceMatchCount = stopSequance[0] == c ? 1 : 0;
+			}
+		}
+
+		final int count = pos - start;
+		if(b != null) {
+			System.arraycopy(buffer, start, b, off, count);
+		}
+
+		bufferPos = pos;
+		return count;
 	}
-	
+
 	private void setEndTransmittion() throws IOException {
 		restart();
-		in.close();
-		close();
-		endTransmittion = true;
+		bufferPos = bufferCount = 0;
+
+		if(!endTransmittion) {
+			in.close();
+			close();
+			endTransmittion = true;
+		}
 	}
-	
-	@Override
-	public int read() throws IOException {
+
+	/**
+	 * Consume up to len bytes of a frame with a known length.
+	 * When the buffer is empty the bytes are read directly from the underlying stream.
+	 *
+	 * @param b destination array, or null to discard the bytes
+	 * @return the number of bytes consumed, or -1 at the end of the frame
+	 */
+	private int readFrameLength(byte[] b, int off, int len) throws IOException {
+		if(frameRemaining == 0) {
+			restart();
+			return -1;
+		}
+
+		len = Math.min(len, frameRemaining);
+
+		int count;
+		if(bufferPos < bufferCount) {
+			count = Math.min(len, bufferCount - bufferPos);
+			if(b != null) {
+				System.arraycopy(buffer, bufferPos, b, off, count);
+			}
+			bufferPos += count;
+		} else if(b != null) {
+			do {
+				count = in.read(b, off, len);
+			} while(count == 0);
+		} else {
+			count = fillBuffer() ? Math.min(len, bufferCount - bufferPos) : -1;
+			if(count > 0) {
+				bufferPos += count;
+			}
+		}
+
+		if(count < 0) {
+			setEndTransmittion();
+			return -1;
+		}
+
+		frameRemaining -= count;
+		return count;
+	}
+
+	/**
+	 * Find the beginning of the next frame, unless a frame is already being read.
+	 *
+	 * @return false if the stream has ended
+	 */
+	protected boolean beginFrame() throws IOException {
 		if(!foundStart) {
-			if(!lookForStartSequance()) {
+			if(!findFrameStart()) {
 				setEndTransmittion();
-				return -1;
+				return false;
 			} else {
 				foundStart = true;
 			}
 		}
-		
+
+		return true;
+	}
+
+	/**
+	 * Consume up to len bytes of the current frame (including its start and
+	 * stop sequences).
+	 *
+	 * @param b destination array, or null to discard the bytes
+	 * @return the number of bytes consumed, or -1 at the end of the frame
+	 */
+	private int consume(byte[] b, int off, int len) throws IOException {
+		if(!beginFrame()) {
+			return -1;
+		}
+
+		int count = 0;
+		while(count < len && startSequanceReturned < startSequance.length) {
+			if(b != null) {
+				b[off + count] = (byte) startSequance[startSequanceReturned];
+			}
+			++startSequanceReturned;
+			++count;
+		}
+
+		if(count == len) {
+			return count;
+		}
+
+		int bodyCount = frameRemaining >= 0 ?
+				readFrameLength(b, off + count, len - count) :
+				readUntilEndSequance(b, off + count, len - count);
+		if(bodyCount < 0) {
+			return count > 0 ? count : -1;
+		}
+
+		return count + bodyCount;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(!beginFrame()) {
+			return -1;
+		}
+
 		if(startSequanceReturned < startSequance.length) {
 			return startSequance[startSequanceReturned++];
 		}
+
+		if(frameRemaining >= 0) {
+			if(frameRemaining == 0) {
+				restart();
+				return -1;
+			}
+
+			int c = readRawByte();
+			if(c == -1) {
+				setEndTransmittion();
+			} else {
+				--frameRemaining;
+			}
+			return c;
+		}
+
+		if(stopSequanceMatchCount == stopSequance.length) {
+			restart();
+			return -1;
+		}
+
+		if(bufferPos == bufferCount && !fillBuffer()) {
+			setEndTransmittion();
+			return -1;
+		}
+
+		int c = buffer[bufferPos++] & 0xFF;
+		
+		if(stopSequance[stopSequanceMatchCount] == c) {
+			++stopSequanceMatchCount;
+		} else {
+			stopSequanceMatchCount = stopSequance[0] == c ? 1 : 0;
+		}
+		
+		return c;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(b == null) {
+			throw new NullPointerException();
+		} else if(off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		} else if(len == 0) {
+			return 0;
+		}
+
+		return consume(b, off, len);
+	}
+	
+	/**
+	 * @return true if the whole current frame was consumed, and the next read
+	 * returns -1 for its end
+	 */
+	protected boolean isFrameEnded() {
+		return frameRemaining >= 0 ?
+				frameRemaining == 0 :
+				stopSequanceMatchCount == stopSequance.length;
+	}
+
+	/**
+	 * Skip up to n bytes of the current frame. Like {@link #read(byte[], int, int)}
+	 * it stops at the end of the frame, and the following read returns -1.
+	 */
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = 0;
+
+		while(skipped < n) {
+			int count = consume(null, 0, (int) Math.min(n - skipped, Integer.MAX_VALUE));
+			if(count < 0) {
+				break;
+			}
+			skipped += count;
+
+			if(isFrameEnded()) {
+				break;
+			}
+		}
 		
-		return readUntilEndSequance();
+		return skipped;
 	}
 }
\ No newline at end of file
@@ -1,74 +1,48 @@
 package il.liranfunaro.mjpeg.android;
 
-import il.liranfunaro.animatedbitmap.AnimatedBitmap;
+import il.liranfunaro.mjpeg.FrameBufferPool;
+import il.liranfunaro.mjpeg.FrameDecoder;
+import il.liranfunaro.mjpeg.MjpegFrame;
 import il.liranfunaro.mjpeg.MjpegInputStream;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 
-public class AnimatedJpeg extends MjpegInputStream implements AnimatedBitmap {
-	public final static int DEFAULT_TEMP_STORAGE_SIZE = 1 << 22;
-	
-	protected final RestartableBufferedInputStream bufferd;
-	protected final byte[] tempStorage = new byte[DEFAULT_TEMP_STORAGE_SIZE];
-	
-	public static class RestartableBufferedInputStream extends BufferedInputStream {
+/**
+ * An MJPEG stream that is read by the thread that plays it.
+ * When a recorder is set, the frames are recorded as they are read,
+ * and the caller remains responsible for closing the recorder.
+ */
+public class AnimatedJpeg extends RecordableAnimatedJpeg {
+	protected final MjpegInputStream stream;
+	protected final FrameBufferPool pool;
 
-		public RestartableBufferedInputStream(InputStream in, int size) {
-			super(in, size);
-		}
-		
-		public void restartBuffer() {
-			markpos = -1;
-			count = marklimit = pos = 0;
-		}
+	public AnimatedJpeg(InputStream in) {
+		this(in, FrameBufferPool.getDefault());
 	}
-	
-	protected BitmapFactory.Options options = new BitmapFactory.Options();
 
-	public AnimatedJpeg(InputStream in) {
-		super(in);
-		bufferd = new RestartableBufferedInputStream(this, DEFAULT_TEMP_STORAGE_SIZE);
-		
-		options.inMutable = true;
-		options.inPreferQualityOverSpeed = false;
-		options.inTempStorage = tempStorage;
-		options.inSampleSize = 0;
-		options.inInputShareable = true;
-		options.inScaled = true;
-		options.inPreferredConfig = Bitmap.Config.RGB_565;
+	public AnimatedJpeg(InputStream in, FrameBufferPool pool) {
+		this(in, pool, new BitmapFrameDecoder());
 	}
-	
-//	int c  = 0;
-//	int cf = 0;
-	@Override
-	public Bitmap readNextFrame() throws IOException {
-		bufferd.restartBuffer();
 
-		Bitmap bitmap = null;
-		
-		do {
-			try {
-				bitmap = BitmapFactory.decodeStream(bufferd, null, options);
-			} catch (IllegalArgumentException e) {
-				options.inBitmap = null;
-			}
-			
-//			c++;
-//			if(bitmap == null)  cf++;
-		} while(bitmap == null && !isEndTransittion());
-		
-		if(options.inBitmap == null && bitmap != null && bitmap.isMutable()) {
-			options.inBitmap = bitmap;
-		}
-		
-//		Log.i("BitmapFactoryStatus", "Success Rate: " + cf + "/" + (c + cf));
-		
-		return bitmap;
+	public AnimatedJpeg(InputStream in, FrameBufferPool pool, FrameDecoder<Bitmap> decoder) {
+		super(decoder);
+		this.stream = new MjpegInputStream(in);
+		this.pool = pool;
 	}
 
+	public MjpegInputStream getStream() {
+		return stream;
+	}
+
+	@Override
+	public MjpegFrame readEncodedFrame() throws IOException {
+		MjpegFrame frame = stream.readFrame(pool);
+		if(frame != null) {
+			record(frame);
+		}
+		return frame;
+	}
 }
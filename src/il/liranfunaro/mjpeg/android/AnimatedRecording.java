@@ -0,0 +1,220 @@
+package il.liranfunaro.mjpeg.android;
+
+import il.liranfunaro.animatedbitmap.AnimatedBitmapTask;
+import il.liranfunaro.animatedbitmap.AnimationStreamProducer;
+import il.liranfunaro.mjpeg.FrameBufferPool;
+import il.liranfunaro.mjpeg.FrameDecoder;
+import il.liranfunaro.mjpeg.MjpegFrame;
+import il.liranfunaro.mjpeg.MjpegRecording;
+
+import java.io.IOException;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+/**
+ * Plays a recording at its original pace, or faster or slower.
+ * The frames are read from the memory-mapped recording, so seeking to any
+ * point is immediate. When the reader falls behind the playback clock it
+ * skips ahead to the frame that should be shown now instead of reading
+ * the frames in between.
+ *
+ * The playback can be controlled from any thread while it is running.
+ */
+public class AnimatedRecording extends JpegAnimatedBitmap implements AnimationStreamProducer {
+	static final String TAG = "AnimatedRecording";
+
+	// Gaps in the recording (e.g. while it was stopped) are shortened to this playback time
+	public static final long MAX_GAP_MS = 1000;
+
+	public static final float MIN_SPEED = 1f / 16;
+	public static final float MAX_SPEED = 64;
+
+	protected final MjpegRecording recording;
+	protected final FrameBufferPool pool;
+
+	private final Object lock = new Object();
+
+	// The next frame to read, and the playback clock: the recording's time
+	// that matches the anchor's wall-clock time
+	private int position = 0;
+	private long anchorTime = 0;
+	private long anchorRecordingTime = 0;
+	private float speed = 1;
+	private boolean clockStarted = false;
+	private boolean closed = false;
+
+	public AnimatedRecording(MjpegRecording recording) {
+		this(recording, FrameBufferPool.getDefault());
+	}
+
+	public AnimatedRecording(MjpegRecording recording, FrameBufferPool pool) {
+		this(recording, pool, new BitmapFrameDecoder());
+	}
+
+	public AnimatedRecording(MjpegRecording recording, FrameBufferPool pool, FrameDecoder<Bitmap> decoder) {
+		super(decoder);
+		this.recording = recording;
+		this.pool = pool;
+	}
+
+	public MjpegRecording getRecording() {
+		return recording;
+	}
+
+	@Override
+	public void getAnimationStream(AnimatedBitmapTask task) {
+		try {
+			task.startAnimation(this);
+		} catch (IOException e) {
+			Log.e(TAG, e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return the number of the next frame that will be shown
+	 */
+	public int getPosition() {
+		synchronized (lock) {
+			return position;
+		}
+	}
+
+	/**
+	 * @return the recording's time at the playback clock
+	 */
+	public long getCurrentTime() {
+		synchronized (lock) {
+			return clockStarted ? getClockTime(System.currentTimeMillis()) : getFrameTime(position);
+		}
+	}
+
+	public float getSpeed() {
+		synchronized (lock) {
+			return speed;
+		}
+	}
+
+	/**
+	 * @param speed the playback speed, 1 for the original pace
+	 */
+	public void setSpeed(float speed) {
+		synchronized (lock) {
+			reanchor();
+			this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Continue the playback from a frame
+	 */
+	public void seekToFrame(int frame) {
+		synchronized (lock) {
+			position = Math.max(0, Math.min(recording.getFrameCount(), frame));
+			clockStarted = false;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Continue the playback from the last frame that was recorded at or before the given time
+	 */
+	public void seek(long timestamp) {
+		seekToFrame(recording.isEmpty() ? 0 : recording.findFrame(timestamp));
+	}
+
+	/**
+	 * Move the playback forward, or backwards for a negative time
+	 */
+	public void skip(long millis) {
+		synchronized (lock) {
+			seek(getCurrentTime() + millis);
+		}
+	}
+
+	/**
+	 * End the playback. A reader that waits for its next frame returns immediately.
+	 */
+	public void close() {
+		synchronized (lock) {
+			closed = true;
+			lock.notifyAll();
+		}
+		recording.close();
+	}
+
+	private long getFrameTime(int frame) {
+		if(recording.isEmpty()) {
+			return 0;
+		}
+		return recording.getTimestamp(Math.min(frame, recording.getFrameCount() - 1));
+	}
+
+	private long getClockTime(long now) {
+		return anchorRecordingTime + (long) ((now - anchorTime) * speed);
+	}
+
+	/**
+	 * Restart the clock from the current time, e.g. before its speed changes
+	 */
+	private void reanchor() {
+		if(clockStarted) {
+			long now = System.currentTimeMillis();
+			anchorRecordingTime = getClockTime(now);
+			anchorTime = now;
+		}
+	}
+
+	/**
+	 * Wait until the next frame is due and read it.
+	 *
+	 * @return the next frame, or null at the end of the recording
+	 */
+	@Override
+	public MjpegFrame readEncodedFrame() throws IOException {
+		int frame;
+
+		synchronized (lock) {
+			while(true) {
+				if(closed || position >= recording.getFrameCount()) {
+					return null;
+				}
+
+				long now = System.currentTimeMillis();
+				long frameTime = recording.getTimestamp(position);
+
+				if(!clockStarted) {
+					anchorTime = now;
+					anchorRecordingTime = frameTime;
+					clockStarted = true;
+				}
+
+				long clockTime = getClockTime(now);
+
+				if((frameTime - clockTime) / speed > MAX_GAP_MS) {
+					// Jump over the gap
+					anchorTime = now;
+					anchorRecordingTime = frameTime;
+					clockTime = frameTime;
+				}
+
+				if(frameTime <= clockTime) {
+					// Skip the frames that are already late
+					frame = Math.max(position, recording.findFrame(clockTime));
+					position = frame + 1;
+					break;
+				}
+
+				try {
+					lock.wait(Math.max(1, (long) ((frameTime - clockTime) / speed)));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+		}
+
+		return recording.readFrame(frame, pool);
+	}
+}
@@ -0,0 +1,216 @@
+package il.liranfunaro.mjpeg.android;
+
+import il.liranfunaro.mjpeg.FrameRegion;
+import il.liranfunaro.mjpeg.JpegFrameDecoder;
+import il.liranfunaro.mjpeg.JpegFrameValidator;
+import il.liranfunaro.mjpeg.JpegHeader;
+import il.liranfunaro.mjpeg.MjpegFrame;
+import il.liranfunaro.mjpeg.RegionFrameDecoder;
+
+import java.io.IOException;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Decodes compressed frames to bitmaps with {@link BitmapFactory}, into
+ * bitmaps taken from a {@link BitmapPool}. A decoded bitmap isn't decoded into
+ * again until it is returned with {@link #releaseBitmap(Bitmap)}, so the next
+ * frame can be decoded while it is still drawn. Regions of zoomed in frames
+ * are decoded with {@link BitmapRegionDecoder}.
+ * An instance is meant to be used by a single stream.
+ */
+public class BitmapFrameDecoder extends JpegFrameDecoder<Bitmap> implements RegionFrameDecoder<Bitmap> {
+	static final String TAG = "BitmapFrameDecoder";
+
+	// The decoder's working buffer, the frame itself is kept in a pooled buffer
+	public final static int DEFAULT_TEMP_STORAGE_SIZE = 1 << 14;
+
+	// After the first rejected frame, only one of this many rejections is logged
+	public final static int REJECTION_LOG_INTERVAL = 100;
+
+	protected final byte[] tempStorage = new byte[DEFAULT_TEMP_STORAGE_SIZE];
+
+	// The bitmaps frames are decoded into, and returned to when they're no longer drawn
+	protected final BitmapPool bitmapPool;
+
+	protected BitmapFactory.Options options = new BitmapFactory.Options();
+
+	protected BitmapFactory.Options regionOptions = new BitmapFactory.Options();
+	protected final Rect regionRect = new Rect();
+
+	protected volatile Bitmap.Config preferredConfig = Bitmap.Config.RGB_565;
+
+	public BitmapFrameDecoder() {
+		// Not shared between streams, so the bitmaps are dropped with the stream
+		this(new BitmapPool(BitmapPool.DEFAULT_BITMAPS_PER_CLASS));
+	}
+
+	public BitmapFrameDecoder(BitmapPool bitmapPool) {
+		this.bitmapPool = bitmapPool;
+		initOptions(options);
+		initOptions(regionOptions);
+	}
+
+	protected void initOptions(BitmapFactory.Options options) {
+		options.inMutable = true;
+		options.inPreferQualityOverSpeed = false;
+		options.inTempStorage = tempStorage;
+		options.inSampleSize = 1;
+		options.inInputShareable = true;
+		options.inScaled = true;
+		options.inPreferredConfig = preferredConfig;
+	}
+
+	/**
+	 * Decode the following frames into bitmaps of the given configuration
+	 */
+	public void setPreferredConfig(Bitmap.Config config) {
+		this.preferredConfig = config;
+	}
+
+	public Bitmap.Config getPreferredConfig() {
+		return preferredConfig;
+	}
+
+	protected static int getBytesPerPixel(Bitmap.Config config) {
+		if(config == null) {
+			return 4;
+		}
+
+		switch(config) {
+		case ALPHA_8:
+			return 1;
+		case RGB_565:
+		case ARGB_4444:
+			return 2;
+		case ARGB_8888:
+		default:
+			return 4;
+		}
+	}
+
+	/**
+	 * Return a bitmap that was decoded by this decoder once it is no longer
+	 * drawn, so the following frames can be decoded into it
+	 */
+	public void releaseBitmap(Bitmap bitmap) {
+		bitmapPool.release(bitmap);
+	}
+
+	/**
+	 * Take a pooled bitmap of the decoded frame's size to decode into
+	 */
+	protected void prepareDecode(JpegHeader header, int sampleSize) {
+		options.inSampleSize = sampleSize;
+		options.inPreferredConfig = preferredConfig;
+
+		// Before KitKat the reused bitmap must match the frame exactly and can't be sub-sampled
+		if(Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT && sampleSize != 1) {
+			options.inBitmap = null;
+			return;
+		}
+
+		options.inBitmap = bitmapPool.acquire(header.getSampledWidth(sampleSize),
+				header.getSampledHeight(sampleSize), options.inPreferredConfig);
+	}
+
+	/**
+	 * Return the pooled bitmap if the decoder didn't decode into it,
+	 * and don't keep a reference to the decoded one
+	 */
+	protected void finishDecode(BitmapFactory.Options options, Bitmap bitmap) {
+		if(options.inBitmap != null && options.inBitmap != bitmap) {
+			bitmapPool.release(options.inBitmap);
+		}
+		options.inBitmap = null;
+	}
+
+	/**
+	 * Decode a frame, retrying without the pooled bitmap if it doesn't fit the frame
+	 */
+	@Override
+	protected Bitmap decodeValid(MjpegFrame frame, JpegHeader header, int sampleSize) {
+		prepareDecode(header, sampleSize);
+
+		Bitmap bitmap = null;
+
+		while(true) {
+			try {
+				bitmap = BitmapFactory.decodeByteArray(frame.getData(), frame.getOffset(), frame.getLength(), options);
+				break;
+			} catch (IllegalArgumentException e) {
+				if(options.inBitmap == null) {
+					break;
+				}
+				bitmapPool.release(options.inBitmap);
+				options.inBitmap = null;
+			}
+		}
+
+		finishDecode(options, bitmap);
+		return bitmap;
+	}
+
+	/**
+	 * Decode a region of a frame. The region decoder draws into a bitmap
+	 * without resizing it, so the pooled bitmap is of the region's exact size.
+	 */
+	@Override
+	public Bitmap decodeRegion(MjpegFrame frame, JpegHeader header, int sampleSize, FrameRegion region) throws IOException {
+		regionOptions.inSampleSize = sampleSize;
+		regionOptions.inPreferredConfig = preferredConfig;
+
+		final int width = (region.width() + sampleSize - 1) / sampleSize;
+		final int height = (region.height() + sampleSize - 1) / sampleSize;
+
+		regionRect.set(region.left, region.top, region.right, region.bottom);
+
+		// The decoder may refer to the frame's data, it is recycled before the frame is released
+		BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(frame.getData(), frame.getOffset(), frame.getLength(), true);
+		Bitmap bitmap = null;
+
+		// Bitmaps can be reused by the region decoder only since Jelly Bean
+		if(Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+			regionOptions.inBitmap = null;
+		} else {
+			regionOptions.inBitmap = bitmapPool.acquire(width, height, regionOptions.inPreferredConfig);
+		}
+
+		try {
+			while(true) {
+				try {
+					bitmap = decoder.decodeRegion(regionRect, regionOptions);
+					break;
+				} catch (IllegalArgumentException e) {
+					if(regionOptions.inBitmap == null) {
+						break;
+					}
+					bitmapPool.release(regionOptions.inBitmap);
+					regionOptions.inBitmap = null;
+				}
+			}
+		} finally {
+			decoder.recycle();
+			finishDecode(regionOptions, bitmap);
+		}
+
+		return bitmap;
+	}
+
+	/**
+	 * Log the first rejected frame and then one of every {@link #REJECTION_LOG_INTERVAL},
+	 * so a corrupt stream doesn't flood the log
+	 */
+	@Override
+	protected void onRejected(JpegFrameValidator.Result result) {
+		final int rejected = validator.getRejectedCount();
+		if(rejected % REJECTION_LOG_INTERVAL == 1) {
+			Log.w(TAG, "Rejected frame: " + result + " (" + rejected + " rejected so far)");
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package il.liranfunaro.mjpeg.android;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+
+/**
+ * A pool of mutable bitmaps to decode frames into, grouped by power-of-two
+ * size classes of their allocated bytes. From KitKat a pooled bitmap is
+ * reconfigured to any size and configuration that fits its allocation, so
+ * bitmaps are reused when the stream's resolution changes. Such a bitmap is
+ * filed under the largest class it fills, and is allocated at the exact size
+ * it was first acquired for, so a bitmap of the class below the requested
+ * one may fit too and is checked before a larger one is used. Before KitKat a
+ * bitmap is reused only for frames of its exact size and configuration.
+ * A bitmap is handed out until it is released, and isn't handed out again meanwhile.
+ */
+public class BitmapPool {
+	public final static int MIN_SIZE_CLASS_SHIFT = 14;
+	public final static int MAX_SIZE_CLASS_SHIFT = 26;
+
+	// Enough for the bitmap being decoded, the one waiting to be drawn and the one on screen
+	public final static int DEFAULT_BITMAPS_PER_CLASS = 3;
+
+	protected final int bitmapsPerClass;
+	protected final ArrayDeque<Bitmap>[] sizeClasses;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BitmapPool(int bitmapsPerClass) {
+		this.bitmapsPerClass = bitmapsPerClass;
+		this.sizeClasses = new ArrayDeque[MAX_SIZE_CLASS_SHIFT - MIN_SIZE_CLASS_SHIFT + 1];
+
+		for(int i = 0; i < sizeClasses.length; ++i) {
+			sizeClasses[i] = new ArrayDeque<Bitmap>(bitmapsPerClass);
+		}
+	}
+
+	protected static boolean canReconfigure() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+	}
+
+	/**
+	 * @return the index of the smallest size class that can hold the given
+	 * number of bytes, or -1 if it is larger than the largest class
+	 */
+	protected static int getSizeClass(int bytes) {
+		int shift = MIN_SIZE_CLASS_SHIFT;
+		while(shift <= MAX_SIZE_CLASS_SHIFT && (1 << shift) < bytes) {
+			++shift;
+		}
+
+		return shift <= MAX_SIZE_CLASS_SHIFT ? shift - MIN_SIZE_CLASS_SHIFT : -1;
+	}
+
+	/**
+	 * @return the index of the largest size class that a bitmap of the given
+	 * number of bytes can serve, or -1 if it is smaller than the smallest class
+	 */
+	protected static int getFilledSizeClass(int bytes) {
+		int shift = MAX_SIZE_CLASS_SHIFT;
+		while(shift >= MIN_SIZE_CLASS_SHIFT && (1 << shift) > bytes) {
+			--shift;
+		}
+
+		return shift >= MIN_SIZE_CLASS_SHIFT ? shift - MIN_SIZE_CLASS_SHIFT : -1;
+	}
+
+	protected static int getAllocatedBytes(Bitmap bitmap) {
+		return canReconfigure() ? getAllocationByteCount(bitmap) : bitmap.getByteCount();
+	}
+
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	private static int getAllocationByteCount(Bitmap bitmap) {
+		return bitmap.getAllocationByteCount();
+	}
+
+	/**
+	 * @return false if the bitmap's allocation is too small for the new size and configuration
+	 */
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	private static boolean reconfigure(Bitmap bitmap, int width, int height, Bitmap.Config config) {
+		try {
+			bitmap.reconfigure(width, height, config);
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return a mutable bitmap of the given size and configuration, that may
+	 * hold the pixels of a previously released bitmap
+	 */
+	public Bitmap acquire(int width, int height, Bitmap.Config config) {
+		final int bytes = width * height * BitmapFrameDecoder.getBytesPerPixel(config);
+		final int sizeClass = getSizeClass(bytes);
+		if(sizeClass < 0) {
+			return Bitmap.createBitmap(width, height, config);
+		}
+
+		if(canReconfigure()) {
+			// The class below holds bitmaps that may be large enough, and larger
+			// bitmaps are reused too, rather than allocating while they sit in the pool
+			for(int i = Math.max(sizeClass - 1, 0); i < sizeClasses.length; ++i) {
+				Bitmap bitmap = pollFitting(i, bytes);
+				if(bitmap == null) {
+					continue;
+				}
+
+				if(reconfigure(bitmap, width, height, config)) {
+					return bitmap;
+				}
+				// Smaller than it claimed, leave it to the garbage collector
+			}
+
+			return Bitmap.createBitmap(width, height, config);
+		}
+
+		Bitmap bitmap = poll(sizeClass, width, height, config);
+		return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, config);
+	}
+
+	/**
+	 * Take a bitmap of the given size and configuration out of a size class
+	 */
+	private Bitmap poll(int sizeClass, int width, int height, Bitmap.Config config) {
+		final ArrayDeque<Bitmap> bitmaps = sizeClasses[sizeClass];
+
+		synchronized (bitmaps) {
+			Iterator<Bitmap> iterator = bitmaps.iterator();
+			while(iterator.hasNext()) {
+				Bitmap bitmap = iterator.next();
+				if(bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+					iterator.remove();
+					return bitmap;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Take a bitmap that holds at least the given number of bytes out of a size class
+	 */
+	private Bitmap pollFitting(int sizeClass, int bytes) {
+		final ArrayDeque<Bitmap> bitmaps = sizeClasses[sizeClass];
+
+		synchronized (bitmaps) {
+			Iterator<Bitmap> iterator = bitmaps.iterator();
+			while(iterator.hasNext()) {
+				Bitmap bitmap = iterator.next();
+				if(getAllocationByteCount(bitmap) >= bytes) {
+					iterator.remove();
+					return bitmap;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Return a bitmap that is no longer drawn, so its pixels can be decoded into again
+	 */
+	public void release(Bitmap bitmap) {
+		if(bitmap == null || !bitmap.isMutable() || bitmap.isRecycled()) {
+			return;
+		}
+
+		final int sizeClass = canReconfigure() ?
+				getFilledSizeClass(getAllocatedBytes(bitmap)) : getSizeClass(getAllocatedBytes(bitmap));
+		if(sizeClass < 0) {
+			return;
+		}
+
+		synchronized (sizeClasses[sizeClass]) {
+			if(sizeClasses[sizeClass].size() < bitmapsPerClass) {
+				sizeClasses[sizeClass].offerFirst(bitmap);
+			}
+		}
+	}
+
+	/**
+	 * Drop all the pooled bitmaps
+	 */
+	public void clear() {
+		for(ArrayDeque<Bitmap> sizeClass : sizeClasses) {
+			synchronized (sizeClass) {
+				sizeClass.clear();
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package il.liranfunaro.mjpeg.android;
+
+import il.liranfunaro.animatedbitmap.DegradableAnimatedBitmap;
+import il.liranfunaro.animatedbitmap.DegradationLevel;
+import il.liranfunaro.animatedbitmap.PooledAnimatedBitmap;
+import il.liranfunaro.animatedbitmap.RegionAnimatedBitmap;
+import il.liranfunaro.animatedbitmap.StagedAnimatedBitmap;
+import il.liranfunaro.mjpeg.FrameDecoder;
+import il.liranfunaro.mjpeg.FrameRegion;
+import il.liranfunaro.mjpeg.JpegFrameDecoder;
+import il.liranfunaro.mjpeg.MjpegFrame;
+
+import java.io.IOException;
+
+import android.graphics.Bitmap;
+import android.graphics.Point;
+import android.graphics.Rect;
+
+/**
+ * The decoding side of an animation of compressed JPEG frames. Subclasses
+ * only provide the frames, and the decoder is told how the frames are
+ * displayed: their displayed size, their visible part and the decoding
+ * quality the playback can afford.
+ */
+public abstract class JpegAnimatedBitmap implements StagedAnimatedBitmap<MjpegFrame>, RegionAnimatedBitmap, DegradableAnimatedBitmap, PooledAnimatedBitmap {
+	protected final FrameDecoder<Bitmap> decoder;
+
+	public JpegAnimatedBitmap(FrameDecoder<Bitmap> decoder) {
+		this.decoder = decoder;
+	}
+
+	public FrameDecoder<Bitmap> getDecoder() {
+		return decoder;
+	}
+
+	/**
+	 * Decode the frames at no more than the resolution they are displayed at
+	 */
+	@Override
+	public void onDisplaySizeChanged(int width, int height) {
+		if(decoder instanceof JpegFrameDecoder) {
+			((JpegFrameDecoder<Bitmap>) decoder).setDisplaySize(width, height);
+		}
+	}
+
+	/**
+	 * Trade resolution for decoding speed
+	 */
+	@Override
+	public void setDegradationLevel(DegradationLevel level) {
+		if(decoder instanceof JpegFrameDecoder) {
+			((JpegFrameDecoder<Bitmap>) decoder).setSampleSizeFactor(1 << level.getSampleShift());
+		}
+	}
+
+	/**
+	 * Decode only around the visible part of the frames while they are zoomed into
+	 */
+	@Override
+	public void onVisibleRegionChanged(Rect visible) {
+		if(decoder instanceof JpegFrameDecoder) {
+			((JpegFrameDecoder<Bitmap>) decoder).setVisibleRegion(visible.left, visible.top, visible.right, visible.bottom);
+		}
+	}
+
+	@Override
+	public void getDecodedRegion(Rect region, Point frameSize) {
+		if(decoder instanceof JpegFrameDecoder) {
+			JpegFrameDecoder<Bitmap> jpegDecoder = (JpegFrameDecoder<Bitmap>) decoder;
+			FrameRegion decoded = jpegDecoder.getDecodedRegion();
+			region.set(decoded.left, decoded.top, decoded.right, decoded.bottom);
+			frameSize.set(jpegDecoder.getFrameWidth(), jpegDecoder.getFrameHeight());
+		} else {
+			region.setEmpty();
+			frameSize.set(0, 0);
+		}
+	}
+
+	@Override
+	public Bitmap decodeFrame(MjpegFrame frame) throws IOException {
+		return decoder.decode(frame);
+	}
+
+	@Override
+	public void releaseFrame(MjpegFrame frame) {
+		frame.release();
+	}
+
+	@Override
+	public void releaseBitmap(Bitmap bitmap) {
+		if(decoder instanceof BitmapFrameDecoder) {
+			((BitmapFrameDecoder) decoder).releaseBitmap(bitmap);
+		}
+	}
+
+	/**
+	 * Read and decode frames until one of them is decoded
+	 *
+	 * @return the decoded frame, or null if the animation has ended
+	 */
+	@Override
+	public Bitmap readNextFrame() throws IOException {
+		Bitmap bitmap = null;
+
+		do {
+			MjpegFrame frame = readEncodedFrame();
+			if(frame == null) {
+				break;
+			}
+
+			try {
+				bitmap = decodeFrame(frame);
+			} finally {
+				releaseFrame(frame);
+			}
+		} while(bitmap == null);
+
+		return bitmap;
+	}
+}
@@ -0,0 +1,65 @@
+package il.liranfunaro.mjpeg.android;
+
+import il.liranfunaro.mjpeg.AsyncMjpegRecorder;
+import il.liranfunaro.mjpeg.FrameDecoder;
+import il.liranfunaro.mjpeg.MjpegFrame;
+
+import java.io.IOException;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+/**
+ * An animation of a live stream, whose compressed frames can be recorded
+ * as they are received. The frames are queued for the recorder's writer
+ * thread, so a slow disk drops recorded frames instead of stalling the stream.
+ */
+public abstract class RecordableAnimatedJpeg extends JpegAnimatedBitmap {
+	static final String TAG = "RecordableAnimatedJpeg";
+
+	// Records the frames as they are received, null when not recording
+	protected volatile AsyncMjpegRecorder recorder = null;
+
+	public RecordableAnimatedJpeg(FrameDecoder<Bitmap> decoder) {
+		super(decoder);
+	}
+
+	/**
+	 * Record the compressed frames as they are received, before they are decoded
+	 *
+	 * @param recorder the recorder to use, or null to stop recording
+	 */
+	public void setRecorder(AsyncMjpegRecorder recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Failing to record doesn't stop the playback, it only stops and closes the recording
+	 */
+	protected void record(MjpegFrame frame) {
+		final AsyncMjpegRecorder current = recorder;
+		if(current == null) {
+			return;
+		}
+
+		try {
+			current.record(frame);
+		} catch (IOException e) {
+			Log.e(TAG, "Recording stopped", e);
+			recorder = null;
+			current.close();
+		}
+	}
+
+	/**
+	 * Stop recording and close the recorder. It records the frames it
+	 * already queued before it closes, without blocking the caller.
+	 */
+	protected void closeRecorder() {
+		final AsyncMjpegRecorder current = recorder;
+		recorder = null;
+		if(current != null) {
+			current.close();
+		}
+	}
+}
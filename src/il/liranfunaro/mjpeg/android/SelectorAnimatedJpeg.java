@@ -0,0 +1,80 @@
+package il.liranfunaro.mjpeg.android;
+
+import il.liranfunaro.animatedbitmap.FrameSink;
+import il.liranfunaro.animatedbitmap.StagedAnimatedBitmap;
+import il.liranfunaro.mjpeg.FrameConsumer;
+import il.liranfunaro.mjpeg.FrameDecoder;
+import il.liranfunaro.mjpeg.MjpegFrame;
+import il.liranfunaro.mjpeg.MjpegSelectorReader;
+
+import java.io.IOException;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+/**
+ * An MJPEG stream that is read by a {@link MjpegSelectorReader}, which reads
+ * many streams on a single thread. The reader passes the frames to it as they
+ * arrive, and it passes them on to the sink of the view that plays it, so
+ * showing many streams doesn't hold a blocked thread for each.
+ *
+ * The animation has no frames of its own to read, it is played with
+ * {@link il.liranfunaro.animatedbitmap.AnimatedBitmapView#startPushedPlayback(StagedAnimatedBitmap)}.
+ * Its recorder, if one is set, is closed when the stream ends.
+ */
+public class SelectorAnimatedJpeg extends RecordableAnimatedJpeg implements FrameConsumer {
+	static final String TAG = "SelectorAnimatedJpeg";
+
+	// Where the frames are passed, null until the playback starts
+	protected volatile FrameSink<MjpegFrame> sink = null;
+
+	public SelectorAnimatedJpeg() {
+		this(new BitmapFrameDecoder());
+	}
+
+	public SelectorAnimatedJpeg(FrameDecoder<Bitmap> decoder) {
+		super(decoder);
+	}
+
+	/**
+	 * Pass the following frames to the given sink
+	 */
+	public void setSink(FrameSink<MjpegFrame> sink) {
+		this.sink = sink;
+	}
+
+	@Override
+	public void onFrame(MjpegFrame frame) {
+		record(frame);
+
+		final FrameSink<MjpegFrame> currentSink = sink;
+		if(currentSink == null) {
+			frame.release();
+			return;
+		}
+
+		currentSink.offer(frame);
+	}
+
+	@Override
+	public void onStreamEnded(IOException cause) {
+		if(cause != null) {
+			Log.w(TAG, "Stream ended", cause);
+		}
+
+		final FrameSink<MjpegFrame> currentSink = sink;
+		if(currentSink != null) {
+			currentSink.close();
+		}
+
+		closeRecorder();
+	}
+
+	/**
+	 * @return null, the frames are passed by the reader instead
+	 */
+	@Override
+	public MjpegFrame readEncodedFrame() {
+		return null;
+	}
+}
@@ -0,0 +1,356 @@
+package il.liranfunaro.motion;
+
+import il.liranfunaro.animatedbitmap.AnimatedBitmapView;
+import il.liranfunaro.animatedbitmap.SharedDecodeExecutor;
+import il.liranfunaro.mjpeg.FrameBufferPool;
+import il.liranfunaro.mjpeg.MjpegSelectorReader;
+import il.liranfunaro.motion.client.MotionCameraClient;
+import il.liranfunaro.motion.client.MotionHostClient;
+import il.liranfunaro.motion.exceptions.HostNotExistException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.TreeSet;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.widget.LinearLayout;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+/**
+ * Shows the live streams of all the cameras at once, of all hosts or of a single one.
+ * All the streams are read by a single thread, and all the tiles are decoded
+ * by one shared pool of threads, each at the size of its tile. Tiles that are
+ * scrolled out of sight aren't decoded at all.
+ */
+public class CameraGridActivity extends Activity {
+	static final String TAG = "CameraGridActivity";
+
+	public static final String EXTRA_HOST_UUID = GenericCameraActivity.EXTRA_HOST_UUID;
+
+	// The tiles' width to height ratio
+	public static final float TILE_ASPECT_RATIO = 4f / 3f;
+
+	// Frames are decoded up to this many times the tile's size, before the tile reports its size
+	public static final int MAX_TILE_SCALE = 2;
+
+	protected static class Camera {
+		final HostPreferences host;
+		final MotionCameraClient client;
+
+		Camera(HostPreferences host, MotionCameraClient client) {
+			this.host = host;
+			this.client = client;
+		}
+
+		String getTitle() {
+			return host.getName() + " - " + client.getCameraNumber();
+		}
+	}
+
+	// The cameras to show, null while they are fetched
+	protected volatile ArrayList<Camera> cameras = null;
+
+	/**
+	 * The streams of the shown tiles, which are opened on a background thread.
+	 * A stream that opens after the tiles were removed is closed at once.
+	 */
+	protected static class TileStreams {
+		private final ArrayList<MjpegSelectorReader.Stream> streams = new ArrayList<MjpegSelectorReader.Stream>();
+		private boolean closed = false;
+
+		synchronized void add(MjpegSelectorReader.Stream stream) {
+			if(closed) {
+				stream.close();
+			} else {
+				streams.add(stream);
+			}
+		}
+
+		synchronized boolean isClosed() {
+			return closed;
+		}
+
+		synchronized void close() {
+			closed = true;
+			for (MjpegSelectorReader.Stream stream : streams) {
+				stream.close();
+			}
+			streams.clear();
+		}
+	}
+
+	// The views of the shown tiles
+	protected final ArrayList<AnimatedBitmapView> tiles = new ArrayList<AnimatedBitmapView>();
+
+	// The streams of the shown tiles, null when none are shown
+	protected TileStreams tileStreams = null;
+
+	protected boolean resumed = false;
+
+	protected SharedDecodeExecutor decodeExecutor;
+	protected MjpegSelectorReader streamReader;
+
+	protected ScrollView scrollView;
+	protected LinearLayout gridLayout;
+	protected TextView messageTextView;
+
+	protected final Rect visibleRect = new Rect();
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.camera_grid_layout);
+
+		scrollView = (ScrollView) findViewById(R.id.gridScrollView);
+		gridLayout = (LinearLayout) findViewById(R.id.gridLayout);
+		messageTextView = (TextView) findViewById(R.id.gridMessageTextView);
+
+		decodeExecutor = new SharedDecodeExecutor();
+		try {
+			streamReader = new MjpegSelectorReader(FrameBufferPool.getDefault(),
+					GeneralPreferences.getConnectionTimeout(this) * 1000);
+		} catch (IOException e) {
+			Log.e(TAG, "Can't read the streams", e);
+			finish();
+			return;
+		}
+		streamReader.start();
+
+		ViewTreeObserver observer = scrollView.getViewTreeObserver();
+		observer.addOnScrollChangedListener(new ViewTreeObserver.OnScrollChangedListener() {
+			@Override
+			public void onScrollChanged() {
+				updateTilesVisibility();
+			}
+		});
+		observer.addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
+			@Override
+			public void onGlobalLayout() {
+				updateTilesVisibility();
+			}
+		});
+
+		Bundle extras = getIntent().getExtras();
+		final String hostUUID = extras == null ? null : extras.getString(EXTRA_HOST_UUID);
+
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				final ArrayList<Camera> fetched = fetchCameras(hostUUID);
+
+				runOnUiThread(new Runnable() {
+					@Override
+					public void run() {
+						cameras = fetched;
+						if(resumed) {
+							showTiles();
+						}
+					}
+				});
+			}
+		}, "CameraGridFetch").start();
+	}
+
+	/**
+	 * Fetch the available cameras of the host, or of all hosts
+	 *
+	 * @param hostUUID the host, or null for all hosts
+	 */
+	protected ArrayList<Camera> fetchCameras(String hostUUID) {
+		Set<HostPreferences> hosts = new TreeSet<HostPreferences>();
+		Set<String> hostsUUID = HostPreferences.getHostsList(this);
+
+		for (String uuid : hostsUUID) {
+			if(hostUUID != null && !hostUUID.equals(uuid)) {
+				continue;
+			}
+
+			try {
+				hosts.add(new HostPreferences(this, uuid, false));
+			} catch (HostNotExistException e) {
+				Log.e(TAG, "Missing Host", e);
+			}
+		}
+
+		final int connectionTimeout = GeneralPreferences.getConnectionTimeout(this);
+		ArrayList<Camera> result = new ArrayList<Camera>();
+
+		for (HostPreferences host : hosts) {
+			MotionHostClient hostClient = new MotionHostClient(host, connectionTimeout);
+			hostClient.fetchAvailibleCameras();
+
+			ArrayList<String> availibleCameras = hostClient.getAvalibleCameras();
+			if(availibleCameras == null) {
+				continue;
+			}
+
+			for (String camera : availibleCameras) {
+				result.add(new Camera(host, hostClient.getCamera(camera)));
+			}
+		}
+
+		return result;
+	}
+
+	@Override
+	protected void onResume() {
+		super.onResume();
+		resumed = true;
+
+		if(cameras != null) {
+			showTiles();
+		}
+	}
+
+	@Override
+	protected void onPause() {
+		super.onPause();
+		resumed = false;
+
+		removeTiles();
+	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+
+		decodeExecutor.shutdown();
+		if(streamReader != null) {
+			streamReader.shutdown();
+		}
+	}
+
+	/**
+	 * Lay the cameras out in a square grid and start playing them.
+	 * The streams are closed when the tiles are removed, so the tiles are
+	 * created anew on every resume.
+	 */
+	protected void showTiles() {
+		removeTiles();
+
+		final ArrayList<Camera> shown = cameras;
+		if(shown.isEmpty()) {
+			messageTextView.setText(R.string.grid_no_cameras);
+			messageTextView.setVisibility(View.VISIBLE);
+			return;
+		}
+		messageTextView.setVisibility(View.GONE);
+
+		final int columns = (int) Math.ceil(Math.sqrt(shown.size()));
+		final int tileWidth = getResources().getDisplayMetrics().widthPixels / columns;
+		final int tileHeight = (int) (tileWidth / TILE_ASPECT_RATIO);
+
+		final ArrayList<CameraStreamProducer> producers = new ArrayList<CameraStreamProducer>(shown.size());
+
+		LinearLayout row = null;
+		for (int i = 0; i < shown.size(); ++i) {
+			if(i % columns == 0) {
+				row = new LinearLayout(this);
+				row.setOrientation(LinearLayout.HORIZONTAL);
+				gridLayout.addView(row, new LinearLayout.LayoutParams(
+						ViewGroup.LayoutParams.MATCH_PARENT, tileHeight));
+			}
+
+			View tile = getLayoutInflater().inflate(R.layout.camera_tile, row, false);
+			row.addView(tile, new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.MATCH_PARENT, 1f));
+
+			final Camera camera = shown.get(i);
+			tiles.add(setupTile(tile, camera));
+
+			CameraStreamProducer producer = new CameraStreamProducer(this, camera.client, camera.host.getUUID().toString());
+			producer.setMaxFrameSize(tileWidth * MAX_TILE_SCALE, tileHeight * MAX_TILE_SCALE);
+			producers.add(producer);
+		}
+
+		// Fill the last row, so its tiles are as wide as the others
+		for (int i = shown.size(); i % columns != 0; ++i) {
+			row.addView(new View(this), new LinearLayout.LayoutParams(0, ViewGroup.LayoutParams.MATCH_PARENT, 1f));
+		}
+
+		openStreams(producers, new ArrayList<AnimatedBitmapView>(tiles));
+	}
+
+	/**
+	 * Open the streams of the tiles on the shared reader. Opening a stream asks
+	 * the host for the camera's stream port, so they are opened one after the
+	 * other on a background thread.
+	 */
+	protected void openStreams(final ArrayList<CameraStreamProducer> producers, final ArrayList<AnimatedBitmapView> views) {
+		final TileStreams streams = new TileStreams();
+		tileStreams = streams;
+
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < producers.size() && !streams.isClosed(); ++i) {
+					MjpegSelectorReader.Stream stream = producers.get(i).openLiveStream(streamReader, views.get(i));
+					if(stream != null) {
+						streams.add(stream);
+					}
+				}
+			}
+		}, "CameraGridConnect").start();
+	}
+
+	protected AnimatedBitmapView setupTile(View tile, final Camera camera) {
+		AnimatedBitmapView mv = (AnimatedBitmapView) tile.findViewById(R.id.animatedBitmapView);
+		TextView fpsTextView = (TextView) tile.findViewById(R.id.fpsTextView);
+		TextView nameTextView = (TextView) tile.findViewById(R.id.cameraNameTextView);
+
+		nameTextView.setText(camera.getTitle());
+
+		mv.setFpsView(fpsTextView);
+		mv.showFps(true);
+		mv.setBackgroundColor(Color.DKGRAY);
+		mv.setAdaptiveQuality(GeneralPreferences.isAdaptiveQuality(this));
+		mv.setMaxFrameRate(GeneralPreferences.getMaxFrameRate(this));
+		mv.setDecodeExecutor(decodeExecutor);
+
+		mv.setOnClickListener(new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				Intent intent = new Intent(CameraGridActivity.this, LiveCameraActivity.class);
+				GenericCameraActivity.setIntentParameters(intent, camera.host.getUUID(), camera.client.getCameraNumber());
+				startActivity(intent);
+			}
+		});
+
+		return mv;
+	}
+
+	/**
+	 * Stop the tiles without waiting for their streams to close
+	 */
+	protected void removeTiles() {
+		if(tileStreams != null) {
+			tileStreams.close();
+			tileStreams = null;
+		}
+
+		for (AnimatedBitmapView mv : tiles) {
+			mv.stopPlayback(false);
+		}
+
+		tiles.clear();
+		gridLayout.removeAllViews();
+	}
+
+	/**
+	 * Decode only the tiles that are at least partly visible
+	 */
+	protected void updateTilesVisibility() {
+		for (AnimatedBitmapView mv : tiles) {
+			mv.setDecodingPaused(!mv.getLocalVisibleRect(visibleRect));
+		}
+	}
+}
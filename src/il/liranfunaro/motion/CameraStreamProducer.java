@@ -0,0 +1,127 @@
+package il.liranfunaro.motion;
+
+import il.liranfunaro.animatedbitmap.AnimatedBitmapTask;
+import il.liranfunaro.animatedbitmap.AnimatedBitmapView;
+import il.liranfunaro.animatedbitmap.AnimationStreamProducer;
+import il.liranfunaro.mjpeg.AsyncMjpegRecorder;
+import il.liranfunaro.mjpeg.FrameBufferPool;
+import il.liranfunaro.mjpeg.FrameChangeDetector;
+import il.liranfunaro.mjpeg.MjpegRecorder;
+import il.liranfunaro.mjpeg.MjpegSelectorReader;
+import il.liranfunaro.mjpeg.android.AnimatedJpeg;
+import il.liranfunaro.mjpeg.android.BitmapFrameDecoder;
+import il.liranfunaro.mjpeg.android.SelectorAnimatedJpeg;
+import il.liranfunaro.motion.client.MotionCameraClient;
+import il.liranfunaro.motion.client.MotionHostClient.RequestSuccessCallback;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Plays the live stream of a camera, decoded and recorded according to the general preferences
+ */
+public class CameraStreamProducer implements AnimationStreamProducer {
+	private final Context context;
+	private final MotionCameraClient cameraClient;
+	private final String hostUUID;
+	
+	// The largest decoded frame size, 0 for no limit
+	private int maxFrameWidth = 0;
+	private int maxFrameHeight = 0;
+	
+	public CameraStreamProducer(Context context, MotionCameraClient cameraClient, String hostUUID) {
+		this.context = context.getApplicationContext();
+		this.cameraClient = cameraClient;
+		this.hostUUID = hostUUID;
+	}
+	
+	/**
+	 * Limit the size of the decoded frames, for a stream that is shown small
+	 * 
+	 * @param maxWidth the largest width, 0 for no limit
+	 * @param maxHeight the largest height, 0 for no limit
+	 */
+	public void setMaxFrameSize(int maxWidth, int maxHeight) {
+		this.maxFrameWidth = maxWidth;
+		this.maxFrameHeight = maxHeight;
+	}
+	
+	public MotionCameraClient getCameraClient() {
+		return cameraClient;
+	}
+	
+	public String getHostUUID() {
+		return hostUUID;
+	}
+	
+	protected BitmapFrameDecoder createDecoder() {
+		BitmapFrameDecoder decoder = new BitmapFrameDecoder();
+		if(GeneralPreferences.isSkipUnchanged(context)) {
+			decoder.setChangeDetector(new FrameChangeDetector());
+		}
+		decoder.setMaxFrameSize(maxFrameWidth, maxFrameHeight);
+		return decoder;
+	}
+	
+	/**
+	 * @return a started recorder of the live stream, or null if it isn't recorded
+	 */
+	protected AsyncMjpegRecorder createRecorder() {
+		if(!GeneralPreferences.isRecordLive(context)) {
+			return null;
+		}
+		
+		AsyncMjpegRecorder recorder = new AsyncMjpegRecorder(new MjpegRecorder(
+				LiveCameraActivity.getRecordingDirectory(context, hostUUID, cameraClient.getCameraNumber())));
+		recorder.start();
+		return recorder;
+	}
+	
+	/**
+	 * Play the live stream on a reader that reads many streams on a single
+	 * thread, instead of on a playback thread of the view. The view must have
+	 * a shared decode executor. Connects to the host, so it isn't called on the UI thread.
+	 * 
+	 * @return the stream, or null if the camera has no reachable stream
+	 */
+	public MjpegSelectorReader.Stream openLiveStream(MjpegSelectorReader reader, AnimatedBitmapView view) {
+		SelectorAnimatedJpeg animatedJpeg = new SelectorAnimatedJpeg(createDecoder());
+		animatedJpeg.setRecorder(createRecorder());
+		animatedJpeg.setSink(view.startPushedPlayback(animatedJpeg));
+		
+		MjpegSelectorReader.Stream stream = cameraClient.openLiveStream(reader, animatedJpeg);
+		if(stream == null) {
+			animatedJpeg.onStreamEnded(null);
+		}
+		return stream;
+	}
+	
+	@Override
+	public void getAnimationStream(final AnimatedBitmapTask task) {
+		cameraClient.getLiveStream(new RequestSuccessCallback() {
+			
+			@Override
+			public Object onSuccess(InputStream resultStream) throws IOException {
+				AnimatedJpeg animatedJpeg = new AnimatedJpeg(resultStream, FrameBufferPool.getDefault(), createDecoder());
+				
+				AsyncMjpegRecorder recorder = createRecorder();
+				animatedJpeg.setRecorder(recorder);
+				
+				try {
+					task.startAnimation(animatedJpeg);
+				} finally {
+					if(recorder != null) {
+						recorder.close();
+						if(recorder.getDroppedCount() > 0) {
+							Log.w(getClass().getSimpleName(), "The recording dropped " + recorder.getDroppedCount() + " frames");
+						}
+					}
+				}
+				return null;
+			}
+		});
+	}
+}
@@ -0,0 +1,423 @@
+package il.liranfunaro.motion;
+
+import il.liranfunaro.mjpeg.FrameBufferPool;
+import il.liranfunaro.mjpeg.MjpegFrame;
+import il.liranfunaro.mjpeg.MjpegInputStream;
+import il.liranfunaro.motion.client.MotionCameraClient;
+import il.liranfunaro.motion.client.MotionHostClient.RequestSuccessCallback;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * Thumbnails of the cameras, taken from the first frame of their live streams.
+ * Thumbnails are kept in a memory cache that is limited in bytes, and on the disk
+ * as small JPEGs, so they can be shown on startup before any host is reachable.
+ * Thumbnails that are older than {@link #DEFAULT_TTL} are refreshed in the background,
+ * and a camera that couldn't be reached isn't tried again for {@link #DEFAULT_RETRY_DELAY}.
+ * Reading the disk and reading the streams are done on separate threads, so a slow
+ * host never delays showing what is already cached.
+ */
+public class CameraThumbnailCache {
+	static final String TAG = "CameraThumbnailCache";
+
+	public static final String THUMBNAILS_DIRECTORY = "thumbnails";
+	public static final String THUMBNAIL_SUFFIX = ".jpg";
+
+	// How long a thumbnail is shown before it is refreshed, in milliseconds
+	public static final long DEFAULT_TTL = 5 * 60 * 1000;
+
+	// How long to wait after a failed refresh before trying again, in milliseconds
+	public static final long DEFAULT_RETRY_DELAY = 60 * 1000;
+
+	// Frames are sub-sampled until they are about this wide
+	public static final int THUMBNAIL_WIDTH = 160;
+	public static final int THUMBNAIL_QUALITY = 80;
+
+	// The memory cache takes this fraction of the application's heap
+	public static final int MEMORY_CACHE_FRACTION = 32;
+
+	public static final int MAX_REFRESH_THREADS = 2;
+
+	public interface Listener {
+		/**
+		 * Called on a background thread when the thumbnail of a camera was loaded or refreshed
+		 */
+		void onThumbnailChanged(String hostUUID, String camera);
+
+		/**
+		 * Called on a background thread when the thumbnails on the disk were listed,
+		 * so the cameras of hosts that weren't reached yet are known
+		 */
+		void onCachedCamerasIndexed();
+	}
+
+	protected static class Thumbnail {
+		final Bitmap bitmap;
+		final long time;
+
+		Thumbnail(Bitmap bitmap, long time) {
+			this.bitmap = bitmap;
+			this.time = time;
+		}
+	}
+
+	private static CameraThumbnailCache instance = null;
+
+	/**
+	 * @return the cache of the application, shared by all of its activities
+	 */
+	public static synchronized CameraThumbnailCache getInstance(Context context) {
+		if(instance == null) {
+			instance = new CameraThumbnailCache(context.getApplicationContext(),
+					(int) (Runtime.getRuntime().maxMemory() / MEMORY_CACHE_FRACTION));
+		}
+		return instance;
+	}
+
+	protected final File directory;
+	protected final LruCache<String, Thumbnail> memoryCache;
+
+	// The cameras that have a thumbnail on the disk, by host. Guarded by itself.
+	protected final HashMap<String, ArrayList<String>> cachedCameras = new HashMap<String, ArrayList<String>>();
+
+	// The thumbnails that are being loaded or refreshed. Guarded by itself.
+	protected final HashSet<String> loading = new HashSet<String>();
+	protected final HashSet<String> refreshing = new HashSet<String>();
+
+	// When the last refresh of a thumbnail failed, until one succeeds. Guarded by itself.
+	protected final HashMap<String, Long> failedRefreshes = new HashMap<String, Long>();
+
+	protected final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+	protected final ExecutorService refreshExecutor = Executors.newFixedThreadPool(MAX_REFRESH_THREADS);
+
+	protected long ttl = DEFAULT_TTL;
+	protected long retryDelay = DEFAULT_RETRY_DELAY;
+
+	public CameraThumbnailCache(Context context, int maxMemoryBytes) {
+		this.directory = new File(context.getCacheDir(), THUMBNAILS_DIRECTORY);
+		this.memoryCache = new LruCache<String, Thumbnail>(maxMemoryBytes) {
+			@Override
+			protected int sizeOf(String key, Thumbnail value) {
+				return value.bitmap.getByteCount();
+			}
+		};
+
+		// Listing the directory may be slow, and the cache is created on the UI thread
+		diskExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				indexDirectory();
+			}
+		});
+	}
+
+	public void setTimeToLive(long ttl) {
+		this.ttl = ttl;
+	}
+
+	public void setRetryDelay(long retryDelay) {
+		this.retryDelay = retryDelay;
+	}
+
+	/**
+	 * Notify the listener once the thumbnails on the disk were listed.
+	 * Returns immediately, and the listener is notified even if they were listed before.
+	 */
+	public void notifyWhenIndexed(final Listener listener) {
+		// The directory is listed by the first task of the disk thread
+		diskExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				listener.onCachedCamerasIndexed();
+			}
+		});
+	}
+
+	protected static String getKey(String hostUUID, String camera) {
+		return hostUUID + "_" + camera;
+	}
+
+	protected File getFile(String hostUUID, String camera) {
+		return new File(directory, getKey(hostUUID, camera) + THUMBNAIL_SUFFIX);
+	}
+
+	/**
+	 * List the thumbnails on the disk, so their cameras are known before their host is reached
+	 */
+	protected void indexDirectory() {
+		String[] names = directory.list();
+		if(names == null) {
+			return;
+		}
+
+		synchronized (cachedCameras) {
+			for (String name : names) {
+				int separator = name.lastIndexOf('_');
+				if(separator < 0 || !name.endsWith(THUMBNAIL_SUFFIX)) {
+					continue;
+				}
+
+				addCachedCamera(name.substring(0, separator),
+						name.substring(separator + 1, name.length() - THUMBNAIL_SUFFIX.length()));
+			}
+		}
+	}
+
+	private void addCachedCamera(String hostUUID, String camera) {
+		ArrayList<String> cameras = cachedCameras.get(hostUUID);
+		if(cameras == null) {
+			cameras = new ArrayList<String>();
+			cachedCameras.put(hostUUID, cameras);
+		}
+
+		if(!cameras.contains(camera)) {
+			cameras.add(camera);
+			Collections.sort(cameras);
+		}
+	}
+
+	/**
+	 * @return the cameras of the host that have a cached thumbnail, or null if there are none
+	 */
+	public ArrayList<String> getCachedCameras(String hostUUID) {
+		synchronized (cachedCameras) {
+			ArrayList<String> cameras = cachedCameras.get(hostUUID);
+			return cameras == null || cameras.isEmpty() ? null : new ArrayList<String>(cameras);
+		}
+	}
+
+	/**
+	 * @return the thumbnail in the memory cache, or null if it wasn't loaded yet
+	 */
+	public Bitmap get(String hostUUID, String camera) {
+		Thumbnail thumbnail = memoryCache.get(getKey(hostUUID, camera));
+		return thumbnail == null ? null : thumbnail.bitmap;
+	}
+
+	/**
+	 * Load the thumbnail from the disk if it isn't in memory, and refresh it from
+	 * the camera if it is missing or expired. Returns immediately, the listener is
+	 * notified for every thumbnail that becomes available.
+	 */
+	public void load(final String hostUUID, final MotionCameraClient camera, final Listener listener) {
+		final String cameraNumber = camera.getCameraNumber();
+		final String key = getKey(hostUUID, cameraNumber);
+
+		Thumbnail thumbnail = memoryCache.get(key);
+		if(thumbnail != null) {
+			if(isExpired(thumbnail.time)) {
+				refresh(hostUUID, camera, listener);
+			}
+			return;
+		}
+
+		synchronized (loading) {
+			if(!loading.add(key)) {
+				return;
+			}
+		}
+
+		diskExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				long time = 0;
+				try {
+					File file = getFile(hostUUID, cameraNumber);
+					Bitmap bitmap = file.exists() ? BitmapFactory.decodeFile(file.getPath()) : null;
+
+					if(bitmap != null) {
+						time = file.lastModified();
+						memoryCache.put(key, new Thumbnail(bitmap, time));
+						listener.onThumbnailChanged(hostUUID, cameraNumber);
+					}
+				} finally {
+					synchronized (loading) {
+						loading.remove(key);
+					}
+				}
+
+				if(isExpired(time)) {
+					refresh(hostUUID, camera, listener);
+				}
+			}
+		});
+	}
+
+	protected boolean isExpired(long time) {
+		return System.currentTimeMillis() - time >= ttl;
+	}
+
+	/**
+	 * Take a new thumbnail from the camera's stream, unless it is already being taken
+	 * or the last attempt failed less than the retry delay ago
+	 */
+	protected void refresh(final String hostUUID, final MotionCameraClient camera, final Listener listener) {
+		final String cameraNumber = camera.getCameraNumber();
+		final String key = getKey(hostUUID, cameraNumber);
+
+		synchronized (failedRefreshes) {
+			Long failed = failedRefreshes.get(key);
+			if(failed != null && System.currentTimeMillis() - failed < retryDelay) {
+				return;
+			}
+		}
+
+		synchronized (refreshing) {
+			if(!refreshing.add(key)) {
+				return;
+			}
+		}
+
+		refreshExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Bitmap bitmap = fetchThumbnail(camera);
+					synchronized (failedRefreshes) {
+						if(bitmap == null) {
+							failedRefreshes.put(key, System.currentTimeMillis());
+						} else {
+							failedRefreshes.remove(key);
+						}
+					}
+
+					if(bitmap == null) {
+						return;
+					}
+
+					memoryCache.put(key, new Thumbnail(bitmap, System.currentTimeMillis()));
+					store(hostUUID, cameraNumber, bitmap);
+					listener.onThumbnailChanged(hostUUID, cameraNumber);
+				} finally {
+					synchronized (refreshing) {
+						refreshing.remove(key);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Read the first frame of the camera's stream and decode it at the thumbnail's size
+	 *
+	 * @return the thumbnail, or null if the stream couldn't be read
+	 */
+	protected Bitmap fetchThumbnail(MotionCameraClient camera) {
+		final Bitmap[] result = new Bitmap[1];
+
+		camera.getLiveStream(new RequestSuccessCallback() {
+			@Override
+			public Object onSuccess(InputStream resultStream) throws IOException {
+				MjpegInputStream mjpegStream = new MjpegInputStream(resultStream);
+				MjpegFrame frame = mjpegStream.readFrame(FrameBufferPool.getDefault());
+				if(frame == null) {
+					return null;
+				}
+
+				try {
+					result[0] = decodeThumbnail(frame);
+				} finally {
+					frame.release();
+				}
+				return null;
+			}
+		});
+
+		return result[0];
+	}
+
+	protected static Bitmap decodeThumbnail(MjpegFrame frame) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeByteArray(frame.getData(), frame.getOffset(), frame.getLength(), options);
+		if(options.outWidth <= 0) {
+			return null;
+		}
+
+		int sampleSize = 1;
+		while(options.outWidth / (sampleSize << 1) >= THUMBNAIL_WIDTH) {
+			sampleSize <<= 1;
+		}
+
+		options.inJustDecodeBounds = false;
+		options.inSampleSize = sampleSize;
+		options.inPreferredConfig = Bitmap.Config.RGB_565;
+		return BitmapFactory.decodeByteArray(frame.getData(), frame.getOffset(), frame.getLength(), options);
+	}
+
+	/**
+	 * Write the thumbnail to the disk, through a temporary file so a partly
+	 * written thumbnail is never read
+	 */
+	protected void store(String hostUUID, String camera, Bitmap bitmap) {
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			return;
+		}
+
+		File file = getFile(hostUUID, camera);
+		File temp = new File(directory, file.getName() + ".tmp");
+
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(temp);
+			if(!bitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out)) {
+				return;
+			}
+			out.close();
+			out = null;
+
+			if(temp.renameTo(file)) {
+				synchronized (cachedCameras) {
+					addCachedCamera(hostUUID, camera);
+				}
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "Failed to store a thumbnail", e);
+		} finally {
+			if(out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {}
+			}
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Remove the thumbnails of a host that was removed
+	 */
+	public void removeHost(String hostUUID) {
+		ArrayList<String> cameras;
+		synchronized (cachedCameras) {
+			cameras = cachedCameras.remove(hostUUID);
+		}
+
+		if(cameras == null) {
+			return;
+		}
+
+		for (String camera : cameras) {
+			String key = getKey(hostUUID, camera);
+			memoryCache.remove(key);
+			synchronized (failedRefreshes) {
+				failedRefreshes.remove(key);
+			}
+			getFile(hostUUID, camera).delete();
+		}
+	}
+}
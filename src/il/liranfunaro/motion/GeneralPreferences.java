@@ -12,6 +12,7 @@ import android.preference.Preference;
 import android.preference.PreferenceFragment;
 import android.preference.PreferenceManager;
 import android.util.Log;
+import android.view.WindowManager;
 
 public class GeneralPreferences extends PreferenceFragment implements OnSharedPreferenceChangeListener {
 	
@@ -19,6 +20,42 @@ public class GeneralPreferences extends PreferenceFragment implements OnSharedPr
 	public static final int PREF_DEFAULT_CONNECTION_TIMEOUT = 30;
 	public static final String PREF_DEFAULT_CONNECTION_TIMEOUT_STR = Integer.toString(PREF_DEFAULT_CONNECTION_TIMEOUT);
 	
+	public static final String PREF_PLAYBACK_DELAY = "playback_delay";
+	public static final int PREF_DEFAULT_PLAYBACK_DELAY = 0;
+	public static final String PREF_DEFAULT_PLAYBACK_DELAY_STR = Integer.toString(PREF_DEFAULT_PLAYBACK_DELAY);
+	
+	public static final String PREF_MAX_FRAME_RATE = "max_frame_rate";
+	public static final int PREF_DEFAULT_MAX_FRAME_RATE = 0;
+	public static final String PREF_DEFAULT_MAX_FRAME_RATE_STR = Integer.toString(PREF_DEFAULT_MAX_FRAME_RATE);
+	
+	public static final String PREF_STANDBY_TIMEOUT = "standby_timeout";
+	public static final int PREF_DEFAULT_STANDBY_TIMEOUT = 60;
+	public static final String PREF_DEFAULT_STANDBY_TIMEOUT_STR = Integer.toString(PREF_DEFAULT_STANDBY_TIMEOUT);
+	
+	public static final String PREF_SKIP_UNCHANGED = "skip_unchanged";
+	public static final boolean PREF_DEFAULT_SKIP_UNCHANGED = false;
+	
+	public static final String PREF_ADAPTIVE_QUALITY = "adaptive_quality";
+	public static final boolean PREF_DEFAULT_ADAPTIVE_QUALITY = false;
+	
+	public static final String PREF_RECORD_LIVE = "record_live";
+	public static final boolean PREF_DEFAULT_RECORD_LIVE = false;
+	
+	public static boolean isSkipUnchanged(Context context) {
+		SharedPreferences defualtPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+		return defualtPrefs.getBoolean(PREF_SKIP_UNCHANGED, PREF_DEFAULT_SKIP_UNCHANGED);
+	}
+	
+	public static boolean isAdaptiveQuality(Context context) {
+		SharedPreferences defualtPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+		return defualtPrefs.getBoolean(PREF_ADAPTIVE_QUALITY, PREF_DEFAULT_ADAPTIVE_QUALITY);
+	}
+	
+	public static boolean isRecordLive(Context context) {
+		SharedPreferences defualtPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+		return defualtPrefs.getBoolean(PREF_RECORD_LIVE, PREF_DEFAULT_RECORD_LIVE);
+	}
+	
 	public static int getConnectionTimeout(Context context) {
 		SharedPreferences defualtPrefs = PreferenceManager.getDefaultSharedPreferences(context);
 		String timeoutStr = defualtPrefs.getString(GeneralPreferences.PREF_CONNECTION_TIMEOUT, PREF_DEFAULT_CONNECTION_TIMEOUT_STR);
@@ -30,6 +67,57 @@ public class GeneralPreferences extends PreferenceFragment implements OnSharedPr
 		}
 	}
 	
+	/**
+	 * @return the live video's target delay in milliseconds, 0 for the lowest latency
+	 */
+	public static int getPlaybackDelay(Context context) {
+		SharedPreferences defualtPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+		String delayStr = defualtPrefs.getString(GeneralPreferences.PREF_PLAYBACK_DELAY, PREF_DEFAULT_PLAYBACK_DELAY_STR);
+		try {
+			return Math.max(0, Integer.parseInt(delayStr));
+		} catch (Exception e) {
+			Log.e("IntegerError",e.getMessage(), e);
+			return PREF_DEFAULT_PLAYBACK_DELAY;
+		}
+	}
+	
+	/**
+	 * @return how long the live video stays connected while it isn't shown, in seconds, 0 to disconnect at once
+	 */
+	public static int getStandbyTimeout(Context context) {
+		SharedPreferences defualtPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+		String timeoutStr = defualtPrefs.getString(GeneralPreferences.PREF_STANDBY_TIMEOUT, PREF_DEFAULT_STANDBY_TIMEOUT_STR);
+		try {
+			return Math.max(0, Integer.parseInt(timeoutStr));
+		} catch (Exception e) {
+			Log.e("IntegerError",e.getMessage(), e);
+			return PREF_DEFAULT_STANDBY_TIMEOUT;
+		}
+	}
+	
+	/**
+	 * @return the highest frame rate to show videos at. Defaults to the
+	 * display's refresh rate, since faster frames can't be seen anyway.
+	 */
+	public static float getMaxFrameRate(Context context) {
+		SharedPreferences defualtPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+		String rateStr = defualtPrefs.getString(GeneralPreferences.PREF_MAX_FRAME_RATE, PREF_DEFAULT_MAX_FRAME_RATE_STR);
+		float rate;
+		try {
+			rate = Float.parseFloat(rateStr);
+		} catch (Exception e) {
+			Log.e("FloatError",e.getMessage(), e);
+			rate = PREF_DEFAULT_MAX_FRAME_RATE;
+		}
+		
+		if(rate <= 0) {
+			WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+			rate = windowManager.getDefaultDisplay().getRefreshRate();
+		}
+		
+		return rate;
+	}
+	
 	@Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -23,6 +23,8 @@ public class GenericCameraActivity extends Activity {
 	}
 	
 	protected MotionCameraClient cameraClient = null;
+	protected String hostUUID = null;
+	protected String camera = null;
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
@@ -34,8 +36,8 @@ public class GenericCameraActivity extends Activity {
 			finish();
 		}
 		
-		String hostUUID = extras.getString(EXTRA_HOST_UUID);
-		String camera = extras.getString(EXTRA_CAMERA_NUMBER);
+		hostUUID = extras.getString(EXTRA_HOST_UUID);
+		camera = extras.getString(EXTRA_CAMERA_NUMBER);
 		
 		if(hostUUID == null || camera == null) {
 			finish();
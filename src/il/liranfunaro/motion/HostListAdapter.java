@@ -5,6 +5,7 @@ import il.liranfunaro.motion.client.MotionHostClient;
 import il.liranfunaro.motion.exceptions.HostNotExistException;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -12,20 +13,27 @@ import android.app.Activity;
 import android.appwidget.AppWidgetManager;
 import android.content.Context;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.view.View.OnLongClickListener;
 import android.view.ViewGroup;
 import android.widget.BaseExpandableListAdapter;
 import android.widget.ImageButton;
+import android.widget.ImageView;
 import android.widget.TextView;
 
-public class HostListAdapter extends BaseExpandableListAdapter {
+public class HostListAdapter extends BaseExpandableListAdapter implements CameraThumbnailCache.Listener {
 	private final Context context;
 	private final Activity itsActivity;
 	private final int myAppWidgetId;
 	private final boolean isForWidget;
+	private final CameraThumbnailCache thumbnails;
+	
+	// The thumbnail views that are shown, by the key of their camera. Touched only on the UI thread.
+	private final HashMap<String, ImageView> thumbnailViews = new HashMap<String, ImageView>();
 	
 	protected HostPreferences[] hosts;
 	protected MotionHostClient[] hostsClient;
@@ -35,8 +43,10 @@ public class HostListAdapter extends BaseExpandableListAdapter {
 		this.context = itsActivity.getApplicationContext();
 		this.myAppWidgetId = myAppWidgetId;
 		this.isForWidget = myAppWidgetId != AppWidgetManager.INVALID_APPWIDGET_ID;
+		this.thumbnails = CameraThumbnailCache.getInstance(context);
 		
 		updateHosts(false);
+		thumbnails.notifyWhenIndexed(this);
 	}
 	
 	public void updateHosts() {
@@ -65,6 +75,45 @@ public class HostListAdapter extends BaseExpandableListAdapter {
 		}
 	}
 
+	/**
+	 * @return the cameras of the host, or the ones it had the last time it was reached
+	 * if they weren't fetched yet, or null if neither is known
+	 */
+	protected ArrayList<String> getCameras(int groupPosition) {
+		ArrayList<String> availibleCamera = hostsClient[groupPosition].getAvalibleCameras();
+		if(availibleCamera != null) {
+			return availibleCamera;
+		}
+		
+		return thumbnails.getCachedCameras(hosts[groupPosition].getUUID().toString());
+	}
+	
+	/**
+	 * Show the new thumbnail in its view, if it is shown, without rebinding the whole list
+	 */
+	@Override
+	public void onThumbnailChanged(final String hostUUID, final String camera) {
+		itsActivity.runOnUiThread(new Runnable(){
+		    public void run(){
+		        ImageView thumbnailView = thumbnailViews.get(CameraThumbnailCache.getKey(hostUUID, camera));
+		        Bitmap thumbnail = thumbnails.get(hostUUID, camera);
+		        if(thumbnailView != null && thumbnail != null) {
+		        	thumbnailView.setImageBitmap(thumbnail);
+		        	thumbnailView.setVisibility(View.VISIBLE);
+		        }
+		    }
+		});
+	}
+	
+	@Override
+	public void onCachedCamerasIndexed() {
+		itsActivity.runOnUiThread(new Runnable(){
+		    public void run(){
+		        notifyDataSetChanged();
+		    }
+		});
+	}
+	
 	@Override
 	public Object getChild(int groupPosition, int childPosition) {
 		if(hostsClient[groupPosition] == null) {
@@ -88,9 +137,10 @@ public class HostListAdapter extends BaseExpandableListAdapter {
 	public View getChildView(final int groupPosition, final int childPosition,
 			boolean isLastChild, View convertView, ViewGroup parent) {
 		HostStatus hostStatus = hostsClient[groupPosition].getHostStatus();
-		ArrayList<String> availibleCamera = hostsClient[groupPosition].getAvalibleCameras();
+		ArrayList<String> availibleCamera = getCameras(groupPosition);
 		
-		String cameraNumber = availibleCamera == null ? null : availibleCamera.get(childPosition); 
+		String cameraNumber = availibleCamera == null || childPosition >= availibleCamera.size() ?
+				null : availibleCamera.get(childPosition); 
 		
 		ChildState state;
 		String message = null;
@@ -127,9 +177,13 @@ public class HostListAdapter extends BaseExpandableListAdapter {
 		}
 		
 		TextView textView = (TextView) convertView.findViewById(R.id.cameraNumber);
+		ImageView thumbnailView = (ImageView) convertView.findViewById(R.id.cameraThumbnail);
 		ImageButton refreshBtn = (ImageButton) convertView.findViewById(R.id.refreshCamera);
 		ImageButton settingsBtn = (ImageButton) convertView.findViewById(R.id.cameraConfiguration);
 		
+		thumbnailView.setVisibility(View.GONE);
+		unbindThumbnail(thumbnailView);
+		
 		switch (state) {
 		case ERROR:
 			textView.setText(message);
@@ -142,6 +196,7 @@ public class HostListAdapter extends BaseExpandableListAdapter {
 			settingsBtn.setOnClickListener(null);
 			
 			convertView.setOnClickListener(null);
+			convertView.setOnLongClickListener(null);
 			break;
 		case LOADING:
 			textView.setText("Loading...");
@@ -152,9 +207,11 @@ public class HostListAdapter extends BaseExpandableListAdapter {
 			settingsBtn.setOnClickListener(null);
 			
 			convertView.setOnClickListener(null);
+			convertView.setOnLongClickListener(null);
 			break;
 		case READY:
 			textView.setText("Camera " + cameraNumber);
+			showThumbnail(thumbnailView, groupPosition, cameraNumber);
 			refreshBtn.setVisibility(View.VISIBLE);
 			settingsBtn.setVisibility(View.VISIBLE);
 			
@@ -165,11 +222,43 @@ public class HostListAdapter extends BaseExpandableListAdapter {
 			convertView.setOnClickListener(isForWidget ?
 					new OnWidgetSelectCameraListner(groupPosition, cameraNumber) : 
 					new OnMainSelectCameraListner(groupPosition, cameraNumber));
+			convertView.setOnLongClickListener(isForWidget ? null :
+					new OnMainRecordingsListner(groupPosition, cameraNumber));
 		}
 		
 		return convertView;
 	}
 
+	/**
+	 * Show the cached thumbnail of the camera, and load or refresh it in the background
+	 */
+	protected void showThumbnail(ImageView thumbnailView, int groupPosition, String cameraNumber) {
+		String hostUUID = hosts[groupPosition].getUUID().toString();
+		
+		String key = CameraThumbnailCache.getKey(hostUUID, cameraNumber);
+		thumbnailView.setTag(key);
+		thumbnailViews.put(key, thumbnailView);
+		
+		Bitmap thumbnail = thumbnails.get(hostUUID, cameraNumber);
+		if(thumbnail != null) {
+			thumbnailView.setImageBitmap(thumbnail);
+			thumbnailView.setVisibility(View.VISIBLE);
+		}
+		
+		thumbnails.load(hostUUID, hostsClient[groupPosition].getCamera(cameraNumber), this);
+	}
+	
+	/**
+	 * Forget the camera a recycled thumbnail view showed
+	 */
+	protected void unbindThumbnail(ImageView thumbnailView) {
+		Object key = thumbnailView.getTag();
+		if(key != null && thumbnailViews.get(key) == thumbnailView) {
+			thumbnailViews.remove(key);
+		}
+		thumbnailView.setTag(null);
+	}
+	
 	@Override
 	public int getChildrenCount(int groupPosition) {
 		if(hostsClient[groupPosition] == null) {
@@ -183,6 +272,7 @@ public class HostListAdapter extends BaseExpandableListAdapter {
 		}
 		
 		HostStatus hostStatus = hostsClient[groupPosition].getHostStatus();
+		int count = 1;
 		
 		switch(hostStatus) {
 		case UNAUTHORIZED:
@@ -202,10 +292,16 @@ public class HostListAdapter extends BaseExpandableListAdapter {
 					});
 				}
 			});
+			
+			// Show the cameras that were cached the last time, until the host answers
+			ArrayList<String> cachedCameras = getCameras(groupPosition);
+			if(cachedCameras != null) {
+				count = cachedCameras.size();
+			}
 			break;
 		}
 		
-		return 1;
+		return count;
 	}
 	
 	@Override
@@ -253,7 +349,7 @@ public class HostListAdapter extends BaseExpandableListAdapter {
 
 	@Override
 	public boolean isChildSelectable(int groupPosition, int childPosition) {
-		ArrayList<String> availibleCamera = hostsClient[groupPosition].getAvalibleCameras();
+		ArrayList<String> availibleCamera = getCameras(groupPosition);
 		return availibleCamera != null;
 	}
 	
@@ -329,6 +425,25 @@ public class HostListAdapter extends BaseExpandableListAdapter {
 		}
 	}
 	
+	public class OnMainRecordingsListner implements OnLongClickListener {
+		
+		private final int groupPosition;
+		private final String cameraNumber;
+		
+		public OnMainRecordingsListner(int groupPosition, String cameraNumber) {
+			this.groupPosition = groupPosition;
+			this.cameraNumber = cameraNumber;
+		}
+		
+		@Override
+		public boolean onLongClick(View v) {
+			Intent intent = new Intent(context, RecordingActivity.class);
+			GenericCameraActivity.setIntentParameters(intent, hosts[groupPosition].getUUID(), cameraNumber);
+			itsActivity.startActivity(intent);
+			return true;
+		}
+	}
+	
 	public class OnEditHostListner implements OnClickListener {
 		
 		private final int groupPosition;
@@ -1,21 +1,31 @@
 package il.liranfunaro.motion;
 
-import il.liranfunaro.animatedbitmap.AnimatedBitmapTask;
 import il.liranfunaro.animatedbitmap.AnimatedBitmapView;
-import il.liranfunaro.animatedbitmap.AnimationStreamProducer;
-import il.liranfunaro.mjpeg.android.AnimatedJpeg;
-import il.liranfunaro.motion.client.MotionHostClient.RequestSuccessCallback;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.File;
 
+import android.content.Context;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.view.Window;
 import android.view.WindowManager;
 import android.widget.TextView;
 
-public class LiveCameraActivity extends GenericCameraActivity implements AnimationStreamProducer {
+public class LiveCameraActivity extends GenericCameraActivity {
+	public static final String RECORDINGS_DIRECTORY = "recordings";
+	
+	/**
+	 * @return the directory of the camera's recordings
+	 */
+	public static File getRecordingDirectory(Context context, String hostUUID, String camera) {
+		File root = context.getExternalFilesDir(RECORDINGS_DIRECTORY);
+		if(root == null) {
+			root = new File(context.getFilesDir(), RECORDINGS_DIRECTORY);
+		}
+		
+		return new File(new File(root, hostUUID), camera);
+	}
+	
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 
@@ -27,23 +37,11 @@ public class LiveCameraActivity extends GenericCameraActivity implements Animati
 		mv.setFpsView(fpsTextView);
 		mv.showFps(true);
 		mv.setBackgroundColor(Color.DKGRAY);
-		mv.startPlayback(this);
-	}
-	
-	/*
-	 * (non-Javadoc)
-	 * @see il.liranfunaro.mjpeg.AnimatedBitmapView.AnimationStreamProducer#getAnimationStream(il.liranfunaro.mjpeg.AnimatedBitmapView.AnimationTask)
-	 */
-	@Override
-	public void getAnimationStream(final AnimatedBitmapTask task) {
-		cameraClient.getLiveStream(new RequestSuccessCallback() {
-			
-			@Override
-			public Object onSuccess(InputStream resultStream) throws IOException {
-				task.startAnimation(new AnimatedJpeg(resultStream));
-				return null;
-			}
-		});
+		mv.setPlaybackDelay(GeneralPreferences.getPlaybackDelay(this));
+		mv.setAdaptiveQuality(GeneralPreferences.isAdaptiveQuality(this));
+		mv.setMaxFrameRate(GeneralPreferences.getMaxFrameRate(this));
+		mv.setStandbyTimeout(GeneralPreferences.getStandbyTimeout(this) * 1000L);
+		mv.startPlayback(new CameraStreamProducer(this, cameraClient, hostUUID));
 	}
 	
 	@Override
@@ -53,10 +51,27 @@ public class LiveCameraActivity extends GenericCameraActivity implements Animati
 				WindowManager.LayoutParams.FLAG_FULLSCREEN);
 	}
 
+	public void onResume() {
+		super.onResume();
+		
+		// Decodes the next frame of a stream in standby, or plays again if it was stopped
+		AnimatedBitmapView mv = (AnimatedBitmapView) findViewById(R.id.animatedBitmapView);
+		mv.resumePlayback();
+	}
+
 	public void onPause() {
 		super.onPause();
 		
+		// Stays connected in the background until the standby timeout
+		AnimatedBitmapView mv = (AnimatedBitmapView) findViewById(R.id.animatedBitmapView);
+		mv.pausePlayback();
+	}
+	
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		
 		AnimatedBitmapView mv = (AnimatedBitmapView) findViewById(R.id.animatedBitmapView);
-		mv.stopPlayback(true);
+		mv.stopPlayback(false);
 	}
 }
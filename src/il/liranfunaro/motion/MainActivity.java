@@ -73,6 +73,11 @@ public class MainActivity extends Activity {
 		final HostPreferences host = (HostPreferences)adapter.getGroup((int)info.id);
 		
 		switch (item.getItemId()) {
+		case R.id.show_host_cameras:
+			Intent gridIntent = new Intent(this, CameraGridActivity.class);
+			gridIntent.putExtra(CameraGridActivity.EXTRA_HOST_UUID, host.getUUID().toString());
+			startActivity(gridIntent);
+			return true;
 		case R.id.edit_host:
 			host.edit(this);
 			return true;
@@ -86,6 +91,7 @@ public class MainActivity extends Activity {
 					new DialogInterface.OnClickListener() {
 						public void onClick(DialogInterface dialog,
 								int id) {
+							CameraThumbnailCache.getInstance(MainActivity.this).removeHost(host.getUUID().toString());
 							host.remove();
 							adapter.updateHosts(true);
 						}
@@ -108,6 +114,10 @@ public class MainActivity extends Activity {
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
 	    switch (item.getItemId()) {
+	        case R.id.action_camera_grid:
+	        	Intent gridIntent = new Intent(this, CameraGridActivity.class);
+	        	startActivity(gridIntent);
+	        	return true;
 	        case R.id.action_settings:
 	        	Intent settingIntent = new Intent(this, SettingsActivity.class);
 	        	startActivity(settingIntent);
@@ -0,0 +1,174 @@
+package il.liranfunaro.motion;
+
+import il.liranfunaro.animatedbitmap.AnimatedBitmapView;
+import il.liranfunaro.mjpeg.MjpegRecording;
+import il.liranfunaro.mjpeg.android.AnimatedRecording;
+
+import java.io.IOException;
+
+import android.graphics.Color;
+import android.os.Bundle;
+import android.os.Handler;
+import android.text.format.DateFormat;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.SeekBar;
+import android.widget.SeekBar.OnSeekBarChangeListener;
+import android.widget.TextView;
+import android.widget.Toast;
+
+/**
+ * Plays the camera's recordings, with a seek bar that spans all of them
+ */
+public class RecordingActivity extends GenericCameraActivity implements OnSeekBarChangeListener {
+	// How often the seek bar follows the playback
+	public static final long POSITION_UPDATE_INTERVAL_MS = 500;
+
+	public static final long SKIP_AHEAD_MS = 30000;
+
+	private AnimatedRecording animatedRecording = null;
+	private SeekBar seekBar = null;
+	private TextView timeTextView = null;
+	private boolean tracking = false;
+
+	private final Handler handler = new Handler();
+	private final Runnable positionUpdater = new Runnable() {
+		@Override
+		public void run() {
+			updatePosition();
+			handler.postDelayed(this, POSITION_UPDATE_INTERVAL_MS);
+		}
+	};
+
+	@Override
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		if(isFinishing()) {
+			return;
+		}
+
+		MjpegRecording recording = null;
+		try {
+			recording = new MjpegRecording(LiveCameraActivity.getRecordingDirectory(this, hostUUID, camera));
+		} catch (IOException e) {
+			Log.e(getClass().getSimpleName(), e.getMessage(), e);
+		}
+
+		if(recording == null || recording.isEmpty()) {
+			Toast.makeText(this, R.string.no_recordings, Toast.LENGTH_SHORT).show();
+			finish();
+			return;
+		}
+
+		animatedRecording = new AnimatedRecording(recording);
+
+		setContentView(R.layout.recording_layout);
+
+		AnimatedBitmapView mv = (AnimatedBitmapView) findViewById(R.id.animatedBitmapView);
+		TextView fpsTextView = (TextView) findViewById(R.id.fpsTextView);
+		timeTextView = (TextView) findViewById(R.id.recordingTimeTextView);
+
+		seekBar = (SeekBar) findViewById(R.id.recordingSeekBar);
+		seekBar.setMax((int) (recording.getEndTime() - recording.getStartTime()));
+		seekBar.setOnSeekBarChangeListener(this);
+
+		mv.setFpsView(fpsTextView);
+		mv.showFps(true);
+		mv.setBackgroundColor(Color.DKGRAY);
+		mv.setAdaptiveQuality(GeneralPreferences.isAdaptiveQuality(this));
+		mv.setMaxFrameRate(GeneralPreferences.getMaxFrameRate(this));
+		mv.startPlayback(animatedRecording);
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu) {
+		// Inflate the menu; this adds items to the action bar if it is present.
+		getMenuInflater().inflate(R.menu.recording, menu);
+		return true;
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		switch (item.getItemId()) {
+		case R.id.action_speed_half:
+			animatedRecording.setSpeed(0.5f);
+			return true;
+		case R.id.action_speed_normal:
+			animatedRecording.setSpeed(1);
+			return true;
+		case R.id.action_speed_double:
+			animatedRecording.setSpeed(2);
+			return true;
+		case R.id.action_speed_fast:
+			animatedRecording.setSpeed(8);
+			return true;
+		case R.id.action_skip_ahead:
+			animatedRecording.skip(SKIP_AHEAD_MS);
+			updatePosition();
+			return true;
+		default:
+			return super.onOptionsItemSelected(item);
+		}
+	}
+
+	private void updatePosition() {
+		long time = animatedRecording.getCurrentTime();
+		long start = animatedRecording.getRecording().getStartTime();
+
+		if(!tracking) {
+			seekBar.setProgress((int) (time - start));
+		}
+		timeTextView.setText(DateFormat.format("yyyy-MM-dd kk:mm:ss", time));
+	}
+
+	@Override
+	public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+		if(fromUser) {
+			animatedRecording.seek(animatedRecording.getRecording().getStartTime() + progress);
+		}
+	}
+
+	@Override
+	public void onStartTrackingTouch(SeekBar seekBar) {
+		tracking = true;
+	}
+
+	@Override
+	public void onStopTrackingTouch(SeekBar seekBar) {
+		tracking = false;
+	}
+
+	@Override
+	public void onResume() {
+		super.onResume();
+
+		if(animatedRecording != null) {
+			handler.post(positionUpdater);
+
+			AnimatedBitmapView mv = (AnimatedBitmapView) findViewById(R.id.animatedBitmapView);
+			mv.startPlayback();
+		}
+	}
+
+	@Override
+	public void onPause() {
+		super.onPause();
+
+		handler.removeCallbacks(positionUpdater);
+
+		if(animatedRecording != null) {
+			AnimatedBitmapView mv = (AnimatedBitmapView) findViewById(R.id.animatedBitmapView);
+			mv.stopPlayback(true);
+		}
+	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+
+		if(animatedRecording != null) {
+			animatedRecording.close();
+		}
+	}
+}
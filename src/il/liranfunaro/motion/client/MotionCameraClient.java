@@ -1,9 +1,13 @@
 package il.liranfunaro.motion.client;
 
+import il.liranfunaro.mjpeg.FrameConsumer;
+import il.liranfunaro.mjpeg.MjpegSelectorReader;
 import il.liranfunaro.motion.client.MotionHostClient.RequestSuccessCallback;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Scanner;
 
@@ -82,28 +86,60 @@ public class MotionCameraClient {
 		});
 	}
 	
-	public void getLiveStream(RequestSuccessCallback callback) {
+	/**
+	 * @return the camera's stream port, or null if streaming is disabled
+	 */
+	public String getLiveStreamPort() {
 		HashMap<String, CameraConfiguration> conf = getConfigurations();
 		if(conf == null) {
-			return;
+			return null;
 		}
 		
 		CameraConfiguration streamPortConf = conf.get(CAMERA_CONF_STREAM_PORT);
 		if(streamPortConf == null) {
 			streamPortConf = conf.get(NEW_CAMERA_CONF_STREAM_PORT);
 			if(streamPortConf == null) {
-				return;
+				return null;
 			}
 		}
 		
 		String streamPort = streamPortConf.getValue();
 		if(streamPort == null || streamPort.isEmpty() || streamPort.equals("0")) {
+			return null;
+		}
+		
+		return streamPort;
+	}
+	
+	public void getLiveStream(RequestSuccessCallback callback) {
+		String streamPort = getLiveStreamPort();
+		if(streamPort == null) {
 			return;
 		}
 		
 		hostClient.makeRequest("", streamPort, callback);
 	}
 	
+	/**
+	 * Open the live stream on a shared selector reader instead of a dedicated connection
+	 * 
+	 * @return the opened stream, or null if the camera has no reachable stream
+	 */
+	public MjpegSelectorReader.Stream openLiveStream(MjpegSelectorReader reader, FrameConsumer consumer) {
+		String streamPort = getLiveStreamPort();
+		if(streamPort == null) {
+			return null;
+		}
+		
+		ArrayList<InetSocketAddress> addresses = hostClient.getStreamAddresses(streamPort);
+		if(addresses.isEmpty()) {
+			return null;
+		}
+		
+		return reader.open("/", hostClient.getAuthString(), consumer,
+				addresses.toArray(new InetSocketAddress[addresses.size()]));
+	}
+	
 	public CameraStatus getLive() {
 		return (CameraStatus) hostClient.makeRequest("", "8081", new RequestSuccessCallback() {
 			
@@ -6,6 +6,7 @@ import il.liranfunaro.motion.GeneralPreferences;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Scanner;
@@ -54,6 +55,33 @@ public class MotionHostClient {
 		return hostStatus;
 	}
 	
+	public String getAuthString() {
+		return authString;
+	}
+	
+	/**
+	 * Resolve the plain HTTP addresses of the host on a given port,
+	 * the external address first. Used for reading streams without HttpURLConnection.
+	 */
+	public ArrayList<InetSocketAddress> getStreamAddresses(String port) {
+		ArrayList<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		
+		for(UrlParameters urlBase : new UrlParameters[] {externalUrlBase, internalUrlBase}) {
+			if(urlBase == null || !"http".equalsIgnoreCase(urlBase.getProtocol())) {
+				continue;
+			}
+			
+			try {
+				InetSocketAddress address = new InetSocketAddress(urlBase.getHost(), Integer.parseInt(port));
+				if(!address.isUnresolved()) {
+					addresses.add(address);
+				}
+			} catch (IllegalArgumentException e) {}
+		}
+		
+		return addresses;
+	}
+	
 	public interface RequestSuccessCallback {
 		Object onSuccess(InputStream resultStream) throws IOException;
 	}